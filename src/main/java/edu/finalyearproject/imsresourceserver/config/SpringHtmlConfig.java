@@ -6,6 +6,7 @@
  */
 package edu.finalyearproject.imsresourceserver.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.thymeleaf.TemplateEngine;
@@ -17,13 +18,17 @@ import org.thymeleaf.templateresolver.ITemplateResolver;
 /**
  * Config class for Thymeleaf and Spring5 TemplateEngine, creates TemplateEngine and ITemplateResolver beans.
  * Sets prefix and suffix for the HTML templates used in the ReportBuilder, sets the template mode as HTML and the
- * encoding.
+ * encoding. Parsed templates are cached by default so concurrent reports reuse them rather than re-reading each one
+ * from the classpath per render.
  */
 @Configuration
 public class SpringHtmlConfig
 {
     private static final String CHARACTER_ENCODING = "UTF-8";
 
+    @Value("${reports.template-cache:true}")
+    private boolean templateCache;
+
     /**
      * Configuration method to set up template engine bean using by Thymeleaf for generating reports.
      * @return TemplateEngine - Bean used to generate reports from templates.
@@ -49,7 +54,7 @@ public class SpringHtmlConfig
         templateResolver.setSuffix(".html");
         templateResolver.setTemplateMode(TemplateMode.HTML);
         templateResolver.setCharacterEncoding(CHARACTER_ENCODING);
-        templateResolver.setCacheable(false);
+        templateResolver.setCacheable(templateCache);
         return templateResolver;
     }
 }
@@ -8,12 +8,14 @@ package edu.finalyearproject.imsresourceserver.controllers;
 
 import edu.finalyearproject.imsresourceserver.models.Customer;
 import edu.finalyearproject.imsresourceserver.repositories.CustomerRepository;
+import edu.finalyearproject.imsresourceserver.services.ProductCatalogCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -26,15 +28,23 @@ public class CustomerController
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+
     private Logger log = LoggerFactory.getLogger(CustomerController.class);
 
     /**
-     * GET method for returning all customer records.
-     * @return List<Customer> - List of Customer objects.
+     * GET method for returning all customer records, or 304 Not Modified if the client's copy is still current.
+     * @param request - the web request, carrying any If-None-Match header.
+     * @return List<Customer> - List of Customer objects, or null when not modified.
      */
     @GetMapping("/customers/all")
-    public List<Customer> getCustomers()
+    public List<Customer> getCustomers(WebRequest request)
     {
+        if (request.checkNotModified(productCatalogCache.getCatalogETag()))
+        {
+            return null;
+        }
         return customerRepository.findAll();
     }
 
@@ -6,22 +6,32 @@
  */
 package edu.finalyearproject.imsresourceserver.controllers;
 
+import edu.finalyearproject.imsresourceserver.models.CursorPage;
 import edu.finalyearproject.imsresourceserver.models.Customer;
 import edu.finalyearproject.imsresourceserver.models.Order;
+import edu.finalyearproject.imsresourceserver.models.OrderIngestResult;
+import edu.finalyearproject.imsresourceserver.models.PageCursor;
 import edu.finalyearproject.imsresourceserver.models.Product;
 import edu.finalyearproject.imsresourceserver.repositories.CustomerRepository;
 import edu.finalyearproject.imsresourceserver.repositories.OrderRepository;
 import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
 import edu.finalyearproject.imsresourceserver.requests.OrderRequest;
 import edu.finalyearproject.imsresourceserver.requests.ProductRequest;
+import edu.finalyearproject.imsresourceserver.services.DemandCounters;
+import edu.finalyearproject.imsresourceserver.services.OrderIngestService;
+import edu.finalyearproject.imsresourceserver.services.ProductLookupService;
+import edu.finalyearproject.imsresourceserver.services.StockService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.sql.Date;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDate;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -40,19 +50,45 @@ public class OrderController
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private ProductLookupService productLookupService;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private OrderIngestService orderIngestService;
+
+    @Autowired
+    private DemandCounters demandCounters;
+
     private Logger log = LoggerFactory.getLogger(OrderController.class);
 
     /**
-     * GET method for returning all orders in the order repository.
-     * @return List<Order> - List containing POJOs of all order records.
+     * GET method for returning a page of orders, newest first.
+     * @param cursor - the nextCursor of the previous page, or absent for the first page.
+     * @param size - the maximum number of orders to return, capped at CursorPage.MAX_PAGE_SIZE.
+     * @return CursorPage<Order> - the page of orders and the cursor for the next page.
      */
     @GetMapping("/orders/all")
-    public List<Order> getOrders()
+    public CursorPage<Order> getOrders(@RequestParam(required = false) String cursor,
+                                       @RequestParam(defaultValue = "" + CursorPage.DEFAULT_PAGE_SIZE) int size)
     {
-        log.info("Retrieving all orders from database...");
-        List<Order> all = orderRepository.findAll();
-        Collections.sort(all, Collections.reverseOrder());
-        return all;
+        log.info("Retrieving page of orders from database...");
+        int pageSize = CursorPage.clampSize(size);
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+
+        List<Order> rows;
+        if (cursor == null)
+        {
+            rows = orderRepository.findNewest(limit);
+        } else
+        {
+            PageCursor position = PageCursor.decode(cursor);
+            rows = orderRepository.findNewestBefore(position.getDate(), position.getId(), limit);
+        }
+
+        return CursorPage.of(rows, pageSize, order -> new PageCursor(order.getOrder_date(), order.getId()));
     }
 
     /**
@@ -63,9 +99,7 @@ public class OrderController
     @PostMapping("/order/delivered/{id}")
     public Order setOrderToDelivered(@PathVariable int id)
     {
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        LocalDateTime now = LocalDateTime.now();
-        Date date = Date.valueOf(dtf.format(now));
+        LocalDate date = LocalDate.now();
 
         Order order = orderRepository.findByid(id);
         order.setArrival_date(date);
@@ -87,58 +121,114 @@ public class OrderController
         Optional<Product> product = productRepository.findById(product_id);
         if (product.isPresent())
         {
-            return orderRepository.findByproducts(product.get());
+            return orderRepository.findContainingProduct(product.get());
         }
         return new ArrayList<>();
     }
 
     /**
-     * GET method for returning all Orders ordered by a customer.
+     * GET method for returning a page of Orders ordered by a customer, newest first, with their products.
      * @param customer_id - the id of the customer.
-     * @return List<Order> - List of the customer's orders.
+     * @param cursor - the nextCursor of the previous page, or absent for the first page.
+     * @param size - the maximum number of orders to return, capped at CursorPage.MAX_PAGE_SIZE.
+     * @return CursorPage<Order> - the page of the customer's orders and the cursor for the next page.
      */
     @GetMapping("/customer/{customer_id}")
-    public List<Order> getOrdersForCustomer(@PathVariable  int customer_id)
+    public CursorPage<Order> getOrdersForCustomer(@PathVariable  int customer_id,
+                                                  @RequestParam(required = false) String cursor,
+                                                  @RequestParam(defaultValue = "" + CursorPage.DEFAULT_PAGE_SIZE) int size)
     {
-        Optional<Customer> customer = customerRepository.findById(customer_id);
-        List<Order> allOrders = orderRepository.findAll();
+        int pageSize = CursorPage.clampSize(size);
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+
+        List<Integer> ids;
+        if (cursor == null)
+        {
+            ids = orderRepository.findNewestIdsForCustomer(customer_id, limit);
+        } else
+        {
+            PageCursor position = PageCursor.decode(cursor);
+            ids = orderRepository.findNewestIdsForCustomerBefore(customer_id, position.getDate(), position.getId(), limit);
+        }
 
-        return customer.map(value -> allOrders.stream().filter(order -> order.getCustomer().equals(value))
-                .collect(Collectors.toList())).orElseGet(ArrayList::new);
+        // fetch the page's orders and lines together once the ids are known, as Hibernate can't limit a fetch join
+        List<Order> rows = ids.isEmpty() ? new ArrayList<>() : orderRepository.findAllWithItemsByIdIn(ids);
+        return CursorPage.of(rows, pageSize, order -> new PageCursor(order.getOrder_date(), order.getId()));
     }
 
     /**
-     * POST method for creating a new Customer order.
+     * GET method for returning the number of Orders ordered by a customer.
+     * @param customer_id - the id of the customer.
+     * @return long - the number of the customer's orders.
+     */
+    @GetMapping("/customer/{customer_id}/count")
+    public long getOrderCountForCustomer(@PathVariable int customer_id)
+    {
+        return orderRepository.countForCustomer(customer_id);
+    }
+
+    /**
+     * POST method for creating a new Customer order and taking its products from stock. The order is only saved if
+     * every line can be reserved.
      * @param orderRequest - object with customer_id and ProductRequest objects.
      * @return Order - the new Customer Order record.
+     * @throws ResponseStatusException - 400 Bad Request if any line's quantity isn't positive.
      */
     @PostMapping("/order/create")
+    @Transactional
     public Order createNewOrder(@RequestBody OrderRequest orderRequest)
     {
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        LocalDateTime now = LocalDateTime.now();
-        Date date = Date.valueOf(dtf.format(now));
-        Optional<Customer> customer = customerRepository.findById(orderRequest.getCustomer_id());
-        Set<Product> products = new HashSet<>();
+        // checked per line before merging, a negative line would otherwise offset a positive one or add stock
         for (ProductRequest productRequest : orderRequest.getProducts())
         {
-            Product product = productRepository.findBysku(Integer.valueOf(productRequest.getSku()));
-            for (int i = 0 ; i < productRequest.getQuantity() ; i++)
+            if (productRequest.getQuantity() <= 0)
             {
-                products.add(product);
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Invalid quantity for SKU " + productRequest.getSku());
             }
         }
 
+        LocalDate date = LocalDate.now();
+        Optional<Customer> customer = customerRepository.findById(orderRequest.getCustomer_id());
+
+        List<Integer> skus = Arrays.stream(orderRequest.getProducts())
+                .map(productRequest -> Integer.valueOf(productRequest.getSku())).collect(Collectors.toList());
+        Map<Integer, Product> productsBySku = productLookupService.findBySkus(skus);
+
+        // merge repeated skus so each product has a single line carrying the full quantity
+        Map<Product, Integer> quantities = new LinkedHashMap<>();
+        for (ProductRequest productRequest : orderRequest.getProducts())
+        {
+            Product product = productsBySku.get(Integer.valueOf(productRequest.getSku()));
+            quantities.merge(product, productRequest.getQuantity(), Integer::sum);
+        }
+
         Order order = new Order();
         order.setCustomer(customer.get());
-        order.setProducts(products);
         order.setOrder_date(date);
+        quantities.forEach(order::addItem);
 
-        // UPDATE product quantities
-
+        // save first so product row locks taken by the reservation are only held until commit
         orderRepository.save(order);
+        stockService.reserve(quantities);
+        demandCounters.record(quantities.entrySet().stream()
+                .collect(Collectors.toMap(line -> line.getKey().getId(), Map.Entry::getValue)), date);
         return order;
     }
-}
-
 
+    /**
+     * POST method for creating a batch of Customer orders in bulk, e.g. from the online channel.
+     * @param orderRequests - the orders to create, at most OrderIngestService.MAX_BATCH_SIZE.
+     * @return List<OrderIngestResult> - the created order id or rejection reason for each order, in request order.
+     */
+    @PostMapping("/orders/batch")
+    public List<OrderIngestResult> createOrders(@RequestBody List<OrderRequest> orderRequests)
+    {
+        if (orderRequests.size() > OrderIngestService.MAX_BATCH_SIZE)
+        {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Batches are limited to " + OrderIngestService.MAX_BATCH_SIZE + " orders");
+        }
+        return orderIngestService.ingest(orderRequests);
+    }
+}
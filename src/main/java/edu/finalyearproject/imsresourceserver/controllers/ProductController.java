@@ -6,28 +6,36 @@
  */
 package edu.finalyearproject.imsresourceserver.controllers;
 
-import edu.finalyearproject.imsresourceserver.models.Order;
+import edu.finalyearproject.imsresourceserver.models.CatalogCacheStats;
+import edu.finalyearproject.imsresourceserver.models.DemandCounterStats;
+import edu.finalyearproject.imsresourceserver.models.ForecastRunResult;
 import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.ProductForecast;
+import edu.finalyearproject.imsresourceserver.models.ProductSuggestion;
 import edu.finalyearproject.imsresourceserver.models.Supplier;
-import edu.finalyearproject.imsresourceserver.repositories.OrderRepository;
+import edu.finalyearproject.imsresourceserver.repositories.ProductForecastRepository;
 import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
 import edu.finalyearproject.imsresourceserver.repositories.SupplierRepository;
 import edu.finalyearproject.imsresourceserver.requests.NewProductRequest;
 import edu.finalyearproject.imsresourceserver.requests.ProductAmountRequest;
 import edu.finalyearproject.imsresourceserver.requests.ProductThresholdRequest;
+import edu.finalyearproject.imsresourceserver.services.DemandCounters;
+import edu.finalyearproject.imsresourceserver.services.DemandService;
+import edu.finalyearproject.imsresourceserver.services.ForecastService;
+import edu.finalyearproject.imsresourceserver.services.LowStockIndex;
+import edu.finalyearproject.imsresourceserver.services.OnOrderLedger;
+import edu.finalyearproject.imsresourceserver.services.ProductCatalogCache;
+import edu.finalyearproject.imsresourceserver.services.ProductSearchIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.sql.Date;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.TreeMap;
 
 /**
  * REST controller for all requests relating to Product records.
@@ -42,17 +50,43 @@ public class ProductController
     private SupplierRepository supplierRepository;
 
     @Autowired
-    private OrderRepository orderRepository;
+    private DemandService demandService;
+
+    @Autowired
+    private DemandCounters demandCounters;
+
+    @Autowired
+    private ForecastService forecastService;
+
+    @Autowired
+    private ProductForecastRepository productForecastRepository;
+
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+
+    @Autowired
+    private LowStockIndex lowStockIndex;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private OnOrderLedger onOrderLedger;
 
     private Logger log = LoggerFactory.getLogger(ProductController.class);
 
     /**
-     * Returns all product records in the database
-     * @return List<Product> - List of Product objects
+     * Returns all product records in the database, or 304 Not Modified if the client's copy is still current.
+     * @param request - the web request, carrying any If-None-Match header.
+     * @return List<Product> - List of Product objects, or null when not modified.
      */
     @GetMapping("/products")
-    public List<Product> getProducts()
+    public List<Product> getProducts(WebRequest request)
     {
+        if (request.checkNotModified(productCatalogCache.getCatalogETag()))
+        {
+            return null;
+        }
         log.info("Retrieving all products from database..");
         List<Product> all = productRepository.findAll();
 
@@ -66,8 +100,21 @@ public class ProductController
     @GetMapping("/products/all-names")
     public List<String> getProductNames()
     {
-        List<Product> products = productRepository.findAll();
-        return products.stream().map(Product::getName).collect(Collectors.toList());
+        return productRepository.findAllNames();
+    }
+
+    /**
+     * GET method for typeahead search over product names and SKUs, served from the in-memory search index so the
+     * client doesn't need to download and filter every product name.
+     * @param q - the name or SKU typed so far.
+     * @param limit - the maximum number of matches to return, 10 by default and at most 100.
+     * @return List<ProductSuggestion> - prefix matches first, then close fuzzy matches.
+     */
+    @GetMapping("/products/search")
+    public List<ProductSuggestion> searchProducts(@RequestParam String q,
+                                                  @RequestParam(defaultValue = "" + ProductSearchIndex.DEFAULT_LIMIT) int limit)
+    {
+        return productSearchIndex.search(q, Math.min(limit, ProductSearchIndex.MAX_LIMIT));
     }
 
     /**
@@ -78,7 +125,7 @@ public class ProductController
     @GetMapping("/products/name/{name}")
     public Product getProductByName(@PathVariable String name)
     {
-        return productRepository.findByname(name);
+        return productCatalogCache.findByName(name);
     }
 
     /**
@@ -100,8 +147,7 @@ public class ProductController
     @GetMapping("/products/supplier/{name}")
     public List<Product> getProductsForSupplier(@PathVariable String name)
     {
-        Supplier supplier = supplierRepository.findByname(name);
-        return productRepository.findBysupplier(supplier);
+        return productCatalogCache.findBySupplierName(name);
     }
 
     /**
@@ -112,6 +158,7 @@ public class ProductController
     public void removeProduct(@PathVariable Integer id)
     {
         productRepository.deleteById(id);
+        productCatalogCache.invalidate(List.of(id));
     }
 
     /**
@@ -122,7 +169,7 @@ public class ProductController
     @GetMapping("/product/{id}")
     public Product getProduct(@PathVariable Integer id)
     {
-        Optional<Product> productOptional = productRepository.findById(id);
+        Optional<Product> productOptional = productCatalogCache.findById(id);
         if (productOptional.isPresent())
         {
             return  productOptional.get();
@@ -145,6 +192,7 @@ public class ProductController
                 productRequest.getInventoryOnHand(), productRequest.getReorderThreshold(),
                 productRequest.getReorderQuantity(), supplier);
         productRepository.save(newProduct);
+        productCatalogCache.invalidate(newProduct);
 
         return newProduct;
     }
@@ -164,6 +212,7 @@ public class ProductController
             Product product = productOptional.get();
             product.setSuspended(true);
             productRepository.save(product);
+            productCatalogCache.invalidate(product);
             return product;
         }
 
@@ -185,6 +234,7 @@ public class ProductController
             Product product = productOptional.get();
             product.setSuspended(false);
             productRepository.save(product);
+            productCatalogCache.invalidate(product);
             return product;
         }
 
@@ -192,16 +242,40 @@ public class ProductController
     }
 
     /**
-     * Get method to return any Products that have less than or equal to 20 stock left before hitting reorder point.
+     * Get method to return Products within a margin of their reorder point, lowest headroom first. Served from the
+     * in-memory low stock index rather than scanning every product.
+     * @param margin - the most units above its reorder threshold a product can have, 20 by default.
+     * @param limit - the maximum number of products to return, all by default.
+     * @param includeOnOrder - false to leave out products already on an undelivered purchase order, included by
+     * default. Their units on order can be read from /products/on-order.
      * @return List<Product> - List of Products low on stock.
      */
     @GetMapping("/products/low-stock")
-    public List<Product> getProductsLowOnStock()
+    public List<Product> getProductsLowOnStock(@RequestParam(defaultValue = "" + LowStockIndex.DEFAULT_MARGIN) int margin,
+                                               @RequestParam(required = false) Integer limit,
+                                               @RequestParam(defaultValue = "true") boolean includeOnOrder)
     {
         log.info("Retrieving products low on stock...");
-        List<Product> allProducts = productRepository.findAll();
-        return allProducts.stream().filter(product -> product.getInventory_on_hand() <=
-                                                    (product.getReorder_threshold() +20)).collect(Collectors.toList());
+        int max = limit == null ? Integer.MAX_VALUE : limit;
+        return includeOnOrder ? lowStockIndex.findLowStock(margin, max)
+                : lowStockIndex.findLowStock(margin, max, onOrderLedger::isOnOrder);
+    }
+
+    /**
+     * GET method for the units of each product on undelivered purchase orders, read from the in-memory ledger.
+     * @param ids - the ids of the Products.
+     * @return Map<Integer, Integer> - units on order keyed by product id, 0 for products not on order.
+     */
+    @GetMapping("/products/on-order")
+    public Map<Integer, Integer> getUnitsOnOrder(@RequestParam List<Integer> ids)
+    {
+        Map<Integer, Integer> unitsOnOrder = new TreeMap<>();
+        for (Integer id : ids)
+        {
+            productCatalogCache.findById(id).ifPresent(product ->
+                    unitsOnOrder.put(id, onOrderLedger.unitsOnOrder(product)));
+        }
+        return unitsOnOrder;
     }
 
     /**
@@ -220,6 +294,7 @@ public class ProductController
             Product theProduct = product.get();
             theProduct.setReorder_threshold(request.getNewThreshold());
             productRepository.save(theProduct);
+            productCatalogCache.invalidate(theProduct);
             return theProduct;
         }
 
@@ -242,12 +317,33 @@ public class ProductController
             Product theProduct = product.get();
             theProduct.setReorder_quantity(request.getNewAmount());
             productRepository.save(theProduct);
+            productCatalogCache.invalidate(theProduct);
             return theProduct;
         }
 
         return new Product();
     }
 
+    /**
+     * GET method for the product catalog cache counters.
+     * @return CatalogCacheStats - hits, misses, evictions, invalidations and current size.
+     */
+    @GetMapping("/products/cache-stats")
+    public CatalogCacheStats getCatalogCacheStats()
+    {
+        return productCatalogCache.getStats();
+    }
+
+    /**
+     * GET method for the size of the in-memory demand counters behind the ADU endpoints.
+     * @return DemandCounterStats - products counted, days held and estimated memory use.
+     */
+    @GetMapping("/products/demand-stats")
+    public DemandCounterStats getDemandCounterStats()
+    {
+        return demandCounters.getStats();
+    }
+
     /**
      * GET method for calculating and returning the average daily sales for a Product.
      * @param id - the id of the Product.
@@ -257,71 +353,44 @@ public class ProductController
     public float getAverageDailySales(@PathVariable int id)
     {
         log.info("Calculating ADU for product "+id+"...");
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        LocalDateTime now = LocalDateTime.now();
-        Date today = Date.valueOf(dtf.format(now));
-        Date twoWeeksAgo = getDateTwoWeeksBefore(today);
-        List<Order> ordersInRange = getCustomerOrdersInRange(twoWeeksAgo, today);
-        int totalSales = getTotalSales(id, ordersInRange);
-
-        // if there is a remainder, +1 to value to account for integer division
-        float ADU = (totalSales / 14) % 14 == 1 ? totalSales / 14 +1 : totalSales / 14;
-
-        return (float) (totalSales / 14.0);
-    }
-
-    // add together total sales for orders in range
-    private int getTotalSales(@PathVariable int id, List<Order> ordersInRange)
-    {
-        int totalSales = 0;
-        for (Order order : ordersInRange)
-        {
-            for (Product product : order.getProducts())
-            {
-                if (product.getId() == id)
-                {
-                    totalSales++;
-                }
-            }
-        }
-        return totalSales;
+        return demandService.averageDailySales(id, DemandService.DEFAULT_WINDOW);
     }
 
-    // calculate the date two weeks before today's date
-    private Date getDateTwoWeeksBefore(Date today)
+    /**
+     * GET method for the average daily sales of every product, or of the requested products, from one grouped query.
+     * Returns the same figure per product as /product/adu/{id}.
+     * @param window - the number of days to average over, 14 by default.
+     * @param ids - the ids of the Products, every product if not given.
+     * @return Map<Integer, Float> - average daily sales keyed by product id.
+     */
+    @GetMapping("/products/adu")
+    public Map<Integer, Float> getAverageDailySalesForProducts(
+            @RequestParam(defaultValue = "" + DemandService.DEFAULT_WINDOW) int window,
+            @RequestParam(required = false) List<Integer> ids)
     {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(today);
-        calendar.add(Calendar.DATE, -14); //2 weeks
-
-        return new Date(calendar.getTime().getTime());
+        log.info("Calculating ADU over "+window+" days for "+(ids == null ? "all products" : ids.size()+" products")+"...");
+        return demandService.averageDailySales(ids == null ? List.of() : ids, window);
     }
 
-    // Returns list of customer orders within given time frame
-    private List<Order> getCustomerOrdersInRange(Date startDate, Date endDate)
+    /**
+     * GET method for the latest published demand forecasts, for the low stock and purchasing screens.
+     * @param ids - the ids of the Products, every forecast if not given.
+     * @return List<ProductForecast> - the forecast of each product that has one.
+     */
+    @GetMapping("/products/forecasts")
+    public List<ProductForecast> getForecasts(@RequestParam(required = false) List<Integer> ids)
     {
-        List<Order> customerOrders = orderRepository.findAll();
-        List<Order> ordersInRange = new ArrayList<>();
-        for (Order order : customerOrders)
-        {
-            Date date = createDateObject(order.getOrder_date());
-            if (date.after(startDate) && date.before(endDate))
-            {
-                ordersInRange.add(order);
-            }
-            if (date.equals(startDate) || date.equals(endDate))
-            {
-                ordersInRange.add(order);
-            }
-        }
-
-        return ordersInRange;
+        return ids == null ? productForecastRepository.findAll() : productForecastRepository.findByProductIds(ids);
     }
 
-    // parse string representation of date into Date object for comparison
-    private java.sql.Date createDateObject(String stringDate)
+    /**
+     * POST method to run the forecasting job now rather than waiting for its nightly schedule.
+     * @return ForecastRunResult - the number of products forecast, the run date and how long it took.
+     */
+    @PostMapping("/products/forecasts/run")
+    public ForecastRunResult runForecast()
     {
-        String[] array = stringDate.split("-");
-        return java.sql.Date.valueOf(array[2]+"-"+array[1]+"-"+array[0]);
+        log.info("Running demand forecast on request...");
+        return forecastService.run();
     }
 }
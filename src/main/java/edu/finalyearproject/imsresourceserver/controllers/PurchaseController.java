@@ -6,22 +6,32 @@
  */
 package edu.finalyearproject.imsresourceserver.controllers;
 
+import edu.finalyearproject.imsresourceserver.models.CursorPage;
+import edu.finalyearproject.imsresourceserver.models.PageCursor;
 import edu.finalyearproject.imsresourceserver.models.Product;
 import edu.finalyearproject.imsresourceserver.models.Purchase;
+import edu.finalyearproject.imsresourceserver.models.PurchaseOrderJob;
+import edu.finalyearproject.imsresourceserver.models.ReorderPlan;
 import edu.finalyearproject.imsresourceserver.models.Supplier;
 import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
 import edu.finalyearproject.imsresourceserver.repositories.PurchaseRepository;
 import edu.finalyearproject.imsresourceserver.repositories.SupplierRepository;
 import edu.finalyearproject.imsresourceserver.requests.ProductIds;
+import edu.finalyearproject.imsresourceserver.services.OnOrderLedger;
+import edu.finalyearproject.imsresourceserver.services.PurchaseOrderJobService;
+import edu.finalyearproject.imsresourceserver.services.PurchaseOrderService;
+import edu.finalyearproject.imsresourceserver.services.ReorderPlanner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
-import java.sql.Date;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * REST controller for all requests relating to Purchase records.
@@ -39,20 +49,44 @@ public class PurchaseController
     private SupplierRepository supplierRepository;
 
     @Autowired
-    private ReportsController reportsController;
+    private PurchaseOrderService purchaseOrderService;
+
+    @Autowired
+    private PurchaseOrderJobService purchaseOrderJobService;
+
+    @Autowired
+    private OnOrderLedger onOrderLedger;
+
+    @Autowired
+    private ReorderPlanner reorderPlanner;
 
     private Logger log = LoggerFactory.getLogger(PurchaseController.class);
 
     /**
-     * GET method to return all Purchase records.
-     * @return List<Purchase> - List of all Purchase objects.
+     * GET method to return a page of Purchase records, newest first.
+     * @param cursor - the nextCursor of the previous page, or absent for the first page.
+     * @param size - the maximum number of purchases to return, capped at CursorPage.MAX_PAGE_SIZE.
+     * @return CursorPage<Purchase> - the page of Purchase objects and the cursor for the next page.
      */
     @GetMapping("/purchases/all")
-    public List<Purchase> getPurchases()
+    public CursorPage<Purchase> getPurchases(@RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "" + CursorPage.DEFAULT_PAGE_SIZE) int size)
     {
-        List<Purchase> all = purchaseRepository.findAll();
-        Collections.sort(all, Collections.reverseOrder());
-        return all;
+        int pageSize = CursorPage.clampSize(size);
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+
+        List<Purchase> rows;
+        if (cursor == null)
+        {
+            rows = purchaseRepository.findNewest(limit);
+        } else
+        {
+            PageCursor position = PageCursor.decode(cursor);
+            rows = purchaseRepository.findNewestBefore(position.getDate(), position.getId(), limit);
+        }
+
+        return CursorPage.of(rows, pageSize,
+                purchase -> new PageCursor(purchase.getPurchase_date(), purchase.getId()));
     }
 
     /**
@@ -73,28 +107,16 @@ public class PurchaseController
     }
 
     /**
-     * POST method for setting a purchase order arrival date to todays date and updates product quantities.
+     * POST method for setting a purchase order arrival date to todays date and updates product quantities. Calling it
+     * again for a delivered purchase order changes nothing.
      * @param id - the id(primary key) of the purchase order to set to delivered.
-     * @return void
+     * @return Purchase - the delivered purchase order.
      */
     @PostMapping("/purchase/delivered/{id}")
     public Purchase setOrderToDelivered(@PathVariable int id)
     {
         log.info("Setting purchase order " + id + " to delivered..");
-        Date date = getDate();
-
-        Purchase purchase = purchaseRepository.findByid(id);
-        purchase.setArrival_date(date);
-
-        // UPDATE product quantities
-        Set<Product> products = purchase.getProducts();
-        products.stream().forEach(product -> {
-            product.setInventory_on_hand(product.getInventory_on_hand() + product.getReorder_quantity());
-            productRepository.save(product);
-        });
-
-        purchaseRepository.save(purchase);
-        return purchase;
+        return purchaseOrderService.receive(id);
     }
 
     /**
@@ -108,71 +130,72 @@ public class PurchaseController
         Optional<Purchase> purchase = purchaseRepository.findById(id);
         if (purchase.isPresent())
         {
-            DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-            LocalDateTime now = LocalDateTime.now();
             Set<Product> products = new HashSet<>(purchase.get().getProducts());
-            Purchase newPurchase = new Purchase(purchase.get().getSupplier(), Date.valueOf(dtf.format(now)), products);
+            Purchase newPurchase = new Purchase(purchase.get().getSupplier(), LocalDate.now(), products);
 
             purchaseRepository.save(newPurchase);
+            onOrderLedger.purchased(products.stream().map(Product::getId).collect(Collectors.toList()));
             return newPurchase;
         }
         return new Purchase();
     }
 
     /**
-     * POST method to create a new purchase order and return HTML invoice for it.
-     * @param productIds - form data containing supplier name and list of product names.
-     * @return HttpEntity - HTTP response containing invoice in body and necessary headers.
+     * POST method to create a purchase order for each supplier of the given products. The purchase orders are saved
+     * before responding; their invoices are generated and emailed in the background. Invoices still waiting to be
+     * sent when the application restarts are not sent.
+     * @param productIds - form data containing the ids of the products to order.
+     * @return PurchaseOrderJob - the queued invoice job, with the ids of the saved purchase orders, 202 Accepted.
      */
     @PostMapping("/purchase/create")
-    public Map<Supplier, Set<Product>> createPurchaseOrder(@RequestBody ProductIds productIds)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public PurchaseOrderJob createPurchaseOrder(@RequestBody ProductIds productIds)
     {
         Map<Supplier, Set<Product>> productsBySupplier = new HashMap<>();
-        for (int id : productIds.getIds())
+        for (Product product : productRepository.findAllById(productIds.getIds()))
         {
-            Optional<Product> productOp = productRepository.findById(id);
-            addProductToMap(productsBySupplier, productOp);
+            addProductToMap(productsBySupplier, product);
         }
-        createPurchaseOrdersAndInvoices(productsBySupplier);
+        PurchaseOrderJob job = purchaseOrderJobService.submit(productsBySupplier);
 
         log.info("All purchase orders created...");
-        return productsBySupplier;
+        return job;
     }
 
-    // create a Map to split products by their supplier
-    private void addProductToMap(Map<Supplier, Set<Product>> productsBySupplier, Optional<Product> productOp)
+    /**
+     * GET method for the progress of a purchase order invoice job. Jobs are only held in memory, so they are lost
+     * when the application restarts and a job id from before then is Not Found.
+     * @param id - the id of the job, returned when the purchase orders were created.
+     * @return PurchaseOrderJob - the job's status, invoices sent and any purchase orders whose invoice failed.
+     */
+    @GetMapping("/purchase/jobs/{id}")
+    public PurchaseOrderJob getPurchaseOrderJob(@PathVariable long id)
     {
-        if (productOp.isPresent())
-        {
-            Product product = productOp.get();
-            if (!productsBySupplier.containsKey(product.getSupplier()))
-            {
-                productsBySupplier.put(product.getSupplier(), new HashSet<>());
-                productsBySupplier.get(product.getSupplier()).add(product);
-            } else
-            {
-                productsBySupplier.get(product.getSupplier()).add(product);
-            }
-        }
+        return purchaseOrderJobService.getJob(id);
     }
 
-    // for each distinct supplier, create a new purchase order
-    private void createPurchaseOrdersAndInvoices(Map<Supplier, Set<Product>> productsBySupplier)
+    /**
+     * POST method to run the reorder planner now rather than waiting for its nightly schedule.
+     * @param dryRun - true (the default) to only report the purchase orders that would be raised.
+     * @return ReorderPlan - the purchase orders raised, or that would be raised, grouped by supplier.
+     */
+    @PostMapping("/purchases/plan")
+    public ReorderPlan planReorders(@RequestParam(defaultValue = "true") boolean dryRun)
     {
-        Date date = getDate();
-        for (Supplier supplier : productsBySupplier.keySet())
-        {
-            Purchase purchase = new Purchase(supplier, date, productsBySupplier.get(supplier));
-            purchaseRepository.save(purchase);
-            reportsController.generatePurchaseInvoice(purchase);
-        }
+        log.info("Running reorder planner on request, dry run: " + dryRun);
+        return reorderPlanner.plan(dryRun);
     }
 
-    // get todays date
-    private Date getDate()
+    // create a Map to split products by their supplier
+    private void addProductToMap(Map<Supplier, Set<Product>> productsBySupplier, Product product)
     {
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        LocalDateTime now = LocalDateTime.now();
-        return Date.valueOf(dtf.format(now));
+        if (!productsBySupplier.containsKey(product.getSupplier()))
+        {
+            productsBySupplier.put(product.getSupplier(), new HashSet<>());
+            productsBySupplier.get(product.getSupplier()).add(product);
+        } else
+        {
+            productsBySupplier.get(product.getSupplier()).add(product);
+        }
     }
 }
@@ -6,30 +6,32 @@
  */
 package edu.finalyearproject.imsresourceserver.controllers;
 
+import edu.finalyearproject.imsresourceserver.models.DateFormats;
 import edu.finalyearproject.imsresourceserver.models.Order;
+import edu.finalyearproject.imsresourceserver.models.OrderItem;
 import edu.finalyearproject.imsresourceserver.models.Product;
 import edu.finalyearproject.imsresourceserver.models.Purchase;
 import edu.finalyearproject.imsresourceserver.reports.ReportBuilder;
 import edu.finalyearproject.imsresourceserver.repositories.OrderRepository;
-import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
 import edu.finalyearproject.imsresourceserver.repositories.PurchaseRepository;
 import edu.finalyearproject.imsresourceserver.requests.StockMovement;
 import edu.finalyearproject.imsresourceserver.requests.WasteItem;
 import edu.finalyearproject.imsresourceserver.services.EmailService;
+import edu.finalyearproject.imsresourceserver.services.ProductLookupService;
+import edu.finalyearproject.imsresourceserver.services.StockService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
 import org.springframework.web.bind.annotation.*;
 
-import java.sql.Date;
-import java.text.SimpleDateFormat;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -45,7 +47,10 @@ public class ReportsController
     private PurchaseRepository purchaseRepository;
 
     @Autowired
-    private ProductRepository productRepository;
+    private ProductLookupService productLookupService;
+
+    @Autowired
+    private StockService stockService;
 
     @Autowired
     private EmailService emailService;
@@ -65,24 +70,22 @@ public class ReportsController
      * @return String - HTML report.
      */
     @GetMapping("/reports/order-summary/{startDate}/{endDate}")
-    public String generateOrderSummary(@PathVariable String startDate, @PathVariable String endDate)
+    public String generateOrderSummary(@PathVariable @DateTimeFormat(iso = ISO.DATE) LocalDate startDate,
+                                       @PathVariable @DateTimeFormat(iso = ISO.DATE) LocalDate endDate)
     {
         log.info("Generating Order Summary Report for orders within " + startDate +" and "+endDate);
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-        SimpleDateFormat dateFormatter = new SimpleDateFormat("dd-MM-yyyy");
-        LocalDateTime now = LocalDateTime.now();
+        String now = DateFormats.DISPLAY.format(LocalDate.now());
 
-        List<Order> orders = getCustomerOrdersInRange(Date.valueOf(startDate),  Date.valueOf(endDate));
-        Collections.sort(orders);
+        List<Order> orders = getCustomerOrdersInRange(startDate, endDate);
 
         String html = reportBuilder.withContext()
                             .withOrdersList("orders", orders)
-                            .withString("todaysDate", dtf.format(now))
-                            .withString("startDate", dateFormatter.format(Date.valueOf(startDate)))
-                            .withString("endDate", dateFormatter.format(Date.valueOf(endDate)))
+                            .withString("todaysDate", now)
+                            .withString("startDate", DateFormats.DISPLAY.format(startDate))
+                            .withString("endDate", DateFormats.DISPLAY.format(endDate))
                             .buildReport("order-summary");
 
-        emailService.sendEmailWithAttachment(managerEmail, "order summary", "Here is your Order Summary Report for "+dtf.format(now), html, "order-summary", dtf.format(now));
+        emailService.sendEmailWithAttachment(managerEmail, "order summary", "Here is your Order Summary Report for "+now, html, "order-summary", now);
 
         return html;
     }
@@ -94,24 +97,22 @@ public class ReportsController
      * @return String - HTML report.
      */
     @GetMapping("/reports/purchase-summary/{startDate}/{endDate}")
-    public String generatePurchaseSummary(@PathVariable String startDate, @PathVariable String endDate)
+    public String generatePurchaseSummary(@PathVariable @DateTimeFormat(iso = ISO.DATE) LocalDate startDate,
+                                          @PathVariable @DateTimeFormat(iso = ISO.DATE) LocalDate endDate)
     {
         log.info("Generating Purchase Summary Report for supplier orders within " + startDate + " and "+endDate);
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-        SimpleDateFormat dateFormatter = new SimpleDateFormat("dd-MM-yyyy");
-        LocalDateTime now = LocalDateTime.now();
+        String now = DateFormats.DISPLAY.format(LocalDate.now());
 
-        List<Purchase> supplierOrders = getSupplierOrdersInRange(Date.valueOf(startDate), Date.valueOf(endDate));
-        Collections.sort(supplierOrders);
+        List<Purchase> supplierOrders = getSupplierOrdersInRange(startDate, endDate);
 
         String html = reportBuilder.withContext()
                 .withPurchasesList("purchases", supplierOrders)
-                .withString("todaysDate", dtf.format(now))
-                .withString("startDate", dateFormatter.format(Date.valueOf(startDate)))
-                .withString("endDate", dateFormatter.format(Date.valueOf(endDate)))
+                .withString("todaysDate", now)
+                .withString("startDate", DateFormats.DISPLAY.format(startDate))
+                .withString("endDate", DateFormats.DISPLAY.format(endDate))
                 .buildReport("purchase-summary");
 
-        emailService.sendEmailWithAttachment(managerEmail, "purchase order summary", "Here is your Purchase Order Summary Report for "+dtf.format(now), html, "order-summary", dtf.format(now));
+        emailService.sendEmailWithAttachment(managerEmail, "purchase order summary", "Here is your Purchase Order Summary Report for "+now, html, "order-summary", now);
 
         return html;
     }
@@ -126,22 +127,23 @@ public class ReportsController
     {
         log.info("Generating invoice for order #"+id);
         Order order = orderRepository.findByid(id);
-        String status = order.getArrival_date().equals("null") ? "PENDING" : "DELIVERED";
+        String status = order.getArrival_date() == null ? "PENDING" : "DELIVERED";
+        String orderDate = DateFormats.DISPLAY.format(order.getOrder_date());
 
         String html = reportBuilder.withContext()
                             .withString("orderNumber", String.valueOf(id))
-                            .withString("order_date", order.getOrder_date())
+                            .withString("order_date", orderDate)
                             .withString("status", status)
                             .withString("houseNum", String.valueOf(order.getCustomer().getAddress().getHouse_number()))
                             .withString("line1", order.getCustomer().getAddress().getLine_1())
                             .withString("city", order.getCustomer().getAddress().getCity())
                             .withString("county", order.getCustomer().getAddress().getCounty())
                             .withString("postCode", order.getCustomer().getAddress().getPost_code())
-                            .withProductList("products", order.getProducts())
-                            .withString("totalCost", order.getTotalCost())
+                            .withOrderItemList("items", order.getItems())
+                            .withString("totalCost", order.getTotalCost().toPlainString())
                             .buildReport("order-invoice");
 
-        emailService.sendEmailWithAttachment(order.getCustomer().getEmail(), "Order Confirmation", "Here is your invoice for your order on  "+order.getOrder_date(), html, "order-invoice", order.getOrder_date());
+        emailService.sendEmailWithAttachment(order.getCustomer().getEmail(), "Order Confirmation", "Here is your invoice for your order on  "+orderDate, html, "order-invoice", orderDate);
 
         return html;
     }
@@ -155,19 +157,19 @@ public class ReportsController
     public String generatePurchaseInvoice(@RequestBody Purchase purchase)
     {
         log.info("Generating invoice for purchase order #"+purchase.getId());
-        String status = purchase.getArrival_date().equals("null") ? "PENDING" : "DELIVERED";
+        String status = purchase.getArrival_date() == null ? "PENDING" : "DELIVERED";
+        String purchaseDate = DateFormats.DISPLAY.format(purchase.getPurchase_date());
         String html = reportBuilder.withContext()
                 .withProductList("products", purchase.getProducts())
                 .withString("id", purchase.getId().toString())
                 .withString("supplier", purchase.getSupplier().getName())
-                .withString("purchase_date", purchase.getPurchase_date())
+                .withString("purchase_date", purchaseDate)
                 .withString("status", status)
-                .withString("arrival_date", purchase.getArrival_date())
                 .buildReport("supplier-invoice");
 
         emailService.sendEmailWithAttachment(managerEmail, "Purchase Order #"+purchase.getId()+" Confirmation",
-                "Here is your invoice for your Supplier Purchase Order on  "+purchase.getPurchase_date(), html,
-                "purchase-order-"+purchase.getId(), purchase.getPurchase_date());
+                "Here is your invoice for your Supplier Purchase Order on  "+purchaseDate, html,
+                "purchase-order-"+purchase.getId(), purchaseDate);
 
         return html;
     }
@@ -180,25 +182,23 @@ public class ReportsController
      * @return String - HTML report.
      */
     @GetMapping("/reports/stock-movement/{startDate}/{endDate}")
-    public String generateStockMovementReport(@PathVariable String startDate, @PathVariable String endDate)
+    public String generateStockMovementReport(@PathVariable @DateTimeFormat(iso = ISO.DATE) LocalDate startDate,
+                                              @PathVariable @DateTimeFormat(iso = ISO.DATE) LocalDate endDate)
     {
         log.info("Generating Stock Movement Report for dates "+startDate+" to "+endDate);
-        SimpleDateFormat dateFormatter = new SimpleDateFormat("dd-MM-yyyy");
-        Date startDateObject = Date.valueOf(startDate);
-        Date endDateObject = Date.valueOf(endDate);
-        String startDateString = dateFormatter.format(startDateObject);
-        String endDateString = dateFormatter.format(endDateObject);
-        String now = dateFormatter.format(Date.from(Instant.now()));
+        String startDateString = DateFormats.DISPLAY.format(startDate);
+        String endDateString = DateFormats.DISPLAY.format(endDate);
+        String now = DateFormats.DISPLAY.format(LocalDate.now());
 
         // get all stock movements in range
-        List<Order> customerOrders = getCustomerOrdersInRange(startDateObject,  endDateObject);
-        List<Purchase> supplierOrders = getSupplierOrdersInRange(startDateObject, endDateObject);
+        List<Order> customerOrders = orderRepository.findAllWithItemsOrderedBetween(startDate, endDate);
+        List<Purchase> supplierOrders = getSupplierOrdersInRange(startDate, endDate);
         List<StockMovement> stockMovements = getAllStockMovements(customerOrders, supplierOrders);
         Collections.sort(stockMovements);       // sort by date of movement
 
         String html = reportBuilder.withContext()
-                .withString("startDate", dateFormatter.format(startDateObject))
-                .withString("endDate", dateFormatter.format(endDateObject))
+                .withString("startDate", startDateString)
+                .withString("endDate", endDateString)
                 .withStockMovementList("stockMovements", stockMovements)
                 .buildReport("stock-movement");
 
@@ -217,15 +217,15 @@ public class ReportsController
     @PostMapping("/reports/waste")
     public String GenerateWasteReport(@RequestBody List<WasteItem> records)
     {
-        SimpleDateFormat dateFormatter = new SimpleDateFormat("dd-MM-yyyy");
-        String now = dateFormatter.format(Date.from(Instant.now()));
+        String now = DateFormats.DISPLAY.format(LocalDate.now());
 
         // update stock levels
+        Map<Integer, Product> productsBySku = productLookupService.findBySkus(
+                records.stream().map(WasteItem::getSku).collect(Collectors.toList()));
         records.stream().forEach(record -> {
-            Product product = productRepository.findBysku(record.getSku());
+            Product product = productsBySku.get(record.getSku());
             record.setName(product.getName());
-            product.setInventory_on_hand(product.getInventory_on_hand() - record.getQuantity());
-            productRepository.save(product);
+            stockService.remove(product, record.getQuantity());
         });
 
         // generate report
@@ -242,33 +242,16 @@ public class ReportsController
         return html;
     }
 
-    // parse string representation of date into Date object for comparison
-    private Date createDateObject(String stringDate)
+    // Returns list of customer orders within given time frame, oldest first
+    private List<Order> getCustomerOrdersInRange(LocalDate startDate, LocalDate endDate)
     {
-        String[] array = stringDate.split("-");
-        return Date.valueOf(array[2]+"-"+array[1]+"-"+array[0]);
+        return orderRepository.findAllOrderedBetween(startDate, endDate);
     }
 
-    // Returns list of customer orders within given time frame
-    private List<Order> getCustomerOrdersInRange(Date startDate, Date endDate)
+    // Returns list of supplier orders within given time frame, oldest first
+    private List<Purchase> getSupplierOrdersInRange(LocalDate startDate, LocalDate endDate)
     {
-        List<Order> customerOrders = orderRepository.findAll();
-
-        return customerOrders.stream().filter(order -> {
-            Date orderDate = createDateObject(order.getOrder_date());
-            return orderDate.after(startDate) && orderDate.before(endDate);
-        }).collect(Collectors.toList());
-    }
-
-    // Returns list of supplier orders within given time frame
-    private List<Purchase> getSupplierOrdersInRange(Date startDate, Date endDate)
-    {
-        List<Purchase> purchaseOrders = purchaseRepository.findAll();
-
-        return purchaseOrders.stream().filter(order -> {
-            Date orderDate = createDateObject(order.getPurchase_date());
-            return orderDate.after(startDate) && orderDate.before(endDate);
-        }).collect(Collectors.toList());
+        return purchaseRepository.findAllPurchasedBetween(startDate, endDate);
     }
 
     // Returns all Stock movements for all orders
@@ -289,7 +272,7 @@ public class ReportsController
             for (Product product : purchase.getProducts())
             {
                 StockMovement stockMovement = new StockMovement(purchase.getId(), true,
-                        createDateObject(purchase.getPurchase_date()), purchase.getSupplier().getName(), product,
+                        purchase.getPurchase_date(), purchase.getSupplier().getName(), product,
                         product.getReorder_quantity());
                 stockMovements.add(stockMovement);
             }
@@ -301,11 +284,11 @@ public class ReportsController
     {
         for (Order order : orders)
         {
-            for (Product product : order.getProducts())
+            for (OrderItem item : order.getItems())
             {
-                StockMovement stockMovement = new StockMovement(order.getId(), false, createDateObject(order.getOrder_date()),
+                StockMovement stockMovement = new StockMovement(order.getId(), false, order.getOrder_date(),
                         order.getCustomer().getTitle()+" "+order.getCustomer().getFirst_name()+ " "+
-                                order.getCustomer().getLast_name(), product, 1);
+                                order.getCustomer().getLast_name(), item.getProduct(), item.getQuantity());
                 stockMovements.add(stockMovement);
             }
         }
@@ -9,18 +9,23 @@ package edu.finalyearproject.imsresourceserver.controllers;
 import edu.finalyearproject.imsresourceserver.models.Product;
 import edu.finalyearproject.imsresourceserver.models.Purchase;
 import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.models.SupplierLeadTime;
+import edu.finalyearproject.imsresourceserver.models.SupplierOverview;
 import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
 import edu.finalyearproject.imsresourceserver.repositories.PurchaseRepository;
 import edu.finalyearproject.imsresourceserver.repositories.SupplierRepository;
+import edu.finalyearproject.imsresourceserver.services.LeadTimeStats;
+import edu.finalyearproject.imsresourceserver.services.ProductCatalogCache;
+import edu.finalyearproject.imsresourceserver.services.SupplierOverviewService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
  * REST controller for all requests relating to Supplier records.
@@ -37,16 +42,66 @@ public class SupplierController
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private SupplierOverviewService supplierOverviewService;
+
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+
+    @Autowired
+    private LeadTimeStats leadTimeStats;
+
     /**
-     * GET method for returning all Supplier orders in the database.
-     * @return List<Supplier> - List of all Supplier orders.
+     * GET method for returning all Supplier orders in the database, or 304 Not Modified if the client's copy is still
+     * current.
+     * @param request - the web request, carrying any If-None-Match header.
+     * @return List<Supplier> - List of all Supplier orders, or null when not modified.
      */
     @GetMapping("/suppliers/all")
-    public List<Supplier> getSuppliers()
+    public List<Supplier> getSuppliers(WebRequest request)
     {
+        if (request.checkNotModified(productCatalogCache.getCatalogETag()))
+        {
+            return null;
+        }
         return supplierRepository.findAll();
     }
 
+    /**
+     * GET method for the supplier screen's overview of every supplier, replacing a products and orders request per
+     * supplier with one query.
+     * @return List<SupplierOverview> - product count, suspended count, open purchase count, total stock value and
+     * last delivery date of each supplier, in id order.
+     */
+    @GetMapping("/suppliers/overview")
+    public List<SupplierOverview> getSupplierOverviews()
+    {
+        return supplierOverviewService.getOverviews();
+    }
+
+    /**
+     * GET method for the lead times observed from every supplier's deliveries, read from memory.
+     * @return List<SupplierLeadTime> - deliveries, mean, median and 95th percentile lead time in days of each supplier
+     * with at least one delivery, in id order.
+     */
+    @GetMapping("/suppliers/lead-times")
+    public List<SupplierLeadTime> getSupplierLeadTimes()
+    {
+        return leadTimeStats.getLeadTimes();
+    }
+
+    /**
+     * GET method for the lead times observed from a supplier's deliveries, read from memory.
+     * @param id - the id of the Supplier.
+     * @return SupplierLeadTime - deliveries, mean, median and 95th percentile lead time in days, null figures if the
+     * supplier has no deliveries yet.
+     */
+    @GetMapping("/supplier/lead-time/{id}")
+    public SupplierLeadTime getSupplierLeadTime(@PathVariable int id)
+    {
+        return leadTimeStats.getLeadTime(id);
+    }
+
     /**
      * Get method for returning the names of all Suppliers in the database.
      * @return List<String> - List of all supplier names
@@ -54,8 +109,7 @@ public class SupplierController
     @GetMapping("/suppliers/all-names")
     public List<String> getAllSupplierNames()
     {
-        List<Supplier> suppliers = supplierRepository.findAll();
-        return suppliers.stream().map(Supplier::getName).collect(Collectors.toList());
+        return supplierRepository.findAllNames();
     }
 
     /**
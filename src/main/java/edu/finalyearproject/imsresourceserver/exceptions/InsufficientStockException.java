@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Set;
+
+/**
+ * Thrown when an order asks for more units of one or more products than are on hand. Results in a 409 Conflict
+ * listing every SKU that couldn't be reserved.
+ */
+public class InsufficientStockException extends ResponseStatusException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final Set<Integer> skus;
+
+    public InsufficientStockException(Set<Integer> skus)
+    {
+        super(HttpStatus.CONFLICT, "Insufficient stock for product SKUs: " + skus);
+        this.skus = skus;
+    }
+
+    public Set<Integer> getSkus()
+    {
+        return skus;
+    }
+}
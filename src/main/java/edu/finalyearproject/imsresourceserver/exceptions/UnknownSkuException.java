@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Set;
+
+/**
+ * Thrown when a request references one or more product SKUs that don't exist. Results in a 400 Bad Request listing
+ * every unknown SKU in the request.
+ */
+public class UnknownSkuException extends ResponseStatusException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final Set<Integer> unknownSkus;
+
+    public UnknownSkuException(Set<Integer> unknownSkus)
+    {
+        super(HttpStatus.BAD_REQUEST, "Unknown product SKUs: " + unknownSkus);
+        this.unknownSkus = unknownSkus;
+    }
+
+    public Set<Integer> getUnknownSkus()
+    {
+        return unknownSkus;
+    }
+}
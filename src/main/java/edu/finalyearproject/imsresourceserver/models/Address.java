@@ -19,7 +19,8 @@ import javax.persistence.*;
 public class Address
 {
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy= GenerationType.SEQUENCE, generator = "addresses_id_seq")
+    @SequenceGenerator(name = "addresses_id_seq", sequenceName = "addresses_id_seq", allocationSize = 50)
     private Integer id;
 
     private int house_number;
@@ -0,0 +1,24 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Snapshot of the product catalog cache counters, returned by the cache stats endpoint.
+ */
+@Data
+@AllArgsConstructor
+public class CatalogCacheStats
+{
+    private long hits;
+    private long misses;
+    private long evictions;         // entries dropped to stay within the size bound
+    private long invalidations;     // products invalidated by writes
+    private int size;               // entries currently cached across all lookups
+}
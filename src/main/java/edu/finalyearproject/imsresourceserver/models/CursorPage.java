@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A single page of records returned by a keyset-paginated endpoint, with the cursor for the following page.
+ * @param <T> - the type of record in the page.
+ */
+@Data
+@AllArgsConstructor
+public class CursorPage<T>
+{
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private List<T> items;
+    private String nextCursor;      // null when this is the last page
+
+    /**
+     * Builds a page from rows fetched with a limit of size + 1, where the extra row only signals another page exists.
+     * @param rows - the rows returned by the repository.
+     * @param size - the requested page size.
+     * @param cursorOf - function returning the cursor position of a row.
+     * @param <T> - the type of record in the page.
+     * @return CursorPage - the page of at most size records.
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int size, Function<T, PageCursor> cursorOf)
+    {
+        if (rows.size() <= size)
+        {
+            return new CursorPage<>(rows, null);
+        }
+
+        List<T> items = rows.subList(0, size);
+        return new CursorPage<>(items, cursorOf.apply(items.get(size - 1)).encode());
+    }
+
+    /**
+     * Clamps a requested page size into the range 1 to MAX_PAGE_SIZE.
+     * @param requested - the page size asked for by the client.
+     * @return int - the page size to use.
+     */
+    public static int clampSize(int requested)
+    {
+        return Math.max(1, Math.min(requested, MAX_PAGE_SIZE));
+    }
+}
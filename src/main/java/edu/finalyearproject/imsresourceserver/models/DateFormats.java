@@ -0,0 +1,24 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Display format for dates in API responses, reports and emails. Dates are held as LocalDate everywhere else and only
+ * formatted here, with an immutable formatter that is safe to share between threads.
+ */
+public final class DateFormats
+{
+    public static final String DISPLAY_PATTERN = "dd-MM-yyyy";
+    public static final DateTimeFormatter DISPLAY = DateTimeFormatter.ofPattern(DISPLAY_PATTERN);
+
+    private DateFormats()
+    {
+
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Size of the in-memory demand counters, returned by the demand stats endpoint.
+ */
+@Data
+@AllArgsConstructor
+public class DemandCounterStats
+{
+    private int products;           // products with a row of counters
+    private int days;               // daily buckets kept per product
+    private long estimatedBytes;    // approximate heap used by the counters and their id lookup
+}
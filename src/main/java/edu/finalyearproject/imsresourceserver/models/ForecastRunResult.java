@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * Summary of one run of the forecasting job.
+ */
+@Data
+@AllArgsConstructor
+public class ForecastRunResult
+{
+    private int products;
+
+    @JsonFormat(pattern = DateFormats.DISPLAY_PATTERN)
+    private LocalDate generatedOn;
+
+    private long durationMillis;
+}
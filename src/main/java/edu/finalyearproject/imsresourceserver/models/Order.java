@@ -6,6 +6,7 @@
  */
 package edu.finalyearproject.imsresourceserver.models;
 
+import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import lombok.AllArgsConstructor;
@@ -13,9 +14,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import javax.persistence.*;
-import java.sql.Date;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -23,18 +24,19 @@ import java.util.Set;
  * Entity class representing a record in the Order table of the database.
  */
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_order_date_id", columnList = "order_date DESC, id DESC"),
+        @Index(name = "idx_orders_customer_id_order_date_id", columnList = "customer_id, order_date DESC, id DESC")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Order implements Comparable<Order>
 {
-    @Transient
-    public static final SimpleDateFormat DATE_FORMATTER = new SimpleDateFormat("dd-MM-yyyy");
-
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy= GenerationType.SEQUENCE, generator = "orders_id_seq")
+    @SequenceGenerator(name = "orders_id_seq", sequenceName = "orders_id_seq", allocationSize = 50)
     private Integer id;
 
     @JsonManagedReference
@@ -42,57 +44,46 @@ public class Order implements Comparable<Order>
     @JoinColumn(name="customer_id", nullable=false)
     private Customer customer;
 
-    private Date order_date;
+    @JsonFormat(pattern = DateFormats.DISPLAY_PATTERN)
+    private LocalDate order_date;
 
-    private Date arrival_date;
+    @JsonFormat(pattern = DateFormats.DISPLAY_PATTERN)
+    private LocalDate arrival_date;
 
-    @ManyToMany(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
-    @JoinTable(
-            name = "order_items",
-            joinColumns = @JoinColumn(name = "order_id"),
-            inverseJoinColumns = @JoinColumn(name = "product_id")
-    )
-    private Set<Product> products = new HashSet<>();
+    @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
+    private Set<OrderItem> items = new HashSet<>();
 
-    @Transient
-    private Float totalCost;
+    @Column(name = "total_cost", precision = 12, scale = 2, nullable = false)
+    private BigDecimal totalCost = BigDecimal.ZERO.setScale(2);
 
-    public Date getOrderDateObject()
+    /**
+     * Adds a line to the order for a quantity of a product.
+     * @param product - the Product ordered.
+     * @param quantity - the number of units ordered.
+     */
+    public void addItem(Product product, int quantity)
     {
-        return order_date;
+        OrderItem item = new OrderItem(product, quantity);
+        item.setOrder(this);
+        items.add(item);
+        totalCost = totalCost.add(lineCost(product, quantity));
     }
 
-    @Override
-    public int compareTo(Order order)
+    /**
+     * Calculates the exact cost of an order line, rounding the product price to pence first.
+     * @param product - the Product ordered.
+     * @param quantity - the number of units ordered.
+     * @return BigDecimal - the cost of the line to 2 decimal places.
+     */
+    public static BigDecimal lineCost(Product product, int quantity)
     {
-        return order_date.compareTo(order.getOrderDateObject());
+        return new BigDecimal(Float.toString(product.getPrice())).setScale(2, RoundingMode.HALF_UP)
+                .multiply(BigDecimal.valueOf(quantity));
     }
 
-    public String getOrder_date()
-    {
-        return DATE_FORMATTER.format(order_date);
-    }
-
-    public String getArrival_date()
-    {
-        if (arrival_date == null)
-        {
-            return "null";
-        }
-        return DATE_FORMATTER.format(arrival_date);
-    }
-
-    public String getTotalCost()
+    @Override
+    public int compareTo(Order order)
     {
-        DecimalFormat df = new DecimalFormat();
-        df.setMaximumFractionDigits(2);
-        Float totalCost = Float.valueOf(0);
-
-        for (Product product : products)
-        {
-            totalCost += product.getPrice();
-        }
-
-        return df.format(totalCost);
+        return order_date.compareTo(order.getOrder_date());
     }
 }
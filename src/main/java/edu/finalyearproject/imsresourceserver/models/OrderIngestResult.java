@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Outcome of one order submitted to the '/orders/batch' endpoint.
+ */
+@Data
+@AllArgsConstructor
+public class OrderIngestResult
+{
+    private int index;          // position of the order in the submitted batch
+    private Integer orderId;    // id of the created order, null if rejected
+    private String error;       // reason the order was rejected, null if accepted
+
+    public static OrderIngestResult accepted(int index, Integer orderId)
+    {
+        return new OrderIngestResult(index, orderId, null);
+    }
+
+    public static OrderIngestResult rejected(int index, String error)
+    {
+        return new OrderIngestResult(index, null, error);
+    }
+
+    public boolean isAccepted()
+    {
+        return orderId != null;
+    }
+}
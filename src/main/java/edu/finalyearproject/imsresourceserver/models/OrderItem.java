@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.*;
+
+/**
+ * Entity class representing a record in the order_items table of the database: one line of a customer Order, holding
+ * the Product ordered and how many units of it.
+ */
+@Entity
+@Table(name = "order_items")
+@Data
+@NoArgsConstructor
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+public class OrderItem
+{
+    @JsonIgnore
+    @EmbeddedId
+    @EqualsAndHashCode.Exclude
+    private OrderItemId id = new OrderItemId();
+
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @MapsId("orderId")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "order_id")
+    private Order order;
+
+    @MapsId("productId")
+    @ManyToOne(fetch = FetchType.EAGER)
+    @JoinColumn(name = "product_id")
+    private Product product;
+
+    private int quantity;
+
+    /**
+     * Custom constructor for creating a new order line.
+     * @param product - the Product ordered.
+     * @param quantity - the number of units ordered.
+     */
+    public OrderItem(Product product, int quantity)
+    {
+        this.product = product;
+        this.quantity = quantity;
+    }
+}
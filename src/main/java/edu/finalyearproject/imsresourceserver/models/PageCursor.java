@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of the last record returned in a page of Orders or Purchases, sorted newest first by date then id.
+ * Encoded as an opaque URL-safe token so clients can pass it back to fetch the next page.
+ */
+@Data
+@AllArgsConstructor
+public class PageCursor
+{
+    private static final String SEPARATOR = "_";
+
+    private LocalDate date;
+    private Integer id;
+
+    /**
+     * Encodes the cursor as an opaque token.
+     * @return String - URL-safe token representing this position.
+     */
+    public String encode()
+    {
+        String raw = date.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token previously produced by encode().
+     * @param token - the token passed back by the client.
+     * @return PageCursor - the decoded position.
+     * @throws ResponseStatusException - 400 Bad Request if the token is malformed.
+     */
+    public static PageCursor decode(String token)
+    {
+        try
+        {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR);
+            return new PageCursor(LocalDate.parse(parts[0]), Integer.valueOf(parts[1]));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException | DateTimeParseException e)
+        {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page cursor: " + token);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One supplier's purchase order in a ReorderPlan.
+ */
+@Data
+@AllArgsConstructor
+public class PlannedPurchase
+{
+    private Integer supplierId;
+    private String supplierName;
+
+    // null on a dry run, or until the purchase is saved
+    private Integer purchaseId;
+
+    private List<PlannedReorder> products;
+}
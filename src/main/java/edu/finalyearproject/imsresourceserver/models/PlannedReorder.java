@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * A product the reorder planner decided to order, with the projection that triggered it.
+ */
+@Data
+@AllArgsConstructor
+public class PlannedReorder
+{
+    private Integer productId;
+    private String name;
+    private int inventoryOnHand;
+    private float dailyDemand;
+
+    // null when the product has no demand to project from
+    @JsonFormat(pattern = DateFormats.DISPLAY_PATTERN)
+    private LocalDate stockOutDate;
+
+    private int reorderQuantity;
+}
@@ -9,20 +9,24 @@ package edu.finalyearproject.imsresourceserver.models;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
 
 /**
- * Model Class for product records in the 'products' database table.
+ * Model Class for product records in the 'products' database table. Updates write only the columns that changed, so
+ * saving a product that was read before a stock reservation committed can't put its old inventory_on_hand back.
  */
 @Entity
 @Table(name = "products")
+@DynamicUpdate
 @Data
 @AllArgsConstructor
 public class Product
 {
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy= GenerationType.SEQUENCE, generator = "products_id_seq")
+    @SequenceGenerator(name = "products_id_seq", sequenceName = "products_id_seq", allocationSize = 50)
     private Integer id;
     private String name;
     private Integer sku;
@@ -0,0 +1,24 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * Total units of one product sold on one day, one row of the daily sales aggregate.
+ */
+@Data
+@AllArgsConstructor
+public class ProductDailySales
+{
+    private Integer productId;
+    private LocalDate date;
+    private Long unitsSold;
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDate;
+
+/**
+ * Entity class representing a record in the product_forecasts table: the latest demand forecast for a product,
+ * written by the forecasting job.
+ */
+@Entity
+@Table(name = "product_forecasts")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductForecast
+{
+    @Id
+    private Integer product_id;
+
+    @JsonFormat(pattern = DateFormats.DISPLAY_PATTERN)
+    private LocalDate generated_on;
+
+    private float daily_demand;     // expected units sold per day over the next week
+    private float weekly_demand;    // expected units sold over the next seven days
+}
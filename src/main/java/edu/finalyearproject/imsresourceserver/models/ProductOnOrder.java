@@ -0,0 +1,21 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Number of undelivered purchase orders a product is on, used to build the OnOrderLedger.
+ */
+@Data
+@AllArgsConstructor
+public class ProductOnOrder
+{
+    private Integer productId;
+    private Long openPurchases;
+}
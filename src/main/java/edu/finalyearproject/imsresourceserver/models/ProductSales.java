@@ -0,0 +1,21 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Total units of one product sold over a date range, one row of the grouped sales aggregate.
+ */
+@Data
+@AllArgsConstructor
+public class ProductSales
+{
+    private Integer productId;
+    private Long unitsSold;
+}
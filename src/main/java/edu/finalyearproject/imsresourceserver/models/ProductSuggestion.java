@@ -0,0 +1,22 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A single typeahead match returned by the product search endpoint.
+ */
+@Data
+@AllArgsConstructor
+public class ProductSuggestion
+{
+    private Integer id;
+    private String name;
+    private Integer sku;
+}
@@ -6,14 +6,14 @@
  */
 package edu.finalyearproject.imsresourceserver.models;
 
+import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
 import javax.persistence.*;
-import java.sql.Date;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -21,17 +21,15 @@ import java.util.Set;
  * Entity class representing a record in the Purchase table of the database.
  */
 @Entity
-@Table(name = "purchases")
+@Table(name = "purchases", indexes = @Index(name = "idx_purchases_purchase_date_id", columnList = "purchase_date DESC, id DESC"))
 @Data
 @AllArgsConstructor
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Purchase implements Comparable<Purchase>
 {
-    @Transient
-    public static final SimpleDateFormat DATE_FORMATTER = new SimpleDateFormat("dd-MM-yyyy");
-
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy= GenerationType.SEQUENCE, generator = "purchases_id_seq")
+    @SequenceGenerator(name = "purchases_id_seq", sequenceName = "purchases_id_seq", allocationSize = 50)
     private Integer id;
 
     @JsonManagedReference
@@ -39,9 +37,11 @@ public class Purchase implements Comparable<Purchase>
     @JoinColumn(name="supplier_id", nullable=false)
     private Supplier supplier;
 
-    private Date purchase_date;
+    @JsonFormat(pattern = DateFormats.DISPLAY_PATTERN)
+    private LocalDate purchase_date;
 
-    private Date arrival_date;
+    @JsonFormat(pattern = DateFormats.DISPLAY_PATTERN)
+    private LocalDate arrival_date;
 
     @ManyToMany(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JoinTable(
@@ -56,35 +56,16 @@ public class Purchase implements Comparable<Purchase>
 
     }
 
-    public Purchase(Supplier supplier, Date date, Set<Product> products)
+    public Purchase(Supplier supplier, LocalDate date, Set<Product> products)
     {
         this.supplier = supplier;
         this.purchase_date = date;
         this.products = products;
     }
 
-    public Date getPurchaseDateObject()
-    {
-        return purchase_date;
-    }
-
     @Override
     public int compareTo(Purchase purchase)
     {
-        return purchase_date.compareTo(purchase.getPurchaseDateObject());
-    }
-
-    public String getPurchase_date()
-    {
-        return DATE_FORMATTER.format(purchase_date);
-    }
-
-    public String getArrival_date()
-    {
-        if (arrival_date == null)
-        {
-            return "null";
-        }
-        return DATE_FORMATTER.format(arrival_date);
+        return purchase_date.compareTo(purchase.getPurchase_date());
     }
 }
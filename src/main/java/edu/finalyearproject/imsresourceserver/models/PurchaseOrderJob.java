@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Snapshot of a background job sending the invoices for a batch of purchase orders. The purchase orders themselves
+ * are saved before the job is queued.
+ */
+@Data
+@AllArgsConstructor
+public class PurchaseOrderJob
+{
+    public enum Status
+    {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private long id;
+    private Status status;
+    private List<Integer> purchaseIds;
+    private int invoicesSent;
+
+    // purchase orders whose invoice couldn't be generated or emailed, the job is FAILED if there are any
+    private List<Integer> failedPurchaseIds;
+}
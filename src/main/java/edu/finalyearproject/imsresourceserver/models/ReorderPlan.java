@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Result of one reorder planner run: the purchase orders it raised, or would raise on a dry run.
+ */
+@Data
+@AllArgsConstructor
+public class ReorderPlan
+{
+    @JsonFormat(pattern = DateFormats.DISPLAY_PATTERN)
+    private LocalDate plannedOn;
+
+    private boolean dryRun;
+
+    private int productsChecked;
+
+    private List<PlannedPurchase> purchases;
+}
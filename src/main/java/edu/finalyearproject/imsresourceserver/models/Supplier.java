@@ -25,7 +25,8 @@ import javax.persistence.*;
 public class Supplier
 {
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy= GenerationType.SEQUENCE, generator = "suppliers_id_seq")
+    @SequenceGenerator(name = "suppliers_id_seq", sequenceName = "suppliers_id_seq", allocationSize = 50)
     private Integer id;
     private String name;
     private Float lead_time;
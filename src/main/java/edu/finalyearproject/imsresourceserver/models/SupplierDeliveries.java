@@ -0,0 +1,25 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * Number of a supplier's purchases ordered and delivered on the same pair of dates, used to build LeadTimeStats.
+ */
+@Data
+@AllArgsConstructor
+public class SupplierDeliveries
+{
+    private Integer supplierId;
+    private LocalDate purchaseDate;
+    private LocalDate arrivalDate;
+    private Long deliveries;
+}
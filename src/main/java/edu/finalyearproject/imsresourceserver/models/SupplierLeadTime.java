@@ -0,0 +1,26 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Observed lead times of a supplier's delivered purchase orders, in days from purchase to arrival.
+ */
+@Data
+@AllArgsConstructor
+public class SupplierLeadTime
+{
+    private Integer supplierId;
+    private long deliveries;
+
+    // all null when the supplier has no deliveries yet
+    private Float meanDays;
+    private Integer p50Days;
+    private Integer p95Days;
+}
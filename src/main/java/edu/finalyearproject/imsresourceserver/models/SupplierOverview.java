@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.models;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * Summary of a supplier's products and purchase orders for the supplier screen.
+ */
+@Data
+@AllArgsConstructor
+public class SupplierOverview
+{
+    private Integer supplierId;
+    private String name;
+    private Float leadTime;
+    private long productCount;
+    private long suspendedCount;
+    private long openPurchaseCount;
+
+    // price times inventory on hand, summed over all the supplier's products
+    private double stockValue;
+
+    // null if no purchase from the supplier has been delivered
+    @JsonFormat(pattern = DateFormats.DISPLAY_PATTERN)
+    private LocalDate lastDelivery;
+}
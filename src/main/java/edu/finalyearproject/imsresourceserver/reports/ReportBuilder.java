@@ -6,7 +6,9 @@
  */
 package edu.finalyearproject.imsresourceserver.reports;
 
+import edu.finalyearproject.imsresourceserver.models.DateFormats;
 import edu.finalyearproject.imsresourceserver.models.Order;
+import edu.finalyearproject.imsresourceserver.models.OrderItem;
 import edu.finalyearproject.imsresourceserver.models.Product;
 import edu.finalyearproject.imsresourceserver.models.Purchase;
 import edu.finalyearproject.imsresourceserver.requests.StockMovement;
@@ -24,27 +26,45 @@ import java.util.Set;
 /**
  * Builder class to set context and generate HTML reports based on data and HTML template passed to it.
  * This uses a Builder design pattern to prevent context from consecutive report generations affecting one another.
+ * The Spring bean holds only the shared TemplateEngine: withContext() hands each report its own builder and Context,
+ * so reports can be generated in parallel from any number of threads without seeing each other's variables.
  */
 @Component
 @Data
 public class ReportBuilder
 {
+    private static final Locale LOCALE = Locale.ENGLISH;
+
     @Autowired
     private TemplateEngine templateEngine;
-    private Context context;
+    private final Context context;
+
+    /**
+     * Creates the shared builder bean, which has no context of its own and only starts reports via withContext().
+     */
+    public ReportBuilder()
+    {
+        this(null, null);
+    }
+
+    private ReportBuilder(TemplateEngine templateEngine, Context context)
+    {
+        this.templateEngine = templateEngine;
+        this.context = context;
+    }
 
     /**
      * Builder method for creating a new Context for a report and setting the Locale.
-     * All new reports to be generated must call this to re-initialise the context and remove any data from previous
-     * reports.
-     * @return ReportBuilder - the current instance of the builder.
+     * All new reports to be generated must call this to get a builder of their own, which shares this builder's
+     * TemplateEngine but none of its data, so concurrent reports never affect one another.
+     * @return ReportBuilder - a new builder for a single report.
      */
     public ReportBuilder withContext()
     {
-        context = new Context();
-        context.setLocale(Locale.ENGLISH);
+        Context reportContext = new Context(LOCALE);
+        reportContext.setVariable("dateFormatter", DateFormats.DISPLAY);
 
-        return this;
+        return new ReportBuilder(templateEngine, reportContext);
     }
 
     /**
@@ -85,6 +105,18 @@ public class ReportBuilder
         return this;
     }
 
+    /**
+     * Builder method for adding a Set of OrderItem lines to the context.
+     * @param listName - the variable name of the set.
+     * @param items - the set of OrderItem objects.
+     * @return ReportBuilder - the current instance of the builder.
+     */
+    public ReportBuilder withOrderItemList(String listName, Set<OrderItem> items)
+    {
+        context.setVariable(listName, items);
+        return this;
+    }
+
     /**
      * Builder method for adding a List of StockMovement objects to the context.
      * @param listName - the variable name of the list.
@@ -125,9 +157,14 @@ public class ReportBuilder
      * Builder return method for returning the HTML String of the generated report.
      * @param templateName - the name of the HTML template to pass the context to.
      * @return String - the generated HTML String of the report.
+     * @throws IllegalStateException - if called on a builder not returned by withContext().
      */
     public String buildReport(String templateName)
     {
+        if (context == null)
+        {
+            throw new IllegalStateException("withContext() must be called before building a report");
+        }
         return templateEngine.process(templateName, context);
     }
 }
@@ -7,9 +7,12 @@
 package edu.finalyearproject.imsresourceserver.repositories;
 
 import edu.finalyearproject.imsresourceserver.models.Customer;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -20,4 +23,12 @@ public interface CustomerRepository extends CrudRepository<Customer, Integer>
 {
     List<Customer> findAll();
     Customer findByid(Integer id);
+
+    /**
+     * Returns which of the given ids belong to existing customers, without loading the customers.
+     * @param ids - the customer ids to check.
+     * @return List<Integer> - the ids that exist.
+     */
+    @Query("SELECT c.id FROM Customer c WHERE c.id IN :ids")
+    List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
 }
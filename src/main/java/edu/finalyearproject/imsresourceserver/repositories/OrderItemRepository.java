@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.repositories;
+
+import edu.finalyearproject.imsresourceserver.models.OrderItem;
+import edu.finalyearproject.imsresourceserver.models.OrderItemId;
+import edu.finalyearproject.imsresourceserver.models.ProductDailySales;
+import edu.finalyearproject.imsresourceserver.models.ProductSales;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * JPA Repository to perform queries on the order_items table in the database.
+ */
+@Repository
+public interface OrderItemRepository extends CrudRepository<OrderItem, OrderItemId>
+{
+    /**
+     * Sums the units of a product sold in orders placed on or between two dates.
+     * @param productId - the id of the Product.
+     * @param startDate - the inclusive lower bound of the range.
+     * @param endDate - the inclusive upper bound of the range.
+     * @return long - the total units sold, 0 if there were no sales.
+     */
+    @Query("SELECT COALESCE(SUM(i.quantity), 0) FROM OrderItem i " +
+            "WHERE i.product.id = :productId AND i.order.order_date >= :startDate AND i.order.order_date <= :endDate")
+    long sumQuantitySold(@Param("productId") Integer productId, @Param("startDate") LocalDate startDate,
+                         @Param("endDate") LocalDate endDate);
+
+    /**
+     * Sums the units sold of every product in orders placed on or between two dates, in one grouped query.
+     * @param startDate - the inclusive lower bound of the range.
+     * @param endDate - the inclusive upper bound of the range.
+     * @return List<ProductSales> - one row per product with sales in the range.
+     */
+    @Query("SELECT new edu.finalyearproject.imsresourceserver.models.ProductSales(i.product.id, SUM(i.quantity)) " +
+            "FROM OrderItem i WHERE i.order.order_date >= :startDate AND i.order.order_date <= :endDate " +
+            "GROUP BY i.product.id")
+    List<ProductSales> sumQuantitySoldByProduct(@Param("startDate") LocalDate startDate,
+                                                @Param("endDate") LocalDate endDate);
+
+    /**
+     * Sums the units sold of a set of products in orders placed on or between two dates, in one grouped query.
+     * @param productIds - the ids of the Products.
+     * @param startDate - the inclusive lower bound of the range.
+     * @param endDate - the inclusive upper bound of the range.
+     * @return List<ProductSales> - one row per requested product with sales in the range.
+     */
+    @Query("SELECT new edu.finalyearproject.imsresourceserver.models.ProductSales(i.product.id, SUM(i.quantity)) " +
+            "FROM OrderItem i WHERE i.product.id IN :productIds " +
+            "AND i.order.order_date >= :startDate AND i.order.order_date <= :endDate " +
+            "GROUP BY i.product.id")
+    List<ProductSales> sumQuantitySoldByProductIn(@Param("productIds") Collection<Integer> productIds,
+                                                  @Param("startDate") LocalDate startDate,
+                                                  @Param("endDate") LocalDate endDate);
+
+    /**
+     * Sums the units sold of every product per day, for orders placed on or between two dates.
+     * @param startDate - the inclusive lower bound of the range.
+     * @param endDate - the inclusive upper bound of the range.
+     * @return List<ProductDailySales> - one row per product and day with sales.
+     */
+    @Query("SELECT new edu.finalyearproject.imsresourceserver.models.ProductDailySales(" +
+            "i.product.id, i.order.order_date, SUM(i.quantity)) " +
+            "FROM OrderItem i WHERE i.order.order_date >= :startDate AND i.order.order_date <= :endDate " +
+            "GROUP BY i.product.id, i.order.order_date")
+    List<ProductDailySales> sumQuantitySoldByProductAndDay(@Param("startDate") LocalDate startDate,
+                                                           @Param("endDate") LocalDate endDate);
+}
@@ -9,9 +9,13 @@ package edu.finalyearproject.imsresourceserver.repositories;
 import edu.finalyearproject.imsresourceserver.models.Customer;
 import edu.finalyearproject.imsresourceserver.models.Order;
 import edu.finalyearproject.imsresourceserver.models.Product;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -23,5 +27,94 @@ public interface OrderRepository extends CrudRepository<Order, Integer>
     List<Order> findAll();
     Order findByid(int id);
     List<Order> findBycustomer(Customer customer);
-    List<Order> findByproducts(Product product);
+
+    /**
+     * Returns all orders with a line for the given product.
+     * @param product - the Product to search for.
+     * @return List<Order> - the orders containing the product.
+     */
+    @Query("SELECT o FROM Order o JOIN o.items i WHERE i.product = :product")
+    List<Order> findContainingProduct(@Param("product") Product product);
+
+    /**
+     * Returns all orders placed strictly between two dates, oldest first. Uses the index on order_date.
+     * @param startDate - the exclusive lower bound of the range.
+     * @param endDate - the exclusive upper bound of the range.
+     * @return List<Order> - the orders within the range.
+     */
+    @Query("SELECT o FROM Order o WHERE o.order_date > :startDate AND o.order_date < :endDate " +
+            "ORDER BY o.order_date, o.id")
+    List<Order> findAllOrderedBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    /**
+     * Returns all orders placed strictly between two dates with their lines and products, oldest first.
+     * @param startDate - the exclusive lower bound of the range.
+     * @param endDate - the exclusive upper bound of the range.
+     * @return List<Order> - the orders within the range with their lines initialised.
+     */
+    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items i LEFT JOIN FETCH i.product " +
+            "WHERE o.order_date > :startDate AND o.order_date < :endDate ORDER BY o.order_date, o.id")
+    List<Order> findAllWithItemsOrderedBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    /**
+     * Returns the newest orders, sorted by order_date then id descending, limited by the page request.
+     * @param pageable - page request carrying the row limit.
+     * @return List<Order> - the first page of orders.
+     */
+    @Query("SELECT o FROM Order o ORDER BY o.order_date DESC, o.id DESC")
+    List<Order> findNewest(Pageable pageable);
+
+    /**
+     * Returns the orders that sort after the given cursor position, newest first, limited by the page request. The
+     * redundant order_date bound lets the planner start the index scan at the cursor rather than at the newest order.
+     * @param date - the order_date of the last order on the previous page.
+     * @param id - the id of the last order on the previous page.
+     * @param pageable - page request carrying the row limit.
+     * @return List<Order> - the next page of orders.
+     */
+    @Query("SELECT o FROM Order o WHERE o.order_date <= :date " +
+            "AND (o.order_date < :date OR (o.order_date = :date AND o.id < :id)) " +
+            "ORDER BY o.order_date DESC, o.id DESC")
+    List<Order> findNewestBefore(@Param("date") LocalDate date, @Param("id") Integer id, Pageable pageable);
+
+    /**
+     * Returns the ids of a customer's newest orders, sorted by order_date then id descending.
+     * @param customerId - the id of the customer.
+     * @param pageable - page request carrying the row limit.
+     * @return List<Integer> - the ids of the first page of the customer's orders.
+     */
+    @Query("SELECT o.id FROM Order o WHERE o.customer.id = :customerId ORDER BY o.order_date DESC, o.id DESC")
+    List<Integer> findNewestIdsForCustomer(@Param("customerId") Integer customerId, Pageable pageable);
+
+    /**
+     * Returns the ids of a customer's orders that sort after the given cursor position, newest first. The redundant
+     * order_date bound lets the planner start the scan of the customer's index entries at the cursor.
+     * @param customerId - the id of the customer.
+     * @param date - the order_date of the last order on the previous page.
+     * @param id - the id of the last order on the previous page.
+     * @param pageable - page request carrying the row limit.
+     * @return List<Integer> - the ids of the next page of the customer's orders.
+     */
+    @Query("SELECT o.id FROM Order o WHERE o.customer.id = :customerId " +
+            "AND o.order_date <= :date AND (o.order_date < :date OR (o.order_date = :date AND o.id < :id)) " +
+            "ORDER BY o.order_date DESC, o.id DESC")
+    List<Integer> findNewestIdsForCustomerBefore(@Param("customerId") Integer customerId, @Param("date") LocalDate date,
+                                                 @Param("id") Integer id, Pageable pageable);
+
+    /**
+     * Returns the orders with the given ids and their lines and products in a single query, newest first.
+     * @param ids - the ids of the orders.
+     * @return List<Order> - the orders with their lines initialised.
+     */
+    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items i LEFT JOIN FETCH i.product WHERE o.id IN :ids " +
+            "ORDER BY o.order_date DESC, o.id DESC")
+    List<Order> findAllWithItemsByIdIn(@Param("ids") List<Integer> ids);
+
+    /**
+     * Counts the orders placed by a customer.
+     * @param customerId - the id of the customer.
+     * @return long - the number of orders.
+     */
+    @Query("SELECT COUNT(o) FROM Order o WHERE o.customer.id = :customerId")
+    long countForCustomer(@Param("customerId") Integer customerId);
 }
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.repositories;
+
+import edu.finalyearproject.imsresourceserver.models.ProductForecast;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * JPA Repository to perform queries on the product_forecasts table in the database.
+ */
+@Repository
+public interface ProductForecastRepository extends CrudRepository<ProductForecast, Integer>
+{
+    List<ProductForecast> findAll();
+
+    /**
+     * Returns the forecasts for a set of products.
+     * @param productIds - the ids of the Products.
+     * @return List<ProductForecast> - the forecast of each product that has one.
+     */
+    @Query("SELECT f FROM ProductForecast f WHERE f.product_id IN :productIds")
+    List<ProductForecast> findByProductIds(@Param("productIds") Collection<Integer> productIds);
+}
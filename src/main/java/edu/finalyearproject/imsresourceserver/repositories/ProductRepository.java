@@ -7,10 +7,15 @@
 package edu.finalyearproject.imsresourceserver.repositories;
 
 import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.ProductSuggestion;
 import edu.finalyearproject.imsresourceserver.models.Supplier;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,6 +31,88 @@ public interface ProductRepository extends CrudRepository<Product, Integer>
     Product findByname(String name);
     Optional<Product> findById(Integer id);
     Product findBysku(Integer sku);
+    List<Product> findByskuIn(Collection<Integer> skus);
+
+    /**
+     * Selects just the name column, without loading Product entities or joining their suppliers.
+     * @return List<String> - the names of all products, in id order.
+     */
+    @Query("SELECT p.name FROM Product p ORDER BY p.id")
+    List<String> findAllNames();
+
+    /**
+     * Selects just the id column.
+     * @return List<Integer> - the ids of all products, in order.
+     */
+    @Query("SELECT p.id FROM Product p ORDER BY p.id")
+    List<Integer> findAllIds();
+
+    /**
+     * Returns every product that isn't suspended with its supplier fetched in the same query.
+     * @return List<Product> - the active products, in id order.
+     */
+    @Query("SELECT p FROM Product p JOIN FETCH p.supplier WHERE p.suspended = false ORDER BY p.id")
+    List<Product> findAllActiveWithSupplier();
+
+    /**
+     * Selects just the columns the search index needs, without loading Product entities or joining their suppliers.
+     * @return List<ProductSuggestion> - id, name and sku of every product.
+     */
+    @Query("SELECT new edu.finalyearproject.imsresourceserver.models.ProductSuggestion(p.id, p.name, p.sku) " +
+            "FROM Product p")
+    List<ProductSuggestion> findAllSuggestions();
+
+    /**
+     * Selects id, name and sku for a set of products.
+     * @param ids - the ids of the Products.
+     * @return List<ProductSuggestion> - id, name and sku of each product that exists.
+     */
+    @Query("SELECT new edu.finalyearproject.imsresourceserver.models.ProductSuggestion(p.id, p.name, p.sku) " +
+            "FROM Product p WHERE p.id IN :ids")
+    List<ProductSuggestion> findSuggestionsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Reads a set of products as new, unmanaged instances built from the current rows. Unlike findAllById it never
+     * hands back an entity already loaded in the persistence context, so stock changed by a JDBC update since then is
+     * seen.
+     * @param ids - the ids of the Products.
+     * @return List<Product> - a copy of each product that exists.
+     */
+    @Query("SELECT new edu.finalyearproject.imsresourceserver.models.Product(p.id, p.name, p.sku, p.price, " +
+            "p.inventory_on_hand, p.reorder_threshold, p.reorder_quantity, p.suspended, s) " +
+            "FROM Product p JOIN p.supplier s WHERE p.id IN :ids")
+    List<Product> findCopiesByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Atomically takes units of a product from stock, only if at least that many are on hand.
+     * @param id - the id of the Product.
+     * @param quantity - the number of units to take.
+     * @return int - 1 if the stock was taken, 0 if there wasn't enough on hand.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Product p SET p.inventory_on_hand = p.inventory_on_hand - :quantity " +
+            "WHERE p.id = :id AND p.inventory_on_hand >= :quantity")
+    int decrementStockIfAvailable(@Param("id") Integer id, @Param("quantity") int quantity);
+
+    /**
+     * Atomically adds a (possibly negative) number of units to a product's stock.
+     * @param id - the id of the Product.
+     * @param delta - the number of units to add.
+     * @return int - the number of products updated.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Product p SET p.inventory_on_hand = p.inventory_on_hand + :delta WHERE p.id = :id")
+    int adjustStock(@Param("id") Integer id, @Param("delta") int delta);
+
+    /**
+     * Adds each product's reorder quantity to its stock, for every product on a purchase, in one statement.
+     * @param purchaseId - the id of the Purchase being received.
+     * @return int - the number of products updated.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Product p SET p.inventory_on_hand = p.inventory_on_hand + p.reorder_quantity WHERE p.id IN " +
+            "(SELECT pp.id FROM Purchase pu JOIN pu.products pp WHERE pu.id = :purchaseId)")
+    int receivePurchasedStock(@Param("purchaseId") Integer purchaseId);
 
     @Override
     <S extends Product> S save(S s);
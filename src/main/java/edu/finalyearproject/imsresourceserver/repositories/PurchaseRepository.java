@@ -7,11 +7,18 @@
 package edu.finalyearproject.imsresourceserver.repositories;
 
 import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.ProductOnOrder;
 import edu.finalyearproject.imsresourceserver.models.Purchase;
 import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.models.SupplierDeliveries;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -25,6 +32,76 @@ public interface PurchaseRepository extends CrudRepository<Purchase, Integer>
     List<Purchase> findBysupplier(Supplier supplier);
     List<Purchase> findByproducts(Product product);
 
+    /**
+     * Returns all purchases made strictly between two dates, oldest first. Uses the index on purchase_date.
+     * @param startDate - the exclusive lower bound of the range.
+     * @param endDate - the exclusive upper bound of the range.
+     * @return List<Purchase> - the purchases within the range.
+     */
+    @Query("SELECT p FROM Purchase p WHERE p.purchase_date > :startDate AND p.purchase_date < :endDate " +
+            "ORDER BY p.purchase_date, p.id")
+    List<Purchase> findAllPurchasedBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    /**
+     * Returns the newest purchases, sorted by purchase_date then id descending, limited by the page request.
+     * @param pageable - page request carrying the row limit.
+     * @return List<Purchase> - the first page of purchases.
+     */
+    @Query("SELECT p FROM Purchase p ORDER BY p.purchase_date DESC, p.id DESC")
+    List<Purchase> findNewest(Pageable pageable);
+
+    /**
+     * Returns the purchases that sort after the given cursor position, newest first, limited by the page request.
+     * The redundant purchase_date bound lets the planner start the index scan at the cursor rather than at the newest
+     * purchase.
+     * @param date - the purchase_date of the last purchase on the previous page.
+     * @param id - the id of the last purchase on the previous page.
+     * @param pageable - page request carrying the row limit.
+     * @return List<Purchase> - the next page of purchases.
+     */
+    @Query("SELECT p FROM Purchase p WHERE p.purchase_date <= :date " +
+            "AND (p.purchase_date < :date OR (p.purchase_date = :date AND p.id < :id)) " +
+            "ORDER BY p.purchase_date DESC, p.id DESC")
+    List<Purchase> findNewestBefore(@Param("date") LocalDate date, @Param("id") Integer id, Pageable pageable);
+
+    /**
+     * Counts the purchase orders that haven't been delivered yet for each product on one. Uses the partial index on
+     * undelivered purchases.
+     * @return List<ProductOnOrder> - the number of open purchase orders per product.
+     */
+    @Query("SELECT new edu.finalyearproject.imsresourceserver.models.ProductOnOrder(p.id, COUNT(pu)) " +
+            "FROM Purchase pu JOIN pu.products p WHERE pu.arrival_date IS NULL GROUP BY p.id")
+    List<ProductOnOrder> countOpenPurchasesByProduct();
+
+    /**
+     * Selects the ids of the products on a purchase.
+     * @param id - the id of the Purchase.
+     * @return List<Integer> - the ids of its products.
+     */
+    @Query("SELECT p.id FROM Purchase pu JOIN pu.products p WHERE pu.id = :id")
+    List<Integer> findProductIds(@Param("id") Integer id);
+
+    /**
+     * Atomically sets a purchase's arrival date, only if it hasn't arrived yet. The row lock taken by the update makes
+     * concurrent receipts of the same purchase wait, then find it already delivered.
+     * @param id - the id of the Purchase.
+     * @param date - the arrival date.
+     * @return int - 1 if the purchase was marked delivered, 0 if it doesn't exist or was already delivered.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Purchase p SET p.arrival_date = :date WHERE p.id = :id AND p.arrival_date IS NULL")
+    int markDeliveredIfOpen(@Param("id") Integer id, @Param("date") LocalDate date);
+
+    /**
+     * Counts delivered purchases by supplier and by the dates they were raised and arrived, so lead time history is
+     * read as one row per distinct lead time rather than one per purchase.
+     * @return List<SupplierDeliveries> - delivery counts per supplier, purchase date and arrival date.
+     */
+    @Query("SELECT new edu.finalyearproject.imsresourceserver.models.SupplierDeliveries(" +
+            "p.supplier.id, p.purchase_date, p.arrival_date, COUNT(p)) FROM Purchase p " +
+            "WHERE p.arrival_date IS NOT NULL GROUP BY p.supplier.id, p.purchase_date, p.arrival_date")
+    List<SupplierDeliveries> countDeliveriesBySupplierAndDates();
+
     @Override
     <S extends Purchase> S save(S s);
 }
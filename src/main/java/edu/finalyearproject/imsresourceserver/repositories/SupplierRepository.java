@@ -7,6 +7,7 @@
 package edu.finalyearproject.imsresourceserver.repositories;
 
 import edu.finalyearproject.imsresourceserver.models.Supplier;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 
 import java.util.List;
@@ -19,4 +20,11 @@ public interface SupplierRepository extends CrudRepository<Supplier, Integer>
     List<Supplier> findAll();
 
     Supplier findByname(String name);
+
+    /**
+     * Selects just the name column rather than loading every Supplier entity.
+     * @return List<String> - the names of all suppliers, in id order.
+     */
+    @Query("SELECT s.name FROM Supplier s ORDER BY s.id")
+    List<String> findAllNames();
 }
@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.DemandCounterStats;
+import edu.finalyearproject.imsresourceserver.models.ProductDailySales;
+import edu.finalyearproject.imsresourceserver.repositories.OrderItemRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory units sold per product per day over the last few days, so average daily sales can be read without
+ * aggregating order history. Each product has a ring of daily buckets in one flat int array, indexed by epoch day
+ * modulo the ring length; a row's stale buckets are cleared lazily when a later day is first written to it. Built
+ * from the database on startup and then kept current by recording each order once it has committed, see
+ * SnapshotRebuilder.
+ * At the default 32 days a 100,000 product catalog takes roughly 20 MB, see estimateBytes.
+ */
+@Service
+public class DemandCounters
+{
+    // approximate heap per product in the id to row HashMap: node, boxed key and value, and table slot
+    private static final int ID_LOOKUP_BYTES_PER_PRODUCT = 72;
+
+    @Value("${demand.counters.days:32}")
+    private int days;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private Counters counters;
+
+    private final SnapshotRebuilder<Counters> rebuilder = new SnapshotRebuilder<>(DemandCounters.class,
+            "demand counters", this::load, this::install);
+
+    private Logger log = LoggerFactory.getLogger(DemandCounters.class);
+
+    /**
+     * Builds the counters when the application starts. If the database isn't reachable yet they are built on first use.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup()
+    {
+        rebuilder.buildOnStartup();
+    }
+
+    /**
+     * Reloads the daily sales still inside the ring from the database. Orders committing meanwhile wait for it, so
+     * each is counted exactly once, either by the reload or after it.
+     */
+    public void rebuild()
+    {
+        rebuilder.rebuild();
+    }
+
+    /**
+     * Records the units sold by a new order. Inside a transaction they are counted only once it commits.
+     * @param quantities - the units sold keyed by product id.
+     * @param date - the date the order was placed.
+     */
+    public void record(Map<Integer, Integer> quantities, LocalDate date)
+    {
+        Map<Integer, Integer> recorded = new HashMap<>(quantities);
+        rebuilder.afterCommit(() -> apply(recorded, date));
+    }
+
+    /**
+     * Whether a window of days is held in memory.
+     * @param window - the number of days back from today, the window covers window + 1 calendar days.
+     * @return boolean - true if unitsSold can answer for this window.
+     */
+    public boolean covers(int window)
+    {
+        return window >= 0 && window < days;
+    }
+
+    /**
+     * Sums the units of a product sold on or between two dates, in time proportional to the number of days.
+     * @param productId - the id of the Product.
+     * @param startDate - the inclusive lower bound of the range, no earlier than the ring reaches.
+     * @param endDate - the inclusive upper bound of the range.
+     * @return long - the total units sold, 0 if there were no sales.
+     */
+    public long unitsSold(int productId, LocalDate startDate, LocalDate endDate)
+    {
+        rebuilder.ensureBuilt();
+
+        lock.readLock().lock();
+        try
+        {
+            return counters.sum(productId, startDate.toEpochDay(), endDate.toEpochDay());
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns how many products are counted and roughly how much memory the counters take.
+     * @return DemandCounterStats - product count, days per product and estimated bytes.
+     */
+    public DemandCounterStats getStats()
+    {
+        lock.readLock().lock();
+        try
+        {
+            int products = counters == null ? 0 : counters.rows.size();
+            return new DemandCounterStats(products, days, estimateBytes(products, days));
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Estimates the heap used by the counters, e.g. 100,000 products over 32 days is 20,400,000 bytes.
+     * @param products - the number of products with counters.
+     * @param days - the number of daily buckets per product.
+     * @return long - approximate bytes, ignoring spare array capacity.
+     */
+    public static long estimateBytes(int products, int days)
+    {
+        long perProduct = (long) days * Integer.BYTES + Integer.BYTES + ID_LOOKUP_BYTES_PER_PRODUCT;
+        return products * perProduct;
+    }
+
+    private Counters load()
+    {
+        LocalDate today = LocalDate.now();
+        List<ProductDailySales> sales = orderItemRepository.sumQuantitySoldByProductAndDay(today.minusDays(days - 1), today);
+        Counters newCounters = new Counters(days);
+        for (ProductDailySales daySales : sales)
+        {
+            newCounters.add(daySales.getProductId(), daySales.getDate(), daySales.getUnitsSold().intValue());
+        }
+        return newCounters;
+    }
+
+    private void install(Counters newCounters)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            counters = newCounters;
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+        log.info("Built demand counters for " + newCounters.rows.size() + " products over " + days + " days");
+    }
+
+    private void apply(Map<Integer, Integer> quantities, LocalDate date)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            quantities.forEach((productId, quantity) -> counters.add(productId, date, quantity));
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ring buffers for every product, swapped as a whole on rebuild
+    private static class Counters
+    {
+        private final int days;
+        private final Map<Integer, Integer> rows = new HashMap<>();
+        private int[] counts = new int[0];
+        private int[] newestDay = new int[0];      // epoch day of the latest bucket written in each row
+
+        private Counters(int days)
+        {
+            this.days = days;
+        }
+
+        private void add(int productId, LocalDate date, int quantity)
+        {
+            int day = (int) date.toEpochDay();
+            Integer row = rows.get(productId);
+            if (row == null)
+            {
+                row = newRow(productId, day);
+            }
+
+            int newest = newestDay[row];
+            if (day > newest)
+            {
+                // clear buckets for the days skipped since the row was last written
+                for (int skipped = Math.max(newest + 1, day - days + 1); skipped <= day; skipped++)
+                {
+                    counts[row * days + Math.floorMod(skipped, days)] = 0;
+                }
+                newestDay[row] = day;
+            } else if (day <= newest - days)
+            {
+                return;
+            }
+            counts[row * days + Math.floorMod(day, days)] += quantity;
+        }
+
+        private long sum(int productId, long startDay, long endDay)
+        {
+            Integer row = rows.get(productId);
+            if (row == null)
+            {
+                return 0;
+            }
+
+            int newest = newestDay[row];
+            long from = Math.max(startDay, newest - days + 1);
+            long to = Math.min(endDay, newest);
+            long total = 0;
+            for (long day = from; day <= to; day++)
+            {
+                total += counts[row * days + (int) Math.floorMod(day, (long) days)];
+            }
+            return total;
+        }
+
+        private int newRow(int productId, int day)
+        {
+            int row = rows.size();
+            if (row == newestDay.length)
+            {
+                int capacity = Math.max(16, row * 2);
+                counts = Arrays.copyOf(counts, capacity * days);
+                newestDay = Arrays.copyOf(newestDay, capacity);
+            }
+            rows.put(productId, row);
+            newestDay[row] = day;
+            return row;
+        }
+    }
+}
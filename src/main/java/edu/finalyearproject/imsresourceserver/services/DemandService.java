@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.ProductSales;
+import edu.finalyearproject.imsresourceserver.repositories.OrderItemRepository;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Service for calculating the average daily usage (ADU) of products from their sales history. A window of n days
+ * covers orders placed from n days ago up to and including today, and the units sold are divided by n. Single product
+ * reads come from the in-memory DemandCounters when the window fits in them, otherwise from the database.
+ */
+@Service
+public class DemandService
+{
+    public static final int DEFAULT_WINDOW = 14;
+    public static final int MAX_WINDOW = 366;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private DemandCounters demandCounters;
+
+    /**
+     * Calculates the average daily sales of a single product.
+     * @param productId - the id of the Product.
+     * @param window - the number of days to average over.
+     * @return float - the average units sold per day.
+     */
+    public float averageDailySales(int productId, int window)
+    {
+        validateWindow(window);
+        LocalDate today = LocalDate.now();
+        long totalSales = demandCounters.covers(window)
+                ? demandCounters.unitsSold(productId, today.minusDays(window), today)
+                : orderItemRepository.sumQuantitySold(productId, today.minusDays(window), today);
+
+        return average(totalSales, window);
+    }
+
+    /**
+     * Calculates the average daily sales of many products from one grouped query. Gives the same figure for each
+     * product as averageDailySales(productId, window).
+     * @param productIds - the ids of the Products, or empty for every product.
+     * @param window - the number of days to average over.
+     * @return Map<Integer, Float> - average units sold per day keyed by product id, 0 for products with no sales.
+     */
+    public Map<Integer, Float> averageDailySales(Collection<Integer> productIds, int window)
+    {
+        validateWindow(window);
+        LocalDate today = LocalDate.now();
+        LocalDate startDate = today.minusDays(window);
+
+        Map<Integer, Float> adu = new TreeMap<>();
+        List<ProductSales> sales;
+        if (productIds.isEmpty())
+        {
+            productRepository.findAllIds().forEach(id -> adu.put(id, 0f));
+            sales = orderItemRepository.sumQuantitySoldByProduct(startDate, today);
+        } else
+        {
+            productIds.forEach(id -> adu.put(id, 0f));
+            sales = orderItemRepository.sumQuantitySoldByProductIn(new HashSet<>(productIds), startDate, today);
+        }
+
+        for (ProductSales productSales : sales)
+        {
+            adu.put(productSales.getProductId(), average(productSales.getUnitsSold(), window));
+        }
+        return adu;
+    }
+
+    // same arithmetic for single and batch reads so both give identical figures
+    private static float average(long unitsSold, int window)
+    {
+        return (float) (unitsSold / (double) window);
+    }
+
+    private static void validateWindow(int window)
+    {
+        if (window < 1 || window > MAX_WINDOW)
+        {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "ADU window must be between 1 and " + MAX_WINDOW + " days, was " + window);
+        }
+    }
+}
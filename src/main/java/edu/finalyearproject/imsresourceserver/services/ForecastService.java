@@ -0,0 +1,289 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.ForecastRunResult;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Batch job forecasting next week's demand for every product with damped-trend Holt-Winters exponential smoothing over
+ * its daily sales, using a weekly season. Products are processed in id-ordered chunks: each chunk's daily sales are
+ * read with one grouped query into primitive arrays, forecast in parallel on a fork-join pool, then upserted into
+ * product_forecasts, so memory stays bounded by the chunk size rather than the catalog.
+ */
+@Service
+public class ForecastService
+{
+    public static final int SEASON_LENGTH = 7;
+
+    static final double LEVEL_SMOOTHING = 0.2;
+    static final double TREND_SMOOTHING = 0.05;
+    static final double SEASONAL_SMOOTHING = 0.1;
+    // damping so a short run of growth or decline isn't extrapolated at full slope
+    static final double TREND_DAMPING = 0.9;
+
+    // products per fork-join leaf task
+    private static final int TASK_SIZE = 256;
+
+    private static final String SELECT_DAILY_SALES = "SELECT i.product_id, o.order_date, SUM(i.quantity) " +
+            "FROM order_items i JOIN orders o ON o.id = i.order_id " +
+            "WHERE i.product_id BETWEEN ? AND ? AND o.order_date >= ? AND o.order_date <= ? " +
+            "GROUP BY i.product_id, o.order_date";
+    private static final String UPSERT_FORECAST = "INSERT INTO product_forecasts " +
+            "(product_id, generated_on, daily_demand, weekly_demand) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (product_id) DO UPDATE SET generated_on = EXCLUDED.generated_on, " +
+            "daily_demand = EXCLUDED.daily_demand, weekly_demand = EXCLUDED.weekly_demand";
+
+    @Value("${forecast.history-days:730}")
+    private int historyDays;
+
+    @Value("${forecast.chunk-size:5000}")
+    private int chunkSize;
+
+    @Value("${forecast.parallelism:0}")
+    private int parallelism;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private Logger log = LoggerFactory.getLogger(ForecastService.class);
+
+    /**
+     * Runs the forecast nightly, after the day's orders are in.
+     */
+    @Scheduled(cron = "${forecast.cron:0 30 2 * * *}")
+    public void runScheduled()
+    {
+        try
+        {
+            run();
+        } catch (RuntimeException e)
+        {
+            log.error("Scheduled forecast run failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Forecasts every product from its daily sales over the history window, up to and including yesterday, and
+     * publishes the results to product_forecasts.
+     * @return ForecastRunResult - the number of products forecast, the run date and how long it took.
+     * @throws ResponseStatusException - 409 Conflict if a run is already in progress.
+     */
+    public ForecastRunResult run()
+    {
+        if (!running.compareAndSet(false, true))
+        {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A forecast run is already in progress");
+        }
+
+        ForkJoinPool pool = parallelism > 0 ? new ForkJoinPool(parallelism) : new ForkJoinPool();
+        try
+        {
+            long start = System.currentTimeMillis();
+            LocalDate today = LocalDate.now();
+            LocalDate firstDay = today.minusDays(historyDays);
+            List<Integer> productIds = productRepository.findAllIds();
+            log.info("Forecasting demand for " + productIds.size() + " products...");
+
+            for (int from = 0; from < productIds.size(); from += chunkSize)
+            {
+                List<Integer> chunk = productIds.subList(from, Math.min(from + chunkSize, productIds.size()));
+                int[][] dailySales = loadDailySales(chunk, firstDay, today.minusDays(1));
+                float[] weeklyDemand = new float[chunk.size()];
+                pool.invoke(new ForecastTask(dailySales, weeklyDemand, 0, chunk.size()));
+                publish(chunk, weeklyDemand, today);
+            }
+
+            long duration = System.currentTimeMillis() - start;
+            log.info("Forecast " + productIds.size() + " products in " + duration + "ms");
+            return new ForecastRunResult(productIds.size(), today, duration);
+        } finally
+        {
+            pool.shutdown();
+            running.set(false);
+        }
+    }
+
+    /**
+     * Forecasts the units sold over the next seven days from a series of daily sales. Leading days before the first
+     * sale are ignored so new products aren't dragged down by days they weren't stocked. Series shorter than two
+     * seasons are forecast from their mean.
+     * @param dailySales - units sold per day, oldest first, or null if the product never sold.
+     * @return float - expected units sold over the next seven days, never negative.
+     */
+    static float forecastNextWeek(int[] dailySales)
+    {
+        if (dailySales == null)
+        {
+            return 0;
+        }
+        int first = 0;
+        while (first < dailySales.length && dailySales[first] == 0)
+        {
+            first++;
+        }
+        int days = dailySales.length - first;
+        if (days == 0)
+        {
+            return 0;
+        }
+        if (days < 2 * SEASON_LENGTH)
+        {
+            return (float) (mean(dailySales, first, days) * SEASON_LENGTH);
+        }
+
+        double firstSeasonMean = mean(dailySales, first, SEASON_LENGTH);
+        double level = firstSeasonMean;
+        double trend = (mean(dailySales, first + SEASON_LENGTH, SEASON_LENGTH) - firstSeasonMean) / SEASON_LENGTH;
+        double[] seasonal = new double[SEASON_LENGTH];
+        for (int i = 0; i < SEASON_LENGTH; i++)
+        {
+            seasonal[i] = dailySales[first + i] - firstSeasonMean;
+        }
+
+        for (int t = 0; t < days; t++)
+        {
+            int season = t % SEASON_LENGTH;
+            double sales = dailySales[first + t];
+            double previousLevel = level;
+            level = LEVEL_SMOOTHING * (sales - seasonal[season])
+                    + (1 - LEVEL_SMOOTHING) * (previousLevel + TREND_DAMPING * trend);
+            trend = TREND_SMOOTHING * (level - previousLevel) + (1 - TREND_SMOOTHING) * TREND_DAMPING * trend;
+            seasonal[season] = SEASONAL_SMOOTHING * (sales - level) + (1 - SEASONAL_SMOOTHING) * seasonal[season];
+        }
+
+        double total = 0;
+        double damping = 0;
+        for (int h = 1; h <= SEASON_LENGTH; h++)
+        {
+            damping += Math.pow(TREND_DAMPING, h);
+            total += Math.max(0, level + damping * trend + seasonal[(days + h - 1) % SEASON_LENGTH]);
+        }
+        return (float) total;
+    }
+
+    // daily sales per product in the chunk, one row per product in chunk order, null for products with no sales
+    private int[][] loadDailySales(List<Integer> chunk, LocalDate firstDay, LocalDate lastDay)
+    {
+        Map<Integer, Integer> rows = new HashMap<>();
+        for (int i = 0; i < chunk.size(); i++)
+        {
+            rows.put(chunk.get(i), i);
+        }
+        int days = (int) ChronoUnit.DAYS.between(firstDay, lastDay) + 1;
+        int[][] dailySales = new int[chunk.size()][];
+
+        jdbcTemplate.query(SELECT_DAILY_SALES, (RowCallbackHandler) resultSet -> {
+            Integer row = rows.get(resultSet.getInt(1));
+            if (row == null)
+            {
+                return;
+            }
+            if (dailySales[row] == null)
+            {
+                dailySales[row] = new int[days];
+            }
+            int day = (int) ChronoUnit.DAYS.between(firstDay, resultSet.getObject(2, LocalDate.class));
+            dailySales[row][day] += resultSet.getInt(3);
+        }, chunk.get(0), chunk.get(chunk.size() - 1), firstDay, lastDay);
+
+        return dailySales;
+    }
+
+    private void publish(List<Integer> chunk, float[] weeklyDemand, LocalDate generatedOn)
+    {
+        jdbcTemplate.batchUpdate(UPSERT_FORECAST, new BatchPreparedStatementSetter()
+        {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException
+            {
+                ps.setInt(1, chunk.get(i));
+                ps.setObject(2, generatedOn);
+                ps.setFloat(3, weeklyDemand[i] / SEASON_LENGTH);
+                ps.setFloat(4, weeklyDemand[i]);
+            }
+
+            @Override
+            public int getBatchSize()
+            {
+                return chunk.size();
+            }
+        });
+    }
+
+    private static double mean(int[] values, int from, int count)
+    {
+        long total = 0;
+        for (int i = from; i < from + count; i++)
+        {
+            total += values[i];
+        }
+        return (double) total / count;
+    }
+
+    // forecasts a range of products, splitting until each task is small enough to run directly
+    private static class ForecastTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int[][] dailySales;
+        private final float[] weeklyDemand;
+        private final int from;
+        private final int to;
+
+        ForecastTask(int[][] dailySales, float[] weeklyDemand, int from, int to)
+        {
+            this.dailySales = dailySales;
+            this.weeklyDemand = weeklyDemand;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= TASK_SIZE)
+            {
+                for (int i = from; i < to; i++)
+                {
+                    weeklyDemand[i] = forecastNextWeek(dailySales[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ForecastTask(dailySales, weeklyDemand, from, middle),
+                    new ForecastTask(dailySales, weeklyDemand, middle, to));
+        }
+    }
+}
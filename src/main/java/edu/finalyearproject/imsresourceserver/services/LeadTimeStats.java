@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.models.SupplierDeliveries;
+import edu.finalyearproject.imsresourceserver.models.SupplierLeadTime;
+import edu.finalyearproject.imsresourceserver.repositories.PurchaseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory distribution of each supplier's observed lead times, from purchase date to arrival date. Lead times are
+ * whole days, so each supplier's sketch is a histogram with one bucket per day up to MAX_DAYS, which gives exact
+ * quantiles in a fixed 1.5 KB however many deliveries it has seen; longer lead times are counted in the last bucket.
+ * Built from delivery history on startup and then fed each delivery once it has committed, see SnapshotRebuilder.
+ */
+@Service
+public class LeadTimeStats
+{
+    public static final int MAX_DAYS = 365;
+
+    @Value("${lead-time.min-deliveries:5}")
+    private int minDeliveries;
+
+    @Autowired
+    private PurchaseRepository purchaseRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private Map<Integer, Sketch> sketches = new HashMap<>();
+
+    private final SnapshotRebuilder<Map<Integer, Sketch>> rebuilder = new SnapshotRebuilder<>(LeadTimeStats.class,
+            "supplier lead times", this::load, this::install);
+
+    private Logger log = LoggerFactory.getLogger(LeadTimeStats.class);
+
+    /**
+     * Builds the sketches when the application starts. If the database isn't reachable yet they are built on first use.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup()
+    {
+        rebuilder.buildOnStartup();
+    }
+
+    /**
+     * Reloads every supplier's delivery history from the database. Deliveries committing meanwhile wait for it, so
+     * each is counted exactly once, either by the reload or after it.
+     */
+    public void rebuild()
+    {
+        rebuilder.rebuild();
+    }
+
+    /**
+     * Records a delivered purchase order. Inside a transaction it is counted only once it commits.
+     * @param supplierId - the id of the Supplier delivering.
+     * @param purchaseDate - the date the purchase order was raised.
+     * @param arrivalDate - the date it arrived.
+     */
+    public void recordDelivery(int supplierId, LocalDate purchaseDate, LocalDate arrivalDate)
+    {
+        SupplierDeliveries delivery = new SupplierDeliveries(supplierId, purchaseDate, arrivalDate, 1L);
+        rebuilder.afterCommit(() -> apply(delivery));
+    }
+
+    /**
+     * Returns a supplier's observed lead times.
+     * @param supplierId - the id of the Supplier.
+     * @return SupplierLeadTime - deliveries, mean, median and 95th percentile in days.
+     */
+    public SupplierLeadTime getLeadTime(int supplierId)
+    {
+        rebuilder.ensureBuilt();
+        lock.readLock().lock();
+        try
+        {
+            Sketch sketch = sketches.get(supplierId);
+            return sketch == null ? new SupplierLeadTime(supplierId, 0, null, null, null) : sketch.summarise(supplierId);
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the observed lead times of every supplier with at least one delivery.
+     * @return List<SupplierLeadTime> - one entry per supplier, in id order.
+     */
+    public List<SupplierLeadTime> getLeadTimes()
+    {
+        rebuilder.ensureBuilt();
+        List<SupplierLeadTime> leadTimes = new ArrayList<>();
+        lock.readLock().lock();
+        try
+        {
+            new TreeMap<>(sketches).forEach((supplierId, sketch) -> leadTimes.add(sketch.summarise(supplierId)));
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+        return leadTimes;
+    }
+
+    /**
+     * Returns the lead time to plan with for a supplier: the observed 95th percentile once there are enough deliveries
+     * to trust it, otherwise the supplier's configured lead time.
+     * @param supplier - the Supplier.
+     * @return float - the lead time in days, 0 if neither is known.
+     */
+    public float planningLeadTime(Supplier supplier)
+    {
+        SupplierLeadTime observed = getLeadTime(supplier.getId());
+        if (observed.getDeliveries() >= minDeliveries)
+        {
+            return observed.getP95Days();
+        }
+        return supplier.getLead_time() == null ? 0 : supplier.getLead_time();
+    }
+
+    private Map<Integer, Sketch> load()
+    {
+        Map<Integer, Sketch> newSketches = new HashMap<>();
+        purchaseRepository.countDeliveriesBySupplierAndDates().forEach(deliveries -> add(newSketches, deliveries));
+        return newSketches;
+    }
+
+    private void install(Map<Integer, Sketch> newSketches)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            sketches = newSketches;
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+        log.info("Built lead time sketches for " + newSketches.size() + " suppliers");
+    }
+
+    private void apply(SupplierDeliveries delivery)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            add(sketches, delivery);
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void add(Map<Integer, Sketch> sketches, SupplierDeliveries deliveries)
+    {
+        long days = ChronoUnit.DAYS.between(deliveries.getPurchaseDate(), deliveries.getArrivalDate());
+        sketches.computeIfAbsent(deliveries.getSupplierId(), id -> new Sketch())
+                .add((int) Math.max(0, Math.min(days, MAX_DAYS)), deliveries.getDeliveries());
+    }
+
+    // histogram of lead times in whole days, last bucket holding anything at or beyond MAX_DAYS
+    private static class Sketch
+    {
+        private final int[] counts = new int[MAX_DAYS + 1];
+        private long deliveries;
+        private long totalDays;
+
+        private void add(int days, long count)
+        {
+            counts[days] += count;
+            deliveries += count;
+            totalDays += days * count;
+        }
+
+        private SupplierLeadTime summarise(int supplierId)
+        {
+            return new SupplierLeadTime(supplierId, deliveries, (float) ((double) totalDays / deliveries),
+                    quantile(0.5), quantile(0.95));
+        }
+
+        // smallest day count with at least the fraction of deliveries at or below it
+        private int quantile(double fraction)
+        {
+            long rank = (long) Math.ceil(fraction * deliveries);
+            long seen = 0;
+            for (int days = 0; days < counts.length; days++)
+            {
+                seen += counts[days];
+                if (seen >= rank)
+                {
+                    return days;
+                }
+            }
+            return MAX_DAYS;
+        }
+    }
+}
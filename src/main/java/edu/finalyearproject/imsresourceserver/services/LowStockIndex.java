@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * In-memory index of every product ordered by stock headroom (inventory on hand minus reorder threshold), so the
+ * products closest to their reorder point can be read without scanning the products table. Built once from the
+ * database, then kept current by re-reading just the products reported by ProductCatalogCache as changed, see
+ * SnapshotRebuilder.
+ */
+@Service
+public class LowStockIndex implements ProductChangeListener
+{
+    public static final int DEFAULT_MARGIN = 20;
+
+    private static final Comparator<Product> BY_HEADROOM =
+            Comparator.comparingInt(LowStockIndex::headroom).thenComparing(Product::getId);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock, entries are private copies so nothing else can change their position in the ordering
+    private TreeSet<Product> byHeadroom = new TreeSet<>(BY_HEADROOM);
+    private Map<Integer, Product> byId = new HashMap<>();
+
+    private final SnapshotRebuilder<List<Product>> rebuilder = new SnapshotRebuilder<>(LowStockIndex.class,
+            "low stock index", () -> productRepository.findAll(), this::install);
+
+    private Logger log = LoggerFactory.getLogger(LowStockIndex.class);
+
+    /**
+     * Builds the index when the application starts. If the database isn't reachable yet the index is built on first use.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup()
+    {
+        rebuilder.buildOnStartup();
+    }
+
+    /**
+     * Reloads every product into a new index, one rebuild or product change at a time.
+     */
+    public void rebuild()
+    {
+        rebuilder.rebuild();
+    }
+
+    /**
+     * Returns the products with the least headroom, lowest first.
+     * @param margin - the most units above its reorder threshold a product can have to be included.
+     * @param limit - the maximum number of products to return.
+     * @return List<Product> - products with headroom at most margin, lowest headroom first.
+     */
+    public List<Product> findLowStock(int margin, int limit)
+    {
+        return findLowStock(margin, limit, productId -> false);
+    }
+
+    /**
+     * Returns the products with the least headroom, lowest first, leaving out any the caller wants skipped.
+     * @param margin - the most units above its reorder threshold a product can have to be included.
+     * @param limit - the maximum number of products to return, not counting skipped products.
+     * @param skip - tested with each product id, true to leave the product out.
+     * @return List<Product> - products with headroom at most margin, lowest headroom first.
+     */
+    public List<Product> findLowStock(int margin, int limit, IntPredicate skip)
+    {
+        rebuilder.ensureBuilt();
+
+        List<Product> lowStock = new ArrayList<>();
+        lock.readLock().lock();
+        try
+        {
+            for (Product product : byHeadroom)
+            {
+                if (headroom(product) > margin || lowStock.size() >= limit)
+                {
+                    break;
+                }
+                if (!skip.test(product.getId()))
+                {
+                    lowStock.add(product);
+                }
+            }
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+        return lowStock;
+    }
+
+    /**
+     * Re-reads the changed products and moves them to their new position, dropping any that have been deleted.
+     * Changes are applied one at a time, so an older re-read can never replace a newer one.
+     * @param productIds - the ids of the added, changed or removed Products.
+     */
+    @Override
+    public void productsChanged(Set<Integer> productIds)
+    {
+        rebuilder.serially(() -> reload(productIds));
+    }
+
+    private void install(List<Product> products)
+    {
+        TreeSet<Product> newByHeadroom = new TreeSet<>(BY_HEADROOM);
+        Map<Integer, Product> newById = new HashMap<>();
+        for (Product product : products)
+        {
+            Product copy = copyOf(product);
+            newByHeadroom.add(copy);
+            newById.put(copy.getId(), copy);
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            byHeadroom = newByHeadroom;
+            byId = newById;
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+        log.info("Built low stock index of " + newById.size() + " products");
+    }
+
+    private void reload(Set<Integer> productIds)
+    {
+        // read from the rows, as the request may already hold these products with stock from before a JDBC update
+        List<Product> products = productRepository.findCopiesByIdIn(productIds);
+
+        lock.writeLock().lock();
+        try
+        {
+            for (Integer id : productIds)
+            {
+                Product previous = byId.remove(id);
+                if (previous != null)
+                {
+                    byHeadroom.remove(previous);
+                }
+            }
+            for (Product product : products)
+            {
+                byId.put(product.getId(), product);
+                byHeadroom.add(product);
+            }
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // units on hand above the reorder threshold, missing values count as 0
+    private static int headroom(Product product)
+    {
+        int onHand = product.getInventory_on_hand() == null ? 0 : product.getInventory_on_hand();
+        int threshold = product.getReorder_threshold() == null ? 0 : product.getReorder_threshold();
+        return onHand - threshold;
+    }
+
+    // detached copy, so later changes to an entity loaded elsewhere can't reorder the index
+    private static Product copyOf(Product product)
+    {
+        return new Product(product.getId(), product.getName(), product.getSku(), product.getPrice(),
+                product.getInventory_on_hand(), product.getReorder_threshold(), product.getReorder_quantity(),
+                product.isSuspended(), product.getSupplier());
+    }
+}
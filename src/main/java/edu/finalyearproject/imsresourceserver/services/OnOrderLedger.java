@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.ProductOnOrder;
+import edu.finalyearproject.imsresourceserver.repositories.PurchaseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory count of the undelivered purchase orders each product is on, so stock already on its way can be checked
+ * in constant time. Delivery adds a product's reorder quantity for each purchase it was on, so the units on order are
+ * the open purchase count times the product's current reorder quantity. Built from the database on startup and then
+ * kept current by recording each purchase created or received once it has committed, see SnapshotRebuilder.
+ */
+@Service
+public class OnOrderLedger
+{
+    @Autowired
+    private PurchaseRepository purchaseRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private Map<Integer, Integer> openPurchases = new HashMap<>();
+
+    private final SnapshotRebuilder<Map<Integer, Integer>> rebuilder = new SnapshotRebuilder<>(OnOrderLedger.class,
+            "on-order ledger", this::load, this::install);
+
+    private Logger log = LoggerFactory.getLogger(OnOrderLedger.class);
+
+    /**
+     * Builds the ledger when the application starts. If the database isn't reachable yet it is built on first use.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup()
+    {
+        rebuilder.buildOnStartup();
+    }
+
+    /**
+     * Reloads the open purchase counts from the database. Purchases committing meanwhile wait for it, so each is
+     * counted exactly once, either by the reload or after it.
+     */
+    public void rebuild()
+    {
+        rebuilder.rebuild();
+    }
+
+    /**
+     * Records a new purchase order for each product. Inside a transaction it is counted only once it commits.
+     * @param productIds - the ids of the Products ordered, once per purchase order they are on.
+     */
+    public void purchased(Collection<Integer> productIds)
+    {
+        record(productIds, 1);
+    }
+
+    /**
+     * Records the delivery of a purchase order for each product. Inside a transaction it is counted only once it
+     * commits.
+     * @param productIds - the ids of the Products delivered, once per purchase order they were on.
+     */
+    public void received(Collection<Integer> productIds)
+    {
+        record(productIds, -1);
+    }
+
+    /**
+     * Whether any undelivered purchase order includes a product.
+     * @param productId - the id of the Product.
+     * @return boolean - true if the product is on order.
+     */
+    public boolean isOnOrder(int productId)
+    {
+        return openPurchases(productId) > 0;
+    }
+
+    /**
+     * Returns the units of a product that will arrive when its undelivered purchase orders are received.
+     * @param product - the Product.
+     * @return int - open purchase orders times the product's reorder quantity, 0 if none are open.
+     */
+    public int unitsOnOrder(Product product)
+    {
+        Integer reorderQuantity = product.getReorder_quantity();
+        return reorderQuantity == null ? 0 : openPurchases(product.getId()) * reorderQuantity;
+    }
+
+    private int openPurchases(int productId)
+    {
+        rebuilder.ensureBuilt();
+
+        lock.readLock().lock();
+        try
+        {
+            return openPurchases.getOrDefault(productId, 0);
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void record(Collection<Integer> productIds, int delta)
+    {
+        List<Integer> ids = new ArrayList<>(productIds);
+        rebuilder.afterCommit(() -> apply(ids, delta));
+    }
+
+    private Map<Integer, Integer> load()
+    {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (ProductOnOrder product : purchaseRepository.countOpenPurchasesByProduct())
+        {
+            counts.put(product.getProductId(), product.getOpenPurchases().intValue());
+        }
+        return counts;
+    }
+
+    private void install(Map<Integer, Integer> counts)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            openPurchases = counts;
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+        log.info("Built on-order ledger for " + counts.size() + " products");
+    }
+
+    private void apply(List<Integer> productIds, int delta)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            for (Integer productId : productIds)
+            {
+                add(openPurchases, productId, delta);
+            }
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // counts never go below zero, e.g. a delivery of a purchase that was raised without going through the ledger
+    private static void add(Map<Integer, Integer> counts, int productId, int delta)
+    {
+        int count = Math.max(0, counts.getOrDefault(productId, 0) + delta);
+        if (count == 0)
+        {
+            counts.remove(productId);
+        } else
+        {
+            counts.put(productId, count);
+        }
+    }
+}
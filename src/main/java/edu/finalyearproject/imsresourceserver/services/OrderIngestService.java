@@ -0,0 +1,421 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.Order;
+import edu.finalyearproject.imsresourceserver.models.OrderIngestResult;
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.repositories.CustomerRepository;
+import edu.finalyearproject.imsresourceserver.requests.OrderRequest;
+import edu.finalyearproject.imsresourceserver.requests.ProductRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Service for ingesting large batches of customer orders. Customers and products for the whole batch are resolved
+ * up front, then each chunk of orders is written in one transaction using JDBC batches for the stock updates, the
+ * orders and their lines.
+ */
+@Service
+public class OrderIngestService
+{
+    public static final int MAX_BATCH_SIZE = 10000;
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String DECREMENT_STOCK =
+            "UPDATE products SET inventory_on_hand = inventory_on_hand - ? WHERE id = ? AND inventory_on_hand >= ?";
+    private static final String RESTORE_STOCK = "UPDATE products SET inventory_on_hand = inventory_on_hand + ? WHERE id = ?";
+    private static final int ID_ALLOCATION_SIZE = 50;
+    private static final String NEXT_ORDER_ID_BLOCKS = "SELECT nextval('orders_id_seq') FROM generate_series(1, ?)";
+    private static final String INSERT_ORDER = "INSERT INTO orders (id, customer_id, order_date, total_cost) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_ORDER_ITEM = "INSERT INTO order_items (order_id, product_id, quantity) VALUES (?, ?, ?)";
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private ProductLookupService productLookupService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+
+    @Autowired
+    private DemandCounters demandCounters;
+
+    private Logger log = LoggerFactory.getLogger(OrderIngestService.class);
+
+    /**
+     * Validates and writes a batch of orders. Orders with an unknown customer or SKU, or that can't be fully reserved
+     * from stock, are rejected individually without affecting the rest of the batch.
+     * @param orderRequests - the orders to create.
+     * @return List<OrderIngestResult> - one result per submitted order, in submission order.
+     */
+    public List<OrderIngestResult> ingest(List<OrderRequest> orderRequests)
+    {
+        log.info("Ingesting batch of "+orderRequests.size()+" orders...");
+        OrderIngestResult[] results = new OrderIngestResult[orderRequests.size()];
+
+        Set<Integer> customerIds = orderRequests.stream().map(OrderRequest::getCustomer_id).collect(Collectors.toSet());
+        Set<Integer> knownCustomers = customerIds.isEmpty() ? new HashSet<>() :
+                new HashSet<>(customerRepository.findExistingIds(customerIds));
+        Map<Integer, Product> productsBySku = productLookupService.findExistingBySkus(parseAllSkus(orderRequests));
+
+        List<PendingOrder> pending = new ArrayList<>();
+        for (int i = 0; i < orderRequests.size(); i++)
+        {
+            PendingOrder order = validate(i, orderRequests.get(i), knownCustomers, productsBySku, results);
+            if (order != null)
+            {
+                pending.add(order);
+            }
+        }
+
+        LocalDate today = LocalDate.now();
+        for (int start = 0; start < pending.size(); start += CHUNK_SIZE)
+        {
+            List<PendingOrder> chunk = pending.subList(start, Math.min(start + CHUNK_SIZE, pending.size()));
+            transactionTemplate.execute(status -> {
+                writeChunk(chunk, today, results);
+                return null;
+            });
+        }
+
+        return Arrays.asList(results);
+    }
+
+    // collects every parsable sku in the batch so they can be resolved in one query
+    private Set<Integer> parseAllSkus(List<OrderRequest> orderRequests)
+    {
+        Set<Integer> skus = new HashSet<>();
+        for (OrderRequest orderRequest : orderRequests)
+        {
+            for (ProductRequest productRequest : productsOf(orderRequest))
+            {
+                try
+                {
+                    skus.add(Integer.valueOf(productRequest.getSku()));
+                } catch (NumberFormatException e)
+                {
+                    // reported against the order during validation
+                }
+            }
+        }
+        return skus;
+    }
+
+    // checks the customer and lines of an order, recording a rejection and returning null if invalid
+    private PendingOrder validate(int index, OrderRequest orderRequest, Set<Integer> knownCustomers,
+                                  Map<Integer, Product> productsBySku, OrderIngestResult[] results)
+    {
+        if (!knownCustomers.contains(orderRequest.getCustomer_id()))
+        {
+            results[index] = OrderIngestResult.rejected(index, "Unknown customer: " + orderRequest.getCustomer_id());
+            return null;
+        }
+        if (productsOf(orderRequest).length == 0)
+        {
+            results[index] = OrderIngestResult.rejected(index, "Order has no products");
+            return null;
+        }
+
+        Map<Product, Integer> quantities = new LinkedHashMap<>();
+        Set<String> unknownSkus = new TreeSet<>();
+        for (ProductRequest productRequest : productsOf(orderRequest))
+        {
+            Product product = null;
+            try
+            {
+                product = productsBySku.get(Integer.valueOf(productRequest.getSku()));
+            } catch (NumberFormatException e)
+            {
+                // falls through as unknown
+            }
+
+            if (product == null)
+            {
+                unknownSkus.add(productRequest.getSku());
+            } else if (productRequest.getQuantity() <= 0)
+            {
+                results[index] = OrderIngestResult.rejected(index, "Invalid quantity for SKU " + productRequest.getSku());
+                return null;
+            } else
+            {
+                quantities.merge(product, productRequest.getQuantity(), Integer::sum);
+            }
+        }
+
+        if (!unknownSkus.isEmpty())
+        {
+            results[index] = OrderIngestResult.rejected(index, "Unknown product SKUs: " + unknownSkus);
+            return null;
+        }
+        return new PendingOrder(index, orderRequest.getCustomer_id(), quantities);
+    }
+
+    // reserves stock for, then inserts, every order in the chunk that can be fully reserved
+    private void writeChunk(List<PendingOrder> chunk, LocalDate date, OrderIngestResult[] results)
+    {
+        List<PendingOrder> reserved = reserveStock(chunk, results);
+        if (reserved.isEmpty())
+        {
+            return;
+        }
+
+        productCatalogCache.invalidate(reserved.stream().flatMap(order -> order.quantities.keySet().stream())
+                .map(Product::getId).collect(Collectors.toSet()));
+        Map<Integer, Integer> unitsSold = new HashMap<>();
+        reserved.forEach(order -> order.quantities.forEach((product, quantity) ->
+                unitsSold.merge(product.getId(), quantity, Integer::sum)));
+        demandCounters.record(unitsSold, date);
+
+        List<Integer> orderIds = insertOrders(reserved, date);
+        List<Line> lines = new ArrayList<>();
+        for (int i = 0; i < reserved.size(); i++)
+        {
+            PendingOrder order = reserved.get(i);
+            order.orderId = orderIds.get(i);
+            lines.addAll(order.lines());
+            results[order.index] = OrderIngestResult.accepted(order.index, order.orderId);
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_ORDER_ITEM, new BatchPreparedStatementSetter()
+        {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException
+            {
+                ps.setInt(1, lines.get(i).order.orderId);
+                ps.setInt(2, lines.get(i).product.getId());
+                ps.setInt(3, lines.get(i).quantity);
+            }
+
+            @Override
+            public int getBatchSize()
+            {
+                return lines.size();
+            }
+        });
+    }
+
+    // reserves stock for the whole chunk in one batch. An order short of a product that a rejected order in the same
+    // chunk had taken and then put back gets one more try on its own, so it isn't turned away for stock that's free
+    private List<PendingOrder> reserveStock(List<PendingOrder> chunk, OrderIngestResult[] results)
+    {
+        Set<Integer> restoredProductIds = new HashSet<>();
+        Map<PendingOrder, Set<Integer>> shortProductIds = tryReserve(chunk, restoredProductIds);
+        if (shortProductIds.isEmpty())
+        {
+            return chunk;
+        }
+
+        List<PendingOrder> reserved = new ArrayList<>();
+        for (PendingOrder order : chunk)
+        {
+            Set<Integer> shortOf = shortProductIds.get(order);
+            if (shortOf != null && shortOf.stream().anyMatch(restoredProductIds::contains))
+            {
+                shortOf = tryReserve(List.of(order), restoredProductIds).get(order);
+            }
+
+            if (shortOf == null)
+            {
+                reserved.add(order);
+            } else
+            {
+                Set<Integer> skus = new TreeSet<>();
+                for (Product product : order.quantities.keySet())
+                {
+                    if (shortOf.contains(product.getId()))
+                    {
+                        skus.add(product.getSku());
+                    }
+                }
+                results[order.index] = OrderIngestResult.rejected(order.index,
+                        "Insufficient stock for product SKUs: " + skus);
+            }
+        }
+        return reserved;
+    }
+
+    // decrements stock for every line in one batch, then puts back the stock of any order with a short line, returning
+    // the ids of the products each such order was short of and adding the ids of any products put back
+    private Map<PendingOrder, Set<Integer>> tryReserve(List<PendingOrder> orders, Set<Integer> restoredProductIds)
+    {
+        // product id order keeps lock acquisition consistent with other writers; stable sort keeps batch order per product
+        List<Line> lines = orders.stream().flatMap(order -> order.lines().stream())
+                .sorted(Comparator.comparing(line -> line.product.getId())).collect(Collectors.toList());
+
+        int[] updated = jdbcTemplate.batchUpdate(DECREMENT_STOCK, new BatchPreparedStatementSetter()
+        {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException
+            {
+                ps.setInt(1, lines.get(i).quantity);
+                ps.setInt(2, lines.get(i).product.getId());
+                ps.setInt(3, lines.get(i).quantity);
+            }
+
+            @Override
+            public int getBatchSize()
+            {
+                return lines.size();
+            }
+        });
+
+        Map<PendingOrder, Set<Integer>> shortProductIds = new HashMap<>();
+        for (int i = 0; i < lines.size(); i++)
+        {
+            if (updated[i] == 0)
+            {
+                shortProductIds.computeIfAbsent(lines.get(i).order, order -> new HashSet<>())
+                        .add(lines.get(i).product.getId());
+            }
+        }
+
+        List<Line> toRestore = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++)
+        {
+            if (updated[i] != 0 && shortProductIds.containsKey(lines.get(i).order))
+            {
+                toRestore.add(lines.get(i));
+                restoredProductIds.add(lines.get(i).product.getId());
+            }
+        }
+        if (toRestore.isEmpty())
+        {
+            return shortProductIds;
+        }
+
+        jdbcTemplate.batchUpdate(RESTORE_STOCK, new BatchPreparedStatementSetter()
+        {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException
+            {
+                ps.setInt(1, toRestore.get(i).quantity);
+                ps.setInt(2, toRestore.get(i).product.getId());
+            }
+
+            @Override
+            public int getBatchSize()
+            {
+                return toRestore.size();
+            }
+        });
+        return shortProductIds;
+    }
+
+    // inserts the orders in one batch using ids allocated from the pooled orders sequence, returned in the same order
+    private List<Integer> insertOrders(List<PendingOrder> orders, LocalDate date)
+    {
+        List<Integer> ids = allocateOrderIds(orders.size());
+        jdbcTemplate.batchUpdate(INSERT_ORDER, new BatchPreparedStatementSetter()
+        {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException
+            {
+                ps.setInt(1, ids.get(i));
+                ps.setInt(2, orders.get(i).customerId);
+                ps.setObject(3, date);
+                ps.setBigDecimal(4, orders.get(i).totalCost());
+            }
+
+            @Override
+            public int getBatchSize()
+            {
+                return orders.size();
+            }
+        });
+        return ids;
+    }
+
+    // each nextval reserves the block (value - 49 .. value), matching Hibernate's pooled optimizer on Order
+    private List<Integer> allocateOrderIds(int count)
+    {
+        int blocks = (count + ID_ALLOCATION_SIZE - 1) / ID_ALLOCATION_SIZE;
+        List<Long> highValues = jdbcTemplate.queryForList(NEXT_ORDER_ID_BLOCKS, Long.class, blocks);
+
+        List<Integer> ids = new ArrayList<>(count);
+        for (Long highValue : highValues)
+        {
+            for (long id = highValue - ID_ALLOCATION_SIZE + 1; id <= highValue && ids.size() < count; id++)
+            {
+                ids.add((int) id);
+            }
+        }
+        return ids;
+    }
+
+    private static ProductRequest[] productsOf(OrderRequest orderRequest)
+    {
+        return orderRequest.getProducts() == null ? new ProductRequest[0] : orderRequest.getProducts();
+    }
+
+    // an order that passed validation, waiting to be written
+    private static class PendingOrder
+    {
+        private final int index;
+        private final int customerId;
+        private final Map<Product, Integer> quantities;
+        private Integer orderId;
+
+        PendingOrder(int index, int customerId, Map<Product, Integer> quantities)
+        {
+            this.index = index;
+            this.customerId = customerId;
+            this.quantities = quantities;
+        }
+
+        BigDecimal totalCost()
+        {
+            BigDecimal totalCost = BigDecimal.ZERO.setScale(2);
+            for (Map.Entry<Product, Integer> line : quantities.entrySet())
+            {
+                totalCost = totalCost.add(Order.lineCost(line.getKey(), line.getValue()));
+            }
+            return totalCost;
+        }
+
+        List<Line> lines()
+        {
+            List<Line> lines = new ArrayList<>();
+            quantities.forEach((product, quantity) -> lines.add(new Line(this, product, quantity)));
+            return lines;
+        }
+    }
+
+    // one product line of a pending order
+    private static class Line
+    {
+        private final PendingOrder order;
+        private final Product product;
+        private final int quantity;
+
+        Line(PendingOrder order, Product product, int quantity)
+        {
+            this.order = order;
+            this.product = product;
+            this.quantity = quantity;
+        }
+    }
+}
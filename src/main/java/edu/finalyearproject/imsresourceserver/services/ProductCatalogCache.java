@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.CatalogCacheStats;
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import edu.finalyearproject.imsresourceserver.repositories.SupplierRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * In-process read-through cache of Products by id, by name and by supplier name. Each lookup is a bounded LRU map.
+ * Anything that changes a product must call invalidate, which drops every entry holding that product; inside a
+ * transaction the entries are dropped again after commit so a read racing the write can't re-cache the old row.
+ * Registered ProductChangeListeners are told about each change once it has committed. The same invalidations version
+ * the catalog listings for conditional GETs.
+ */
+@Service
+public class ProductCatalogCache
+{
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private SupplierRepository supplierRepository;
+
+    @Autowired(required = false)
+    private List<ProductChangeListener> listeners = new ArrayList<>();
+
+    @Value("${catalog.cache.max-entries:" + DEFAULT_MAX_ENTRIES + "}")
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private final Map<Integer, Product> byId = boundedMap();
+    private final Map<String, Product> byName = boundedMap();
+    private final Map<String, List<Product>> bySupplier = boundedMap();
+
+    // all guarded by this
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private long generation;
+
+    // distinguishes versions from before a restart, when the generation starts again from zero
+    private final long startedAt = System.currentTimeMillis();
+
+    /**
+     * Returns a product by id, loading it from the database on a miss.
+     * @param id - the id of the Product.
+     * @return Optional<Product> - the Product, or empty if there is no product with that id.
+     */
+    public Optional<Product> findById(Integer id)
+    {
+        return Optional.ofNullable(lookup(byId, id, key -> productRepository.findById(key).orElse(null)));
+    }
+
+    /**
+     * Returns a product by name, loading it from the database on a miss.
+     * @param name - the name of the Product.
+     * @return Product - the Product, or null if there is no product with that name.
+     */
+    public Product findByName(String name)
+    {
+        return lookup(byName, name, productRepository::findByname);
+    }
+
+    /**
+     * Returns the products of a supplier, loading them from the database on a miss.
+     * @param supplierName - the name of the Supplier.
+     * @return List<Product> - the supplier's products, empty if the supplier doesn't exist.
+     */
+    public List<Product> findBySupplierName(String supplierName)
+    {
+        List<Product> products = lookup(bySupplier, supplierName, key -> {
+            Supplier supplier = supplierRepository.findByname(key);
+            return supplier == null ? null : Collections.unmodifiableList(productRepository.findBysupplier(supplier));
+        });
+        return products == null ? Collections.emptyList() : products;
+    }
+
+    /**
+     * Drops every cached entry holding a product, including its supplier's product list.
+     * @param product - the Product that has been added or changed.
+     */
+    public void invalidate(Product product)
+    {
+        String supplierName = product.getSupplier() == null ? null : product.getSupplier().getName();
+        Set<Integer> ids = Collections.singleton(product.getId());
+        invalidateNowAndAfterCommit(ids, () -> {
+            drop(ids);
+            if (supplierName != null)
+            {
+                bySupplier.remove(supplierName);
+            }
+        });
+    }
+
+    /**
+     * Drops every cached entry holding any of the given products, e.g. after their stock levels change.
+     * @param productIds - the ids of the changed Products.
+     */
+    public void invalidate(Collection<Integer> productIds)
+    {
+        Set<Integer> ids = new HashSet<>(productIds);
+        invalidateNowAndAfterCommit(ids, () -> drop(ids));
+    }
+
+    /**
+     * Returns a strong ETag for the catalog listings. It changes on every invalidation, both when the change is made
+     * and again when it commits, so a listing read while a write is in flight is never tagged with the final version.
+     * Read the tag before querying, so the data sent is never older than the version it's tagged with.
+     * @return String - the quoted ETag of the current catalog version.
+     */
+    public synchronized String getCatalogETag()
+    {
+        return "\"" + startedAt + "-" + generation + "\"";
+    }
+
+    /**
+     * Returns the cache counters.
+     * @return CatalogCacheStats - hits, misses, evictions, invalidations and current size.
+     */
+    public synchronized CatalogCacheStats getStats()
+    {
+        return new CatalogCacheStats(hits, misses, evictions, invalidations,
+                byId.size() + byName.size() + bySupplier.size());
+    }
+
+    // returns the cached value, or loads it and caches it unless an invalidation happened during the load
+    private <K, V> V lookup(Map<K, V> cache, K key, Function<K, V> loader)
+    {
+        long seen;
+        synchronized (this)
+        {
+            V cached = cache.get(key);
+            if (cached != null)
+            {
+                hits++;
+                return cached;
+            }
+            misses++;
+            seen = generation;
+        }
+
+        V loaded = loader.apply(key);
+        if (loaded != null)
+        {
+            synchronized (this)
+            {
+                if (generation == seen)
+                {
+                    cache.put(key, loaded);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    // runs the invalidation now, and again once the surrounding transaction (if any) has committed, then tells the
+    // listeners about the committed change
+    private void invalidateNowAndAfterCommit(Set<Integer> ids, Runnable invalidation)
+    {
+        synchronized (this)
+        {
+            invalidations++;
+            generation++;
+            invalidation.run();
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+            {
+                @Override
+                public void afterCommit()
+                {
+                    rerun(invalidation);
+                    notifyListeners(ids);
+                }
+            });
+        } else
+        {
+            notifyListeners(ids);
+        }
+    }
+
+    private void notifyListeners(Set<Integer> ids)
+    {
+        for (ProductChangeListener listener : listeners)
+        {
+            listener.productsChanged(ids);
+        }
+    }
+
+    private synchronized void rerun(Runnable invalidation)
+    {
+        generation++;
+        invalidation.run();
+    }
+
+    // removes entries referencing any of the ids, caller holds the lock
+    private void drop(Set<Integer> ids)
+    {
+        byId.keySet().removeAll(ids);
+        byName.values().removeIf(product -> ids.contains(product.getId()));
+        bySupplier.values().removeIf(products -> products.stream().anyMatch(product -> ids.contains(product.getId())));
+    }
+
+    private <K, V> Map<K, V> boundedMap()
+    {
+        return new LinkedHashMap<K, V>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+            {
+                if (size() > maxEntries)
+                {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+}
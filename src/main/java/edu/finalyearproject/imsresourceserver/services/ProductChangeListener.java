@@ -0,0 +1,21 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import java.util.Set;
+
+/**
+ * Implemented by components that keep derived copies of product data, to be told when products have changed.
+ */
+public interface ProductChangeListener
+{
+    /**
+     * Called by ProductCatalogCache once a change to the products has committed.
+     * @param productIds - the ids of the added, changed or removed Products.
+     */
+    void productsChanged(Set<Integer> productIds);
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.exceptions.UnknownSkuException;
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Service for resolving the products referenced by a request in a single query.
+ */
+@Service
+public class ProductLookupService
+{
+    @Autowired
+    private ProductRepository productRepository;
+
+    /**
+     * Looks up every product for a collection of SKUs with one IN-list query.
+     * @param skus - the SKUs to resolve, duplicates are allowed.
+     * @return Map<Integer, Product> - the products keyed by SKU.
+     * @throws UnknownSkuException - if any SKU has no product, listing all of the missing SKUs.
+     */
+    public Map<Integer, Product> findBySkus(Collection<Integer> skus)
+    {
+        Set<Integer> distinctSkus = new HashSet<>(skus);
+        Map<Integer, Product> productsBySku = findExistingBySkus(distinctSkus);
+
+        if (productsBySku.size() < distinctSkus.size())
+        {
+            Set<Integer> unknownSkus = new TreeSet<>(distinctSkus);
+            unknownSkus.removeAll(productsBySku.keySet());
+            throw new UnknownSkuException(unknownSkus);
+        }
+
+        return productsBySku;
+    }
+
+    /**
+     * Looks up the products that exist for a collection of SKUs with one IN-list query, skipping unknown SKUs.
+     * @param skus - the SKUs to resolve, duplicates are allowed.
+     * @return Map<Integer, Product> - the products found, keyed by SKU.
+     */
+    public Map<Integer, Product> findExistingBySkus(Collection<Integer> skus)
+    {
+        Map<Integer, Product> productsBySku = new HashMap<>();
+        if (skus.isEmpty())
+        {
+            return productsBySku;
+        }
+
+        for (Product product : productRepository.findByskuIn(new HashSet<>(skus)))
+        {
+            productsBySku.put(product.getSku(), product);
+        }
+        return productsBySku;
+    }
+}
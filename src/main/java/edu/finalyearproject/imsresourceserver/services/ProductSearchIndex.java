@@ -0,0 +1,316 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.ProductSuggestion;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory typeahead index over product names and SKUs. Prefix matches come from sorted maps of the lower-cased
+ * name and SKU, and when there aren't enough of those the remaining slots are filled with fuzzy matches ranked by
+ * trigram similarity, so small typos still find the product. Built once from the database, then kept current by
+ * re-reading just the products reported by ProductCatalogCache as changed, see SnapshotRebuilder.
+ */
+@Service
+public class ProductSearchIndex implements ProductChangeListener
+{
+    public static final int DEFAULT_LIMIT = 10;
+    public static final int MAX_LIMIT = 100;
+
+    // share of trigrams two strings must have in common to count as a fuzzy match, as pg_trgm's default
+    static final double MIN_SIMILARITY = 0.3;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private Tables tables = new Tables();
+
+    private final SnapshotRebuilder<List<ProductSuggestion>> rebuilder = new SnapshotRebuilder<>(
+            ProductSearchIndex.class, "product search index", () -> productRepository.findAllSuggestions(),
+            this::install);
+
+    private Logger log = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    /**
+     * Builds the index when the application starts. If the database isn't reachable yet the index is built on first use.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup()
+    {
+        rebuilder.buildOnStartup();
+    }
+
+    /**
+     * Reloads every product into a new index, one rebuild or product change at a time.
+     */
+    public void rebuild()
+    {
+        rebuilder.rebuild();
+    }
+
+    /**
+     * Finds the products best matching a partially typed name or SKU. Name prefix matches come first in name order,
+     * then SKU prefix matches, then fuzzy name matches from most to least similar.
+     * @param query - the text typed so far, case is ignored.
+     * @param limit - the maximum number of matches to return.
+     * @return List<ProductSuggestion> - at most limit matches, best first.
+     */
+    public List<ProductSuggestion> search(String query, int limit)
+    {
+        String normalised = normalise(query);
+        if (normalised.isEmpty() || limit <= 0)
+        {
+            return new ArrayList<>();
+        }
+        rebuilder.ensureBuilt();
+
+        lock.readLock().lock();
+        try
+        {
+            Set<Integer> matched = new LinkedHashSet<>();
+            addPrefixMatches(tables.byName, normalised, limit, matched);
+            addPrefixMatches(tables.bySku, normalised, limit, matched);
+            if (matched.size() < limit)
+            {
+                addFuzzyMatches(normalised, limit, matched);
+            }
+
+            List<ProductSuggestion> suggestions = new ArrayList<>(matched.size());
+            for (Integer id : matched)
+            {
+                suggestions.add(tables.byId.get(id).suggestion);
+            }
+            return suggestions;
+        } finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Re-reads the changed products and re-indexes them, dropping any that have been deleted. Changes are applied one
+     * at a time, so an older re-read can never replace a newer one.
+     * @param productIds - the ids of the added, changed or removed Products.
+     */
+    @Override
+    public void productsChanged(Set<Integer> productIds)
+    {
+        rebuilder.serially(() -> reload(productIds));
+    }
+
+    private void install(List<ProductSuggestion> products)
+    {
+        Tables newTables = new Tables();
+        for (ProductSuggestion product : products)
+        {
+            newTables.add(new Entry(product));
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            tables = newTables;
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+        log.info("Built product search index of " + newTables.byId.size() + " products");
+    }
+
+    private void reload(Set<Integer> productIds)
+    {
+        List<Entry> entries = new ArrayList<>();
+        productRepository.findSuggestionsByIdIn(productIds).forEach(product -> entries.add(new Entry(product)));
+
+        lock.writeLock().lock();
+        try
+        {
+            for (Integer id : productIds)
+            {
+                tables.remove(id);
+            }
+            for (Entry entry : entries)
+            {
+                tables.add(entry);
+            }
+        } finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // caller holds the read lock
+    private void addPrefixMatches(TreeMap<String, Set<Integer>> index, String prefix, int limit, Set<Integer> matched)
+    {
+        for (Set<Integer> ids : index.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values())
+        {
+            for (Integer id : ids)
+            {
+                if (matched.size() >= limit)
+                {
+                    return;
+                }
+                matched.add(id);
+            }
+        }
+    }
+
+    // caller holds the read lock
+    private void addFuzzyMatches(String query, int limit, Set<Integer> matched)
+    {
+        Set<String> queryTrigrams = trigrams(query);
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (String trigram : queryTrigrams)
+        {
+            for (Integer id : tables.byTrigram.getOrDefault(trigram, Collections.emptySet()))
+            {
+                shared.merge(id, 1, Integer::sum);
+            }
+        }
+
+        List<Entry> candidates = new ArrayList<>();
+        Map<Integer, Double> similarity = new HashMap<>();
+        for (Map.Entry<Integer, Integer> count : shared.entrySet())
+        {
+            Entry entry = tables.byId.get(count.getKey());
+            if (matched.contains(entry.id))
+            {
+                continue;
+            }
+            int union = queryTrigrams.size() + entry.trigrams.size() - count.getValue();
+            double score = (double) count.getValue() / union;
+            if (score >= MIN_SIMILARITY)
+            {
+                candidates.add(entry);
+                similarity.put(entry.id, score);
+            }
+        }
+
+        candidates.sort(Comparator.<Entry>comparingDouble(entry -> similarity.get(entry.id)).reversed()
+                .thenComparing(entry -> entry.name));
+        for (Entry entry : candidates)
+        {
+            if (matched.size() >= limit)
+            {
+                return;
+            }
+            matched.add(entry.id);
+        }
+    }
+
+    // lower-cased and trimmed so lookups ignore case and stray whitespace
+    static String normalise(String text)
+    {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // three character windows of each word, padded so word starts and ends weigh more, as pg_trgm does
+    static Set<String> trigrams(String text)
+    {
+        Set<String> trigrams = new HashSet<>();
+        for (String word : text.split("[^\\p{L}\\p{N}]+"))
+        {
+            if (word.isEmpty())
+            {
+                continue;
+            }
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++)
+            {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+        }
+        return trigrams;
+    }
+
+    // the searchable form of one product
+    private static class Entry
+    {
+        private final int id;
+        private final String name;
+        private final String sku;
+        private final Set<String> trigrams;
+        private final ProductSuggestion suggestion;
+
+        private Entry(ProductSuggestion product)
+        {
+            id = product.getId();
+            name = normalise(product.getName());
+            sku = product.getSku() == null ? "" : product.getSku().toString();
+            trigrams = trigrams(name);
+            suggestion = product;
+        }
+    }
+
+    // lookup structures that are swapped as a whole on rebuild
+    private static class Tables
+    {
+        private final Map<Integer, Entry> byId = new HashMap<>();
+        private final TreeMap<String, Set<Integer>> byName = new TreeMap<>();
+        private final TreeMap<String, Set<Integer>> bySku = new TreeMap<>();
+        private final Map<String, Set<Integer>> byTrigram = new HashMap<>();
+
+        private void add(Entry entry)
+        {
+            remove(entry.id);
+            byId.put(entry.id, entry);
+            if (!entry.name.isEmpty())
+            {
+                byName.computeIfAbsent(entry.name, key -> new TreeSet<>()).add(entry.id);
+            }
+            if (!entry.sku.isEmpty())
+            {
+                bySku.computeIfAbsent(entry.sku, key -> new TreeSet<>()).add(entry.id);
+            }
+            for (String trigram : entry.trigrams)
+            {
+                byTrigram.computeIfAbsent(trigram, key -> new HashSet<>()).add(entry.id);
+            }
+        }
+
+        private void remove(int id)
+        {
+            Entry entry = byId.remove(id);
+            if (entry == null)
+            {
+                return;
+            }
+            removeFrom(byName, entry.name, id);
+            removeFrom(bySku, entry.sku, id);
+            for (String trigram : entry.trigrams)
+            {
+                removeFrom(byTrigram, trigram, id);
+            }
+        }
+
+        private static void removeFrom(Map<String, Set<Integer>> index, String key, int id)
+        {
+            Set<Integer> ids = index.get(key);
+            if (ids != null)
+            {
+                ids.remove(id);
+                if (ids.isEmpty())
+                {
+                    index.remove(key);
+                }
+            }
+        }
+    }
+}
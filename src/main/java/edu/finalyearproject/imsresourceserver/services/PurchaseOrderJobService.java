@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.controllers.ReportsController;
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.Purchase;
+import edu.finalyearproject.imsresourceserver.models.PurchaseOrderJob;
+import edu.finalyearproject.imsresourceserver.models.PurchaseOrderJob.Status;
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Service saving purchase orders on the caller's thread and sending their invoices from a bounded pool of background
+ * workers. A job takes a slot before anything is saved and gives it back when its invoices are done, so when every
+ * worker is busy and the queue is full new batches are refused outright rather than saved without invoices. The most
+ * recent jobs are kept in memory so their progress can be looked up. Nothing about a job is persisted, so its status
+ * and any invoices still waiting to be sent are lost if the application restarts.
+ */
+@Service
+public class PurchaseOrderJobService
+{
+    // one worker by default, raise it where the mail server can take invoices in parallel
+    @Value("${purchase.invoice.threads:1}")
+    private int threads;
+
+    @Value("${purchase.invoice.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${purchase.jobs.retained:500}")
+    private int retainedJobs;
+
+    @Autowired
+    private PurchaseOrderService purchaseOrderService;
+
+    @Autowired
+    private ReportsController reportsController;
+
+    private ExecutorService workers;
+    private Semaphore slots;
+
+    private final AtomicLong nextId = new AtomicLong();
+
+    // guarded by itself, oldest jobs dropped beyond retainedJobs
+    private final Map<Long, PurchaseOrderJob> jobs = new LinkedHashMap<>()
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, PurchaseOrderJob> eldest)
+        {
+            return size() > retainedJobs;
+        }
+    };
+
+    private Logger log = LoggerFactory.getLogger(PurchaseOrderJobService.class);
+
+    @PostConstruct
+    void start()
+    {
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "purchase-invoice-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        slots = new Semaphore(threads + queueCapacity);
+    }
+
+    // lets queued invoices finish sending before the application stops
+    @PreDestroy
+    void stop() throws InterruptedException
+    {
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS))
+        {
+            log.warn("Purchase invoice workers still busy at shutdown, some invoices may not have been sent");
+        }
+    }
+
+    /**
+     * Saves one purchase order per supplier, then queues a job to generate and email their invoices.
+     * @param productsBySupplier - the products to order, grouped by their supplier.
+     * @return PurchaseOrderJob - the queued job, holding the ids of the saved purchase orders. FAILED with every
+     * purchase order listed as failed if the workers are shutting down and the invoices can't be queued.
+     * @throws ResponseStatusException - 503 Service Unavailable if the invoice queue is full, nothing is saved.
+     */
+    public PurchaseOrderJob submit(Map<Supplier, Set<Product>> productsBySupplier)
+    {
+        if (!slots.tryAcquire())
+        {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many purchase orders waiting for invoices, try again shortly");
+        }
+
+        List<Purchase> purchases;
+        try
+        {
+            purchases = purchaseOrderService.savePurchaseOrders(productsBySupplier);
+        } catch (RuntimeException e)
+        {
+            slots.release();
+            throw e;
+        }
+
+        List<Integer> purchaseIds = purchases.stream().map(Purchase::getId).collect(Collectors.toList());
+        PurchaseOrderJob job = new PurchaseOrderJob(nextId.incrementAndGet(), Status.QUEUED, purchaseIds, 0, List.of());
+        publish(job);
+        try
+        {
+            workers.execute(() -> {
+                try
+                {
+                    sendInvoices(job, purchases);
+                } finally
+                {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e)
+        {
+            slots.release();
+            return rejected(job);
+        }
+
+        log.info("Queued purchase order job " + job.getId() + " for purchase orders " + purchaseIds);
+        return job;
+    }
+
+    /**
+     * Returns the latest state of a job.
+     * @param id - the id of the job.
+     * @return PurchaseOrderJob - the job's status and results.
+     * @throws ResponseStatusException - 404 Not Found if there is no such job, or it's too old to be retained.
+     */
+    public PurchaseOrderJob getJob(long id)
+    {
+        PurchaseOrderJob job;
+        synchronized (jobs)
+        {
+            job = jobs.get(id);
+        }
+        if (job == null)
+        {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No purchase order job with id " + id);
+        }
+        return job;
+    }
+
+    // one purchase's invoice failing doesn't stop the rest being sent
+    private void sendInvoices(PurchaseOrderJob job, List<Purchase> purchases)
+    {
+        List<Integer> failed = new ArrayList<>();
+        int sent = 0;
+        publish(new PurchaseOrderJob(job.getId(), Status.RUNNING, job.getPurchaseIds(), sent, List.of()));
+        for (Purchase purchase : purchases)
+        {
+            try
+            {
+                reportsController.generatePurchaseInvoice(purchase);
+                sent++;
+            } catch (RuntimeException e)
+            {
+                log.error("Failed to send invoice for purchase order " + purchase.getId() + ": " + e.getMessage(), e);
+                failed.add(purchase.getId());
+            }
+            publish(new PurchaseOrderJob(job.getId(), Status.RUNNING, job.getPurchaseIds(), sent, List.copyOf(failed)));
+        }
+
+        Status status = failed.isEmpty() ? Status.COMPLETED : Status.FAILED;
+        publish(new PurchaseOrderJob(job.getId(), status, job.getPurchaseIds(), sent, List.copyOf(failed)));
+        log.info("Purchase order job " + job.getId() + " " + status + ", " + sent + " invoices sent");
+    }
+
+    // the workers are shutting down, the purchases stay saved but none of their invoices will be sent
+    private PurchaseOrderJob rejected(PurchaseOrderJob job)
+    {
+        PurchaseOrderJob failed = new PurchaseOrderJob(job.getId(), Status.FAILED, job.getPurchaseIds(), 0,
+                job.getPurchaseIds());
+        publish(failed);
+        log.error("Purchase order job " + job.getId() + " FAILED, invoice workers are shut down, no invoices sent " +
+                "for purchase orders " + job.getPurchaseIds());
+        return failed;
+    }
+
+    private void publish(PurchaseOrderJob job)
+    {
+        synchronized (jobs)
+        {
+            jobs.put(job.getId(), job);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.controllers.ReportsController;
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.Purchase;
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import edu.finalyearproject.imsresourceserver.repositories.PurchaseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Service for raising supplier purchase orders, shared by manual ordering and the reorder planner.
+ */
+@Service
+public class PurchaseOrderService
+{
+    @Autowired
+    private PurchaseRepository purchaseRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ReportsController reportsController;
+
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+
+    @Autowired
+    private OnOrderLedger onOrderLedger;
+
+    @Autowired
+    private LeadTimeStats leadTimeStats;
+
+    private Logger log = LoggerFactory.getLogger(PurchaseOrderService.class);
+
+    /**
+     * Creates one purchase order per supplier dated today, saving them together so the inserts are batched, then
+     * generates and emails an invoice for each.
+     * @param productsBySupplier - the products to order, grouped by their supplier.
+     * @return List<Purchase> - the saved purchase orders.
+     */
+    public List<Purchase> createPurchaseOrders(Map<Supplier, Set<Product>> productsBySupplier)
+    {
+        List<Purchase> purchases = savePurchaseOrders(productsBySupplier);
+        for (Purchase purchase : purchases)
+        {
+            reportsController.generatePurchaseInvoice(purchase);
+        }
+        return purchases;
+    }
+
+    /**
+     * Creates one purchase order per supplier dated today, saving them together so the inserts are batched, without
+     * sending invoices.
+     * @param productsBySupplier - the products to order, grouped by their supplier.
+     * @return List<Purchase> - the saved purchase orders.
+     */
+    public List<Purchase> savePurchaseOrders(Map<Supplier, Set<Product>> productsBySupplier)
+    {
+        LocalDate date = LocalDate.now();
+        List<Purchase> purchases = new ArrayList<>();
+        for (Map.Entry<Supplier, Set<Product>> supplierProducts : productsBySupplier.entrySet())
+        {
+            purchases.add(new Purchase(supplierProducts.getKey(), date, supplierProducts.getValue()));
+        }
+        purchaseRepository.saveAll(purchases);
+        onOrderLedger.purchased(productIdsOf(purchases));
+        return purchases;
+    }
+
+    /**
+     * Receives a delivered purchase order: sets its arrival date to today and adds each product's reorder quantity to
+     * its stock, in one transaction of two statements whatever the number of lines. A purchase is only received once;
+     * receiving it again changes nothing.
+     * @param id - the id of the Purchase.
+     * @return Purchase - the delivered purchase order.
+     * @throws ResponseStatusException - 404 Not Found if there is no purchase with that id.
+     */
+    @Transactional
+    public Purchase receive(Integer id)
+    {
+        boolean received = purchaseRepository.markDeliveredIfOpen(id, LocalDate.now()) == 1;
+        if (received)
+        {
+            productRepository.receivePurchasedStock(id);
+            List<Integer> productIds = purchaseRepository.findProductIds(id);
+            productCatalogCache.invalidate(productIds);
+            onOrderLedger.received(productIds);
+        }
+
+        Purchase purchase = purchaseRepository.findById(id).orElseThrow(() ->
+                new ResponseStatusException(HttpStatus.NOT_FOUND, "No purchase order with id " + id));
+        if (received)
+        {
+            leadTimeStats.recordDelivery(purchase.getSupplier().getId(), purchase.getPurchase_date(),
+                    purchase.getArrival_date());
+        } else
+        {
+            log.info("Purchase order " + id + " was already delivered, stock unchanged");
+        }
+        return purchase;
+    }
+
+    // one entry per purchase line, so a product on two purchases counts twice
+    static List<Integer> productIdsOf(Collection<Purchase> purchases)
+    {
+        List<Integer> productIds = new ArrayList<>();
+        for (Purchase purchase : purchases)
+        {
+            purchase.getProducts().forEach(product -> productIds.add(product.getId()));
+        }
+        return productIds;
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.*;
+import edu.finalyearproject.imsresourceserver.repositories.ProductForecastRepository;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scheduled job raising purchase orders for products projected to run low before a new delivery could arrive. A
+ * product is reordered when its stock on hand, less its daily demand over its supplier's lead time, would be at or
+ * below its reorder threshold, and it isn't already on an undelivered purchase. Daily demand comes from the published
+ * forecast, falling back to the average daily sales for products without one. Lead times are the suppliers' observed
+ * lead times once they have enough deliveries, see LeadTimeStats.planningLeadTime. Flagged products are ordered in
+ * their reorder quantity with one purchase order per supplier.
+ */
+@Service
+public class ReorderPlanner
+{
+    // products that will run out soonest first, those with no demand last
+    private static final Comparator<PlannedReorder> SOONEST_STOCK_OUT_FIRST = Comparator
+            .comparing(PlannedReorder::getStockOutDate, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(PlannedReorder::getProductId);
+
+    @Value("${reorder.planner.enabled:true}")
+    private boolean scheduleEnabled;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductForecastRepository productForecastRepository;
+
+    @Autowired
+    private OnOrderLedger onOrderLedger;
+
+    @Autowired
+    private LeadTimeStats leadTimeStats;
+
+    @Autowired
+    private DemandService demandService;
+
+    @Autowired
+    private PurchaseOrderService purchaseOrderService;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private Logger log = LoggerFactory.getLogger(ReorderPlanner.class);
+
+    /**
+     * Runs the planner nightly, after the demand forecast has been published.
+     */
+    @Scheduled(cron = "${reorder.planner.cron:0 0 4 * * *}")
+    public void runScheduled()
+    {
+        if (!scheduleEnabled)
+        {
+            return;
+        }
+        try
+        {
+            plan(false);
+        } catch (RuntimeException e)
+        {
+            log.error("Scheduled reorder planning failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Projects every active product's stock over its supplier's lead time and orders those that would run low.
+     * @param dryRun - true to only report the purchase orders that would be raised.
+     * @return ReorderPlan - the purchase orders raised, or that would be raised, grouped by supplier.
+     * @throws ResponseStatusException - 409 Conflict if the planner is already running.
+     */
+    public ReorderPlan plan(boolean dryRun)
+    {
+        if (!running.compareAndSet(false, true))
+        {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "The reorder planner is already running");
+        }
+
+        try
+        {
+            LocalDate today = LocalDate.now();
+            List<Product> products = productRepository.findAllActiveWithSupplier();
+            Map<Product, PlannedReorder> reorders = findProductsToReorder(products, today);
+
+            Map<Supplier, Set<Product>> productsBySupplier = new LinkedHashMap<>();
+            Map<Integer, PlannedPurchase> plannedBySupplier = new TreeMap<>();
+            for (Map.Entry<Product, PlannedReorder> reorder : reorders.entrySet())
+            {
+                Supplier supplier = reorder.getKey().getSupplier();
+                productsBySupplier.computeIfAbsent(supplier, key -> new LinkedHashSet<>()).add(reorder.getKey());
+                plannedBySupplier.computeIfAbsent(supplier.getId(),
+                        id -> new PlannedPurchase(id, supplier.getName(), null, new ArrayList<>()))
+                        .getProducts().add(reorder.getValue());
+            }
+            List<PlannedPurchase> planned = new ArrayList<>(plannedBySupplier.values());
+            planned.forEach(purchase -> purchase.getProducts().sort(SOONEST_STOCK_OUT_FIRST));
+
+            if (!dryRun && !productsBySupplier.isEmpty())
+            {
+                for (Purchase purchase : purchaseOrderService.createPurchaseOrders(productsBySupplier))
+                {
+                    plannedBySupplier.get(purchase.getSupplier().getId()).setPurchaseId(purchase.getId());
+                }
+            }
+
+            log.info((dryRun ? "Dry run: " : "") + "Reorder planner checked " + products.size() + " products, "
+                    + reorders.size() + " to reorder across " + planned.size() + " suppliers");
+            return new ReorderPlan(today, dryRun, products.size(), planned);
+        } finally
+        {
+            running.set(false);
+        }
+    }
+
+    // copies the columns the projection needs into primitive arrays, then tests every product in one pass over them
+    private Map<Product, PlannedReorder> findProductsToReorder(List<Product> products, LocalDate today)
+    {
+        int count = products.size();
+        Map<Integer, Float> forecastDemand = new HashMap<>();
+        for (ProductForecast forecast : productForecastRepository.findAll())
+        {
+            forecastDemand.put(forecast.getProduct_id(), forecast.getDaily_demand());
+        }
+        Map<Integer, Float> averageDemand = forecastDemand.size() < count
+                ? demandService.averageDailySales(List.of(), DemandService.DEFAULT_WINDOW)
+                : Map.of();
+
+        Map<Integer, Float> leadTimes = new HashMap<>();
+        int[] onHand = new int[count];
+        int[] threshold = new int[count];
+        int[] quantity = new int[count];
+        float[] demand = new float[count];
+        float[] leadTime = new float[count];
+        boolean[] ordered = new boolean[count];
+        for (int i = 0; i < count; i++)
+        {
+            Product product = products.get(i);
+            Float daily = forecastDemand.getOrDefault(product.getId(), averageDemand.get(product.getId()));
+            onHand[i] = valueOrZero(product.getInventory_on_hand());
+            threshold[i] = valueOrZero(product.getReorder_threshold());
+            quantity[i] = valueOrZero(product.getReorder_quantity());
+            demand[i] = daily == null ? 0 : daily;
+            leadTime[i] = leadTimes.computeIfAbsent(product.getSupplier().getId(),
+                    id -> leadTimeStats.planningLeadTime(product.getSupplier()));
+            ordered[i] = onOrderLedger.isOnOrder(product.getId());
+        }
+
+        Map<Product, PlannedReorder> reorders = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++)
+        {
+            if (ordered[i] || quantity[i] <= 0 || onHand[i] - demand[i] * leadTime[i] > threshold[i])
+            {
+                continue;
+            }
+            Product product = products.get(i);
+            LocalDate stockOut = demand[i] > 0 ? today.plusDays((long) Math.floor(onHand[i] / demand[i])) : null;
+            reorders.put(product,
+                    new PlannedReorder(product.getId(), product.getName(), onHand[i], demand[i], stockOut, quantity[i]));
+        }
+        return reorders;
+    }
+
+    private static int valueOrZero(Integer value)
+    {
+        return value == null ? 0 : value;
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Keeps an in-memory view of the database in step with the changes made after it was loaded. Rebuilds run one at a
+ * time: each loads a snapshot and hands it to the owner to install, and the view counts as built once one has
+ * succeeded. Changes reach the view one of two ways, and neither can be lost or counted twice across a rebuild:
+ * <ul>
+ *     <li>afterCommit, for changes applied as deltas. The committing transaction holds a commit gate from just before
+ *     its commit until the delta is applied, and a rebuild holds it exclusively while it loads and installs, so every
+ *     change is either already in the snapshot or applied to the installed view, never both.</li>
+ *     <li>serially, for changes that re-read the rows they affect. These run one at a time under the same lock as
+ *     rebuilds, so the last re-read of a row is always the newest.</li>
+ * </ul>
+ * @param <S> - the type of snapshot loaded from the database.
+ */
+public class SnapshotRebuilder<S>
+{
+    private final String name;
+    private final Supplier<S> load;
+    private final Consumer<S> install;
+
+    // held by a rebuild and by each serial change
+    private final ReentrantLock serial = new ReentrantLock();
+    // shared by transactions committing a change, exclusive while a rebuild loads and installs
+    private final ReentrantReadWriteLock commitGate = new ReentrantReadWriteLock();
+
+    private volatile boolean built;
+
+    private final Logger log;
+
+    /**
+     * Creates a rebuilder for one in-memory view.
+     * @param owner - the class owning the view, used for logging.
+     * @param name - what the view is called in log messages.
+     * @param load - reads the snapshot from the database.
+     * @param install - replaces the view with one built from a snapshot.
+     */
+    public SnapshotRebuilder(Class<?> owner, String name, Supplier<S> load, Consumer<S> install)
+    {
+        this.name = name;
+        this.load = load;
+        this.install = install;
+        this.log = LoggerFactory.getLogger(owner);
+    }
+
+    /**
+     * Builds the view, logging rather than throwing if the database isn't reachable yet so it is built on first use.
+     */
+    public void buildOnStartup()
+    {
+        try
+        {
+            rebuild();
+        } catch (RuntimeException e)
+        {
+            log.warn("Could not build " + name + " on startup, will build on first request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads a new snapshot and installs it, waiting for any rebuild or serial change already running.
+     */
+    public void rebuild()
+    {
+        serial.lock();
+        try
+        {
+            rebuildLocked();
+        } finally
+        {
+            serial.unlock();
+        }
+    }
+
+    /**
+     * Builds the view if no rebuild has succeeded yet. Concurrent callers wait for a single rebuild.
+     */
+    public void ensureBuilt()
+    {
+        if (built)
+        {
+            return;
+        }
+        serial.lock();
+        try
+        {
+            if (!built)
+            {
+                rebuildLocked();
+            }
+        } finally
+        {
+            serial.unlock();
+        }
+    }
+
+    /**
+     * Whether a rebuild has succeeded.
+     * @return boolean - true once the view has been built.
+     */
+    public boolean isBuilt()
+    {
+        return built;
+    }
+
+    /**
+     * Applies a delta to the view once the current transaction commits, or straight away outside a transaction.
+     * Deltas arriving before the view is built are dropped, as the snapshot will include them.
+     * @param change - applies the delta to the view.
+     */
+    public void afterCommit(Runnable change)
+    {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            commitGate.readLock().lock();
+            try
+            {
+                applyIfBuilt(change);
+            } finally
+            {
+                commitGate.readLock().unlock();
+            }
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+        {
+            private boolean holdingGate;
+
+            @Override
+            public void beforeCommit(boolean readOnly)
+            {
+                commitGate.readLock().lock();
+                holdingGate = true;
+            }
+
+            @Override
+            public void afterCommit()
+            {
+                applyIfBuilt(change);
+            }
+
+            @Override
+            public void afterCompletion(int status)
+            {
+                if (holdingGate)
+                {
+                    holdingGate = false;
+                    commitGate.readLock().unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs a change that re-reads its rows from the database, one at a time with other serial changes and rebuilds.
+     * Changes arriving before the view is built are dropped, as the snapshot will include them.
+     * @param change - re-reads the changed rows and applies them to the view.
+     */
+    public void serially(Runnable change)
+    {
+        serial.lock();
+        try
+        {
+            applyIfBuilt(change);
+        } finally
+        {
+            serial.unlock();
+        }
+    }
+
+    // caller holds the serial lock
+    private void rebuildLocked()
+    {
+        if (commitGate.getReadHoldCount() > 0)
+        {
+            throw new IllegalStateException("Cannot rebuild " + name + " while committing a change to it");
+        }
+        commitGate.writeLock().lock();
+        try
+        {
+            install.accept(load.get());
+            built = true;
+        } finally
+        {
+            commitGate.writeLock().unlock();
+        }
+    }
+
+    private void applyIfBuilt(Runnable change)
+    {
+        if (built)
+        {
+            change.run();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.exceptions.InsufficientStockException;
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Service for changing product stock levels with atomic updates in the database, so concurrent requests never
+ * overwrite each other's changes.
+ */
+@Service
+public class StockService
+{
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+
+    /**
+     * Takes stock for every line of an order. Each product is decremented only if enough units are on hand, and
+     * products are updated in id order so concurrent multi-line orders lock rows in the same order. Joins the
+     * caller's transaction, so the order and every decrement commit or roll back together.
+     * @param quantities - the number of units to take for each product.
+     * @throws InsufficientStockException - if any product is short, listing the SKUs of all short products.
+     */
+    @Transactional
+    public void reserve(Map<Product, Integer> quantities)
+    {
+        List<Product> products = new ArrayList<>(quantities.keySet());
+        products.sort(Comparator.comparing(Product::getId));
+
+        Set<Integer> shortSkus = new TreeSet<>();
+        for (Product product : products)
+        {
+            if (productRepository.decrementStockIfAvailable(product.getId(), quantities.get(product)) == 0)
+            {
+                shortSkus.add(product.getSku());
+            }
+        }
+
+        if (!shortSkus.isEmpty())
+        {
+            throw new InsufficientStockException(shortSkus);
+        }
+        productCatalogCache.invalidate(quantities.keySet().stream().map(Product::getId).collect(Collectors.toList()));
+    }
+
+    /**
+     * Removes units of a product from stock regardless of the level on hand, e.g. for wasted items.
+     * @param product - the Product to adjust.
+     * @param quantity - the number of units to remove.
+     */
+    @Transactional
+    public void remove(Product product, int quantity)
+    {
+        productRepository.adjustStock(product.getId(), -quantity);
+        productCatalogCache.invalidate(product);
+    }
+}
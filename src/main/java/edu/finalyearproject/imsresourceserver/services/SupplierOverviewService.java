@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.SupplierOverview;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Service building the supplier screen's overview of every supplier in one query. Products and purchases are each
+ * aggregated per supplier before being joined, so neither multiplies the other's rows.
+ */
+@Service
+public class SupplierOverviewService
+{
+    private static final String SELECT_OVERVIEWS = "SELECT s.id, s.name, s.lead_time, " +
+            "COALESCE(p.product_count, 0), COALESCE(p.suspended_count, 0), COALESCE(pu.open_count, 0), " +
+            "COALESCE(p.stock_value, 0), pu.last_delivery " +
+            "FROM suppliers s " +
+            "LEFT JOIN (SELECT supplier_id, COUNT(*) AS product_count, " +
+            "COUNT(*) FILTER (WHERE suspended) AS suspended_count, " +
+            "SUM(CAST(price AS NUMERIC) * inventory_on_hand) AS stock_value " +
+            "FROM products GROUP BY supplier_id) p ON p.supplier_id = s.id " +
+            "LEFT JOIN (SELECT supplier_id, COUNT(*) FILTER (WHERE arrival_date IS NULL) AS open_count, " +
+            "MAX(arrival_date) AS last_delivery " +
+            "FROM purchases GROUP BY supplier_id) pu ON pu.supplier_id = s.id " +
+            "ORDER BY s.id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Summarises every supplier's products and purchase orders.
+     * @return List<SupplierOverview> - one overview per supplier, in id order.
+     */
+    public List<SupplierOverview> getOverviews()
+    {
+        return jdbcTemplate.query(SELECT_OVERVIEWS, (resultSet, row) -> mapOverview(resultSet));
+    }
+
+    // wasNull reports on the last column read, so it must follow getFloat(3) directly
+    static SupplierOverview mapOverview(ResultSet resultSet) throws SQLException
+    {
+        int supplierId = resultSet.getInt(1);
+        String name = resultSet.getString(2);
+        float leadTime = resultSet.getFloat(3);
+        Float nullableLeadTime = resultSet.wasNull() ? null : leadTime;
+        return new SupplierOverview(supplierId, name, nullableLeadTime, resultSet.getLong(4), resultSet.getLong(5),
+                resultSet.getLong(6), resultSet.getDouble(7), resultSet.getObject(8, LocalDate.class));
+    }
+}
@@ -0,0 +1,3 @@
+-- Indexes backing the date range queries used by the summary and stock movement reports.
+CREATE INDEX IF NOT EXISTS idx_orders_order_date ON orders (order_date);
+CREATE INDEX IF NOT EXISTS idx_purchases_purchase_date ON purchases (purchase_date);
@@ -0,0 +1,6 @@
+-- Composite indexes backing the newest-first keyset pagination of /orders/all and /purchases/all.
+-- Their leading column also serves the date range queries, so the single-column indexes are replaced.
+CREATE INDEX IF NOT EXISTS idx_orders_order_date_id ON orders (order_date DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_purchases_purchase_date_id ON purchases (purchase_date DESC, id DESC);
+DROP INDEX IF EXISTS idx_orders_order_date;
+DROP INDEX IF EXISTS idx_purchases_purchase_date;
@@ -0,0 +1,2 @@
+-- Index backing the paginated customer order history and order count queries.
+CREATE INDEX IF NOT EXISTS idx_orders_customer_id_order_date_id ON orders (customer_id, order_date DESC, id DESC);
@@ -0,0 +1,12 @@
+-- order_items becomes one line per product per order with a quantity. Existing rows were written one per distinct
+-- product (repeated units collapsed in the old Set<Product>), so they are kept as single-unit lines.
+ALTER TABLE order_items ADD COLUMN IF NOT EXISTS quantity INTEGER NOT NULL DEFAULT 1;
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'order_items_quantity_positive'
+                   AND conrelid = 'order_items'::regclass) THEN
+        ALTER TABLE order_items ADD CONSTRAINT order_items_quantity_positive CHECK (quantity > 0);
+    END IF;
+END
+$$;
+CREATE INDEX IF NOT EXISTS idx_order_items_product_id ON order_items (product_id);
@@ -0,0 +1,14 @@
+-- Entities now draw ids from their serial sequences with Hibernate's pooled optimizer (allocationSize = 50), so each
+-- nextval reserves the block (value - 49 .. value). The sequences are stepped by 50 and moved past the existing ids,
+-- and the column defaults are dropped so no writer can take a single value out of a block Hibernate has handed out.
+DO $$
+DECLARE
+    t TEXT;
+BEGIN
+    FOREACH t IN ARRAY ARRAY['products', 'suppliers', 'customers', 'addresses', 'orders', 'purchases']
+    LOOP
+        EXECUTE format('ALTER SEQUENCE %I INCREMENT BY 50', t || '_id_seq');
+        EXECUTE format('SELECT setval(%L, COALESCE((SELECT MAX(id) FROM %I), 0) + 50, false)', t || '_id_seq', t);
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP DEFAULT', t);
+    END LOOP;
+END $$;
@@ -0,0 +1,10 @@
+-- Order totals are stored as exact fixed-point when the order is created instead of being summed from Float prices on
+-- every read. Existing orders are backfilled from their lines, rounding each price to pence as Order.lineCost does.
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS total_cost NUMERIC(12, 2) NOT NULL DEFAULT 0;
+UPDATE orders o
+SET total_cost = totals.total_cost
+FROM (SELECT i.order_id, SUM(ROUND(p.price::NUMERIC, 2) * i.quantity) AS total_cost
+      FROM order_items i
+      JOIN products p ON p.id = i.product_id
+      GROUP BY i.order_id) totals
+WHERE totals.order_id = o.id;
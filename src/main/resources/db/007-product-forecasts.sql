@@ -0,0 +1,10 @@
+-- Demand forecasts published by the nightly ForecastService job, one row per product, replaced on every run. Read
+-- by the low stock and purchasing screens instead of the flat 14 day average.
+CREATE TABLE IF NOT EXISTS product_forecasts
+(
+    product_id    INTEGER PRIMARY KEY REFERENCES products (id) ON DELETE CASCADE,
+    generated_on  DATE NOT NULL,
+    daily_demand  REAL NOT NULL,
+    weekly_demand REAL NOT NULL
+);
+
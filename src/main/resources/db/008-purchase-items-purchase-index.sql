@@ -0,0 +1,3 @@
+-- Index backing the set-based stock increment when a purchase is received, which finds a purchase's products by
+-- purchase_id.
+CREATE INDEX IF NOT EXISTS idx_purchase_items_purchase_id ON purchase_items (purchase_id);
@@ -0,0 +1,3 @@
+-- Partial index over purchases still awaiting delivery, backing the on-order ledger's rebuild. Stays small however
+-- much purchase history builds up, since delivered purchases drop out of it.
+CREATE INDEX IF NOT EXISTS idx_purchases_undelivered ON purchases (id) WHERE arrival_date IS NULL;
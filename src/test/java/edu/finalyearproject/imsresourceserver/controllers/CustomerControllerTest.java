@@ -10,12 +10,15 @@ import edu.finalyearproject.imsresourceserver.models.Address;
 import edu.finalyearproject.imsresourceserver.models.Customer;
 import edu.finalyearproject.imsresourceserver.models.Order;
 import edu.finalyearproject.imsresourceserver.repositories.CustomerRepository;
+import edu.finalyearproject.imsresourceserver.services.ProductCatalogCache;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -32,6 +35,9 @@ public class CustomerControllerTest
     @InjectMocks
     private CustomerController target;
 
+    @Mock
+    private ProductCatalogCache productCatalogCache;
+
     @Mock
     private CustomerRepository customerRepository;
 
@@ -81,7 +87,7 @@ public class CustomerControllerTest
 
         void whenGetCustomersIsCalled()
         {
-            getCustomersResult = target.getCustomers();
+            getCustomersResult = target.getCustomers(new ServletWebRequest(new MockHttpServletRequest()));
         }
 
         void whenGetCustomerIsCalled()
@@ -6,32 +6,49 @@
  */
 package edu.finalyearproject.imsresourceserver.controllers;
 
+import edu.finalyearproject.imsresourceserver.exceptions.InsufficientStockException;
 import edu.finalyearproject.imsresourceserver.models.*;
 import edu.finalyearproject.imsresourceserver.repositories.CustomerRepository;
 import edu.finalyearproject.imsresourceserver.repositories.OrderRepository;
 import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
 import edu.finalyearproject.imsresourceserver.requests.OrderRequest;
 import edu.finalyearproject.imsresourceserver.requests.ProductRequest;
+import edu.finalyearproject.imsresourceserver.services.DemandCounters;
+import edu.finalyearproject.imsresourceserver.services.ProductLookupService;
+import edu.finalyearproject.imsresourceserver.services.StockService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.sql.Date;
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class OrderControllerTest
 {
-    private static final Order ORDER = new Order(1, new Customer(), Date.valueOf("2020-02-02"), null, Set.of(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier())), (float) 2.0);
+    private static final Order ORDER = new Order(1, new Customer(), LocalDate.parse("2020-02-02"), null, Set.of(new OrderItem(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier()), 1)), new BigDecimal("2.00"));
     private static final Product PRODUCT = new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier());
     private static final Product PRODUCT2 = new Product(2, "product2", 22222222, (float) 2.0, 10, 5, 10,  false,  new Supplier());
     private static final Product PRODUCT3 = new Product(3, "product3", 33333333, (float) 2.0, 10, 5, 10,  false,  new Supplier());
@@ -49,13 +66,25 @@ public class OrderControllerTest
     @Mock
     private CustomerRepository customerRepository;
 
+    @Mock
+    private ProductLookupService productLookupService;
+
+    @Mock
+    private StockService stockService;
+
+    @Mock
+    private DemandCounters demandCounters;
+
     private List<Order> orders = getOrders();
 
-    private List<Order> getOrdersResult;
+    private CursorPage<Order> getOrdersResult;
     private Order setOrderToDeliveredResult;
     private List<Order> getOrdersForProductResult;
-    private List<Order> getOrdersForCustomerResult;
+    private CursorPage<Order> getOrdersForCustomerResult;
+    private long getOrderCountForCustomerResult;
     private Order createNewOrderResult;
+    private InsufficientStockException createNewOrderException;
+    private HttpStatus createNewOrderStatus;
 
     private Fixture fixture;
 
@@ -68,11 +97,27 @@ public class OrderControllerTest
     @Test
     public void getOrders_returnsSortedOrders()
     {
-        fixture.givenOrderRepositoryReturnsOrders();
+        fixture.givenOrderRepositoryReturnsNewestOrders();
         fixture.whenGetOrdersIsCalled();
         fixture.thenAssertOrdersAreSortedCorrectly();
     }
 
+    @Test
+    public void getOrders_returnsCursorForNextPage()
+    {
+        fixture.givenOrderRepositoryReturnsNewestOrders();
+        fixture.whenGetOrdersIsCalledWithPageSize(2);
+        fixture.thenAssertFirstPageHasNextCursor();
+    }
+
+    @Test
+    public void getOrders_withCursor_returnsNextPage()
+    {
+        fixture.givenOrderRepositoryReturnsOrdersBeforeCursor();
+        fixture.whenGetOrdersIsCalledWithCursor();
+        fixture.thenAssertNextPageIsReturned();
+    }
+
     @Test
     public void setOrderToDelivered_returnsDeliveredOrder()
     {
@@ -101,8 +146,8 @@ public class OrderControllerTest
     @Test
     public void getOrdersForCustomer_returnsOrders()
     {
-        fixture.givenCustomerRepositoryReturnsOptionalWithCustomer();
-        fixture.givenOrderRepositoryReturnsOrders();
+        fixture.givenOrderRepositoryReturnsOrderIdsForCustomer();
+        fixture.givenOrderRepositoryReturnsOrdersWithProducts();
         fixture.whenGetOrdersForCustomerIsCalled();
         fixture.thenAssertCorrectOrdersAreReturned();
     }
@@ -110,36 +155,84 @@ public class OrderControllerTest
     @Test
     public void getOrdersForCustomer_returnsEmptyArrayList()
     {
-        fixture.givenCustomerRepositoryReturnsEmptyOptional();
+        fixture.givenOrderRepositoryReturnsNoOrderIdsForCustomer();
         fixture.whenGetOrdersForCustomerIsCalled();
-        fixture.thenAssertEmptyArrayListIsReturend(getOrdersForCustomerResult);
+        fixture.thenAssertEmptyArrayListIsReturend(getOrdersForCustomerResult.getItems());
+    }
+
+    @Test
+    public void getOrderCountForCustomer_returnsCount()
+    {
+        fixture.givenOrderRepositoryCountsOrdersForCustomer();
+        fixture.whenGetOrderCountForCustomerIsCalled();
+        fixture.thenAssertOrderCountIsCorrect();
     }
 
     @Test
     public void createNewOrder_orderCreatedCorrectly()
     {
         fixture.givenCustomerRepositoryReturnsOptionalWithCustomer();
-        fixture.givenProductRepositoryReturnsProduct();
+        fixture.givenProductLookupServiceResolvesSkus();
         fixture.whenCreateNewOrderIsCalled();
         fixture.thenAssertOrderIsCorrect();
+        fixture.thenAssertStockIsReservedForEachLine();
+        fixture.thenAssertSalesRecordedForEachLine();
+    }
+
+    @Test
+    public void createNewOrder_insufficientStock_throwsConflict()
+    {
+        fixture.givenCustomerRepositoryReturnsOptionalWithCustomer();
+        fixture.givenProductLookupServiceResolvesSkus();
+        fixture.givenStockServiceCannotReserveStock();
+        fixture.whenCreateNewOrderIsCalled();
+        fixture.thenAssertConflictIsThrown();
+        fixture.thenAssertNoSalesRecorded();
+    }
+
+    @Test
+    public void createNewOrder_repeatedSkuMergedIntoOneLine()
+    {
+        fixture.givenCustomerRepositoryReturnsOptionalWithCustomer();
+        fixture.givenProductLookupServiceResolvesSkus();
+        fixture.whenCreateNewOrderIsCalledWithRepeatedSku();
+        fixture.thenAssertRepeatedSkuHasOneLine();
+    }
+
+    @Test
+    public void createNewOrder_nonPositiveQuantity_throwsBadRequest()
+    {
+        fixture.whenCreateNewOrderIsCalledWithQuantities(2, 0);
+        fixture.thenAssertBadRequestAndNothingReserved();
+        fixture.whenCreateNewOrderIsCalledWithQuantities(3, -1);
+        fixture.thenAssertBadRequestAndNothingReserved();
     }
 
     private List<Order> getOrders()
     {
         List<Order> orders = new ArrayList<>();
-        orders.add(new Order(1, CUSTOMER, Date.valueOf("2020-02-02"), null, Set.of(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier())), (float) 2.0));
-        orders.add(new Order(2, new Customer(), Date.valueOf("2020-03-18"), null, Set.of(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier())), (float) 2.0));
-        orders.add(new Order(3, CUSTOMER, Date.valueOf("2020-03-20"), null, Set.of(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier())), (float) 2.0));
-        orders.add(new Order(4, CUSTOMER, Date.valueOf("2020-02-16"), null, Set.of(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier())), (float) 2.0));
-        orders.add(new Order(5, new Customer(), Date.valueOf("2020-02-08"), null, Set.of(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier())), (float) 2.0));
+        orders.add(new Order(1, CUSTOMER, LocalDate.parse("2020-02-02"), null, Set.of(new OrderItem(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier()), 1)), new BigDecimal("2.00")));
+        orders.add(new Order(2, new Customer(), LocalDate.parse("2020-03-18"), null, Set.of(new OrderItem(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier()), 1)), new BigDecimal("2.00")));
+        orders.add(new Order(3, CUSTOMER, LocalDate.parse("2020-03-20"), null, Set.of(new OrderItem(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier()), 1)), new BigDecimal("2.00")));
+        orders.add(new Order(4, CUSTOMER, LocalDate.parse("2020-02-16"), null, Set.of(new OrderItem(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier()), 1)), new BigDecimal("2.00")));
+        orders.add(new Order(5, new Customer(), LocalDate.parse("2020-02-08"), null, Set.of(new OrderItem(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier()), 1)), new BigDecimal("2.00")));
         return orders;
     }
 
     private class Fixture
     {
-        void givenOrderRepositoryReturnsOrders()
+        void givenOrderRepositoryReturnsNewestOrders()
+        {
+            List<Order> newest = new ArrayList<>(orders);
+            newest.sort(Collections.reverseOrder());
+            when(orderRepository.findNewest(any(Pageable.class))).thenAnswer(invocation ->
+                    newest.subList(0, Math.min(newest.size(), invocation.<Pageable>getArgument(0).getPageSize())));
+        }
+
+        void givenOrderRepositoryReturnsOrdersBeforeCursor()
         {
-            when(orderRepository.findAll()).thenReturn(orders);
+            when(orderRepository.findNewestBefore(LocalDate.parse("2020-03-18"), 2, PageRequest.of(0, 51)))
+                    .thenReturn(List.of(orders.get(3), orders.get(4), orders.get(0)));
         }
 
         void givenOrderRepositoryReturnsAnOrder()
@@ -154,7 +247,7 @@ public class OrderControllerTest
 
         void givenOrderRepositoryReturnsOrdersForProduct()
         {
-            when(orderRepository.findByproducts(PRODUCT)).thenReturn(orders);
+            when(orderRepository.findContainingProduct(PRODUCT)).thenReturn(orders);
         }
 
         void givenProductRepositoryReturnsEmptyOptional()
@@ -167,21 +260,52 @@ public class OrderControllerTest
             when(customerRepository.findById(1)).thenReturn(Optional.of(CUSTOMER));
         }
 
-        void givenCustomerRepositoryReturnsEmptyOptional()
+        void givenOrderRepositoryReturnsOrderIdsForCustomer()
+        {
+            when(orderRepository.findNewestIdsForCustomer(1, PageRequest.of(0, 51))).thenReturn(List.of(3, 4, 1));
+        }
+
+        void givenOrderRepositoryReturnsNoOrderIdsForCustomer()
+        {
+            when(orderRepository.findNewestIdsForCustomer(1, PageRequest.of(0, 51))).thenReturn(List.of());
+        }
+
+        void givenOrderRepositoryReturnsOrdersWithProducts()
+        {
+            when(orderRepository.findAllWithItemsByIdIn(List.of(3, 4, 1)))
+                    .thenReturn(List.of(orders.get(2), orders.get(3), orders.get(0)));
+        }
+
+        void givenStockServiceCannotReserveStock()
+        {
+            doThrow(new InsufficientStockException(Set.of(22222222))).when(stockService).reserve(anyMap());
+        }
+
+        void givenOrderRepositoryCountsOrdersForCustomer()
         {
-            when(customerRepository.findById(1)).thenReturn(Optional.empty());
+            when(orderRepository.countForCustomer(1)).thenReturn(3L);
         }
 
-        void givenProductRepositoryReturnsProduct()
+        void givenProductLookupServiceResolvesSkus()
         {
-            when(productRepository.findBysku(11111111)).thenReturn(PRODUCT);
-            when(productRepository.findBysku(22222222)).thenReturn(PRODUCT2);
-            when(productRepository.findBysku(33333333)).thenReturn(PRODUCT3);
+            when(productLookupService.findBySkus(anyCollection()))
+                    .thenReturn(Map.of(11111111, PRODUCT, 22222222, PRODUCT2, 33333333, PRODUCT3));
         }
 
         void whenGetOrdersIsCalled()
         {
-            getOrdersResult = target.getOrders();
+            getOrdersResult = target.getOrders(null, CursorPage.DEFAULT_PAGE_SIZE);
+        }
+
+        void whenGetOrdersIsCalledWithPageSize(int size)
+        {
+            getOrdersResult = target.getOrders(null, size);
+        }
+
+        void whenGetOrdersIsCalledWithCursor()
+        {
+            String cursor = new PageCursor(LocalDate.parse("2020-03-18"), 2).encode();
+            getOrdersResult = target.getOrders(cursor, CursorPage.DEFAULT_PAGE_SIZE);
         }
 
         void whenSetOrderToDeliveredIsCalled()
@@ -196,7 +320,12 @@ public class OrderControllerTest
 
         void whenGetOrdersForCustomerIsCalled()
         {
-            getOrdersForCustomerResult = target.getOrdersForCustomer(1);
+            getOrdersForCustomerResult = target.getOrdersForCustomer(1, null, CursorPage.DEFAULT_PAGE_SIZE);
+        }
+
+        void whenGetOrderCountForCustomerIsCalled()
+        {
+            getOrderCountForCustomerResult = target.getOrderCountForCustomer(1);
         }
 
         void whenCreateNewOrderIsCalled()
@@ -208,17 +337,75 @@ public class OrderControllerTest
             orderRequest.setCustomer_id(1);
             orderRequest.setProducts(new ProductRequest[]{productRequest1, productRequest2, productRequest3});
 
+            try
+            {
+                createNewOrderResult = target.createNewOrder(orderRequest);
+            } catch (InsufficientStockException e)
+            {
+                createNewOrderException = e;
+            }
+        }
+
+        void whenCreateNewOrderIsCalledWithRepeatedSku()
+        {
+            ProductRequest productRequest1 = new ProductRequest("11111111", 2);
+            ProductRequest productRequest2 = new ProductRequest("22222222", 1);
+            ProductRequest productRequest3 = new ProductRequest("11111111", 3);
+            OrderRequest orderRequest = new OrderRequest();
+            orderRequest.setCustomer_id(1);
+            orderRequest.setProducts(new ProductRequest[]{productRequest1, productRequest2, productRequest3});
+
             createNewOrderResult = target.createNewOrder(orderRequest);
         }
 
+        void whenCreateNewOrderIsCalledWithQuantities(int first, int second)
+        {
+            OrderRequest orderRequest = new OrderRequest();
+            orderRequest.setCustomer_id(1);
+            orderRequest.setProducts(new ProductRequest[]{new ProductRequest("11111111", first),
+                    new ProductRequest("11111111", second)});
+
+            try
+            {
+                target.createNewOrder(orderRequest);
+                fail("Expected a 400 for a non-positive quantity");
+            } catch (ResponseStatusException e)
+            {
+                createNewOrderStatus = e.getStatus();
+            }
+        }
+
+        void thenAssertBadRequestAndNothingReserved()
+        {
+            assertEquals(HttpStatus.BAD_REQUEST, createNewOrderStatus);
+            verifyNoInteractions(orderRepository, stockService, demandCounters);
+        }
+
         void thenAssertOrdersAreSortedCorrectly()
         {
-            assertEquals(5, getOrdersResult.size());
-            assertEquals(new Order(3, CUSTOMER, Date.valueOf("2020-03-20"), null, Set.of(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier())), (float) 2.0), getOrdersResult.get(0));
-            assertEquals(new Order(2, new Customer(), Date.valueOf("2020-03-18"), null, Set.of(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier())), (float) 2.0), getOrdersResult.get(1));
-            assertEquals(new Order(4, CUSTOMER, Date.valueOf("2020-02-16"), null, Set.of(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier())), (float) 2.0), getOrdersResult.get(2));
-            assertEquals(new Order(5, new Customer(), Date.valueOf("2020-02-08"), null, Set.of(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier())), (float) 2.0), getOrdersResult.get(3));
-            assertEquals(new Order(1, CUSTOMER, Date.valueOf("2020-02-02"), null, Set.of(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier())), (float) 2.0), getOrdersResult.get(4));
+            List<Order> items = getOrdersResult.getItems();
+            assertEquals(5, items.size());
+            assertEquals(new Order(3, CUSTOMER, LocalDate.parse("2020-03-20"), null, Set.of(new OrderItem(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier()), 1)), new BigDecimal("2.00")), items.get(0));
+            assertEquals(new Order(2, new Customer(), LocalDate.parse("2020-03-18"), null, Set.of(new OrderItem(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier()), 1)), new BigDecimal("2.00")), items.get(1));
+            assertEquals(new Order(4, CUSTOMER, LocalDate.parse("2020-02-16"), null, Set.of(new OrderItem(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier()), 1)), new BigDecimal("2.00")), items.get(2));
+            assertEquals(new Order(5, new Customer(), LocalDate.parse("2020-02-08"), null, Set.of(new OrderItem(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier()), 1)), new BigDecimal("2.00")), items.get(3));
+            assertEquals(new Order(1, CUSTOMER, LocalDate.parse("2020-02-02"), null, Set.of(new OrderItem(new Product(1, "product", 111111111, (float) 2.0, 10, 5, 10,  false,  new Supplier()), 1)), new BigDecimal("2.00")), items.get(4));
+            assertNull(getOrdersResult.getNextCursor());
+        }
+
+        void thenAssertFirstPageHasNextCursor()
+        {
+            assertEquals(2, getOrdersResult.getItems().size());
+            assertEquals(3, (int) getOrdersResult.getItems().get(0).getId());
+            assertEquals(2, (int) getOrdersResult.getItems().get(1).getId());
+            assertEquals(new PageCursor(LocalDate.parse("2020-03-18"), 2), PageCursor.decode(getOrdersResult.getNextCursor()));
+        }
+
+        void thenAssertNextPageIsReturned()
+        {
+            assertEquals(3, getOrdersResult.getItems().size());
+            assertEquals(4, (int) getOrdersResult.getItems().get(0).getId());
+            assertNull(getOrdersResult.getNextCursor());
         }
 
         void thenAssertOrderIsDelivered()
@@ -229,11 +416,11 @@ public class OrderControllerTest
         void thenAssertOrdersAreReturned()
         {
             assertEquals(5, getOrdersForProductResult.size());
-            assertTrue(getOrdersForProductResult.get(0).getProducts().contains(PRODUCT));
-            assertTrue(getOrdersForProductResult.get(1).getProducts().contains(PRODUCT));
-            assertTrue(getOrdersForProductResult.get(2).getProducts().contains(PRODUCT));
-            assertTrue(getOrdersForProductResult.get(3).getProducts().contains(PRODUCT));
-            assertTrue(getOrdersForProductResult.get(4).getProducts().contains(PRODUCT));
+            assertTrue(getOrdersForProductResult.get(0).getItems().contains(new OrderItem(PRODUCT, 1)));
+            assertTrue(getOrdersForProductResult.get(1).getItems().contains(new OrderItem(PRODUCT, 1)));
+            assertTrue(getOrdersForProductResult.get(2).getItems().contains(new OrderItem(PRODUCT, 1)));
+            assertTrue(getOrdersForProductResult.get(3).getItems().contains(new OrderItem(PRODUCT, 1)));
+            assertTrue(getOrdersForProductResult.get(4).getItems().contains(new OrderItem(PRODUCT, 1)));
         }
 
         void thenAssertEmptyArrayListIsReturend(List<Order> orders)
@@ -243,13 +430,50 @@ public class OrderControllerTest
 
         void thenAssertCorrectOrdersAreReturned()
         {
-            assertEquals(3, getOrdersForCustomerResult.size());
+            assertEquals(3, getOrdersForCustomerResult.getItems().size());
+            assertTrue(getOrdersForCustomerResult.getItems().stream().allMatch(order -> order.getCustomer() == CUSTOMER));
+            assertNull(getOrdersForCustomerResult.getNextCursor());
+        }
+
+        void thenAssertOrderCountIsCorrect()
+        {
+            assertEquals(3, getOrderCountForCustomerResult);
         }
 
         void thenAssertOrderIsCorrect()
         {
-            assertEquals(3, createNewOrderResult.getProducts().size());
+            assertEquals(3, createNewOrderResult.getItems().size());
             assertEquals(CUSTOMER, createNewOrderResult.getCustomer());
         }
+
+        void thenAssertSalesRecordedForEachLine()
+        {
+            verify(demandCounters).record(Map.of(1, 1, 2, 1, 3, 1), LocalDate.now());
+        }
+
+        void thenAssertNoSalesRecorded()
+        {
+            verifyNoInteractions(demandCounters);
+        }
+
+        void thenAssertStockIsReservedForEachLine()
+        {
+            verify(stockService).reserve(Map.of(PRODUCT, 1, PRODUCT2, 1, PRODUCT3, 1));
+        }
+
+        void thenAssertConflictIsThrown()
+        {
+            assertNull(createNewOrderResult);
+            assertEquals(HttpStatus.CONFLICT, createNewOrderException.getStatus());
+            assertEquals(Set.of(22222222), createNewOrderException.getSkus());
+        }
+
+        void thenAssertRepeatedSkuHasOneLine()
+        {
+            assertEquals(2, createNewOrderResult.getItems().size());
+            assertTrue(createNewOrderResult.getItems().contains(new OrderItem(PRODUCT, 5)));
+            assertTrue(createNewOrderResult.getItems().contains(new OrderItem(PRODUCT2, 1)));
+            assertEquals(new BigDecimal("12.00"), createNewOrderResult.getTotalCost());
+        }
     }
 }
@@ -6,13 +6,16 @@
  */
 package edu.finalyearproject.imsresourceserver.controllers;
 
-import edu.finalyearproject.imsresourceserver.models.Customer;
-import edu.finalyearproject.imsresourceserver.models.Order;
 import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.ProductSuggestion;
 import edu.finalyearproject.imsresourceserver.models.Supplier;
-import edu.finalyearproject.imsresourceserver.repositories.OrderRepository;
 import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
 import edu.finalyearproject.imsresourceserver.repositories.SupplierRepository;
+import edu.finalyearproject.imsresourceserver.services.DemandService;
+import edu.finalyearproject.imsresourceserver.services.LowStockIndex;
+import edu.finalyearproject.imsresourceserver.services.OnOrderLedger;
+import edu.finalyearproject.imsresourceserver.services.ProductCatalogCache;
+import edu.finalyearproject.imsresourceserver.services.ProductSearchIndex;
 import edu.finalyearproject.imsresourceserver.requests.NewProductRequest;
 import edu.finalyearproject.imsresourceserver.requests.ProductAmountRequest;
 import edu.finalyearproject.imsresourceserver.requests.ProductThresholdRequest;
@@ -22,14 +25,21 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
 
-import java.sql.Date;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.function.IntPredicate;
 
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -40,6 +50,7 @@ public class ProductControllerTest
     private static final Product PRODUCT_TO_SUSPEND = new Product("product1", 11111111, (float) 5.0, 10, 5, 2, SUPPLIER_1);
     private static final String PRODUCT_1_NAME = "product1";
     private static final int SKU = 11111111;
+    private static final String ETAG = "\"1-3\"";
     private static final String SUPPLIER_NAME = "supplier1";
 
     @InjectMocks
@@ -52,10 +63,24 @@ public class ProductControllerTest
     private SupplierRepository supplierRepository;
 
     @Mock
-    private OrderRepository orderRepository;
+    private DemandService demandService;
+
+    @Mock
+    private ProductCatalogCache productCatalogCache;
+
+    @Mock
+    private LowStockIndex lowStockIndex;
+
+    @Mock
+    private ProductSearchIndex productSearchIndex;
+
+    @Mock
+    private OnOrderLedger onOrderLedger;
 
     private List<Product> getProductsResult;
+    private MockHttpServletResponse getProductsResponse;
     private List<String> getProductNamesResult;
+    private List<ProductSuggestion> searchProductsResult;
     private Product getProductByNameResult;
     private Product getProductBySkuResult;
     private List<Product> getProductsForSupplierResult;
@@ -67,6 +92,7 @@ public class ProductControllerTest
     private Product updateReorderThresholdResult;
     private Product updateReorderAmountResult;
     private float getAverageDailySalesResult;
+    private Map<Integer, Float> getAverageDailySalesForProductsResult;
 
     private Fixture fixture;
 
@@ -79,23 +105,50 @@ public class ProductControllerTest
     @Test
     public void getProducts_returnsAllProducts()
     {
+        fixture.givenCatalogETag(ETAG);
         fixture.givenRepositoryContainsProducts();
-        fixture.whenGetProductsIsCalled();
+        fixture.whenGetProductsIsCalled(null);
         fixture.thenAssertListIsCorrect();
+        fixture.thenAssertETagSent(ETAG);
     }
 
     @Test
-    public void getProductNames_returnsCorrectProductNames()
+    public void getProducts_notModifiedWithoutQueryingDatabase()
+    {
+        fixture.givenCatalogETag(ETAG);
+        fixture.whenGetProductsIsCalled(ETAG);
+        fixture.thenAssertNotModified();
+    }
+
+    @Test
+    public void getProducts_staleETagReturnsAllProducts()
     {
+        fixture.givenCatalogETag(ETAG);
         fixture.givenRepositoryContainsProducts();
+        fixture.whenGetProductsIsCalled("\"1-0\"");
+        fixture.thenAssertListIsCorrect();
+    }
+
+    @Test
+    public void getProductNames_returnsCorrectProductNames()
+    {
+        fixture.givenRepositoryContainsProductNames();
         fixture.whenGetProductNamesIsCalled();
         fixture.thenAssertListOfNamesIsCorrect();
     }
 
+    @Test
+    public void searchProducts_capsLimitAndReturnsIndexMatches()
+    {
+        fixture.givenSearchIndexReturnsSuggestions(ProductSearchIndex.MAX_LIMIT);
+        fixture.whenSearchProductsIsCalled(1000);
+        fixture.thenAssertSuggestionsReturned();
+    }
+
     @Test
     public  void getProductByName_returnsCorrectName()
     {
-        fixture.givenRepositoryReturnsProductFromName();
+        fixture.givenCacheReturnsProductFromName();
         fixture.whenGetProductByNameIsCalled();
         fixture.thenAssertReturnedProductIsCorrect(getProductByNameResult);
     }
@@ -111,8 +164,7 @@ public class ProductControllerTest
     @Test
     public void getProductsForSupplier_returnsMultipleProducts()
     {
-        fixture.givenCorrectSupplierIsReturned();
-        fixture.givenRepositoryReturnsProductsForSupplier();
+        fixture.givenCacheReturnsProductsForSupplier();
         fixture.whenGetProductsForSupplierIsCalled();
         fixture.thenAssertReturnedProductsAreCorrect();
     }
@@ -120,7 +172,7 @@ public class ProductControllerTest
     @Test
     public void getProduct_returnsCorrectProduct()
     {
-        fixture.givenRepositoryReturnsOptionalWithProduct();
+        fixture.givenCacheReturnsOptionalWithProduct();
         fixture.whenGetProductIsCalled();
         fixture.thenAssertProductIsCorrect();
     }
@@ -128,7 +180,7 @@ public class ProductControllerTest
     @Test
     public void getProduct_returnsEmptyProduct()
     {
-        fixture.givenRepositoryReturnsEmptyOptional();
+        fixture.givenCacheReturnsEmptyOptional();
         fixture.whenGetProductIsCalled();
         fixture.thenAssertEmptyProductIsReturned(getProductResult);
     }
@@ -140,6 +192,7 @@ public class ProductControllerTest
         fixture.givenRepositorySavesProduct();
         fixture.whenAddProductIsCalled();
         fixture.thenAssertReturnedProductIsCorrect(addProductResult);
+        fixture.thenAssertCacheInvalidatedFor(addProductResult);
     }
 
     @Test
@@ -150,6 +203,7 @@ public class ProductControllerTest
         fixture.givenRepositorySavesProduct();
         fixture.whenSuspendProductIsCalled();
         fixture.thenAssertProductIsSuspended();
+        fixture.thenAssertCacheInvalidatedFor(PRODUCT_TO_SUSPEND);
         fixture.finallyReinstateProduct();
     }
 
@@ -186,8 +240,32 @@ public class ProductControllerTest
     @Test
     public void getProductsLowOnStock_onlyProductsLowOnStockReturned()
     {
-        fixture.givenRepositoryReturnsProductsLowOnStock();
-        fixture.whenGetProductsLowOnStockIsCalled();
+        fixture.givenIndexReturnsProductsLowOnStock(LowStockIndex.DEFAULT_MARGIN, Integer.MAX_VALUE);
+        fixture.whenGetProductsLowOnStockIsCalled(LowStockIndex.DEFAULT_MARGIN, null);
+        fixture.thenAssertAllProductsAreLowOnStock();
+    }
+
+    @Test
+    public void getProductsLowOnStock_leavesOutProductsOnOrderByDefault()
+    {
+        fixture.givenIndexSkipsProductsOnOrder();
+        fixture.whenGetProductsLowOnStockIsCalled(LowStockIndex.DEFAULT_MARGIN, null, false);
+        fixture.thenAssertOnOrderLedgerConsulted();
+    }
+
+    @Test
+    public void getUnitsOnOrder_readsLedgerForEachProduct()
+    {
+        fixture.givenCacheReturnsOptionalWithProduct();
+        when(onOrderLedger.unitsOnOrder(PRODUCT_1)).thenReturn(4);
+        assertEquals(Map.of(1, 4), target.getUnitsOnOrder(List.of(1, 2)));
+    }
+
+    @Test
+    public void getProductsLowOnStock_passesMarginAndLimitToIndex()
+    {
+        fixture.givenIndexReturnsProductsLowOnStock(50, 3);
+        fixture.whenGetProductsLowOnStockIsCalled(50, 3);
         fixture.thenAssertAllProductsAreLowOnStock();
     }
 
@@ -228,13 +306,39 @@ public class ProductControllerTest
     @Test
     public void getAverageDailySales_returnsCorrectValue()
     {
-        fixture.givenOrderRepositoryReturnsAllOrders();
+        fixture.givenDemandServiceReturnsAverageDailySales();
         fixture.whenGetAverageDailySalesIsCalled();
         fixture.thenAssertCorrectValue();
     }
 
+    @Test
+    public void getAverageDailySalesForProducts_allProductsWhenNoIdsGiven()
+    {
+        fixture.givenDemandServiceReturnsAverageDailySalesFor(List.of(), 28);
+        fixture.whenGetAverageDailySalesForProductsIsCalled(28, null);
+        fixture.thenAssertAverageDailySalesForProductsReturned();
+    }
+
+    @Test
+    public void getAverageDailySalesForProducts_passesRequestedIds()
+    {
+        fixture.givenDemandServiceReturnsAverageDailySalesFor(List.of(1, 2), DemandService.DEFAULT_WINDOW);
+        fixture.whenGetAverageDailySalesForProductsIsCalled(DemandService.DEFAULT_WINDOW, List.of(1, 2));
+        fixture.thenAssertAverageDailySalesForProductsReturned();
+    }
+
     private class Fixture
     {
+        void givenRepositoryContainsProductNames()
+        {
+            when(productRepository.findAllNames()).thenReturn(List.of("product1", "product2", "product3"));
+        }
+
+        void givenCatalogETag(String etag)
+        {
+            when(productCatalogCache.getCatalogETag()).thenReturn(etag);
+        }
+
         void givenRepositoryContainsProducts()
         {
             List<Product> products = new ArrayList<>();
@@ -244,9 +348,14 @@ public class ProductControllerTest
             when(productRepository.findAll()).thenReturn(products);
         }
 
-        void givenRepositoryReturnsProductFromName()
+        void givenCacheReturnsProductFromName()
+        {
+            when(productCatalogCache.findByName(PRODUCT_1_NAME)).thenReturn(PRODUCT_1);
+        }
+
+        void givenSearchIndexReturnsSuggestions(int limit)
         {
-            when(productRepository.findByname(PRODUCT_1_NAME)).thenReturn(PRODUCT_1);
+            when(productSearchIndex.search("prod", limit)).thenReturn(List.of(new ProductSuggestion(1, "product1", SKU)));
         }
 
         void givenRepositoryReturnsProductFromSku()
@@ -259,9 +368,19 @@ public class ProductControllerTest
             when(supplierRepository.findByname(SUPPLIER_NAME)).thenReturn(SUPPLIER_1);
         }
 
-        void givenRepositoryReturnsProductsForSupplier()
+        void givenCacheReturnsProductsForSupplier()
+        {
+            when(productCatalogCache.findBySupplierName(SUPPLIER_NAME)).thenReturn(List.of(PRODUCT_1));
+        }
+
+        void givenCacheReturnsOptionalWithProduct()
+        {
+            when(productCatalogCache.findById(1)).thenReturn(Optional.of(PRODUCT_1));
+        }
+
+        void givenCacheReturnsEmptyOptional()
         {
-            when(productRepository.findBysupplier(SUPPLIER_1)).thenReturn(List.of(PRODUCT_1));
+            when(productCatalogCache.findById(1)).thenReturn(Optional.empty());
         }
 
         void givenRepositoryReturnsOptionalWithProduct()
@@ -294,32 +413,43 @@ public class ProductControllerTest
             PRODUCT_TO_SUSPEND.setSuspended(true);
         }
 
-        void givenRepositoryReturnsProductsLowOnStock()
+        void givenIndexReturnsProductsLowOnStock(int margin, int limit)
         {
             List<Product> products = new ArrayList<>();
             products.add(new Product("product1", 11111111, (float) 0.20, 10, 5, 2, new Supplier()));
-            products.add(new Product("product2", 22222222, (float) 0.20, 100, 5, 2, new Supplier()));
-            products.add(new Product("product3", 33333333, (float) 0.20, 20, 5, 2, new Supplier()));
-            products.add(new Product("product4", 44444444, (float) 0.20, 100, 5, 2, new Supplier()));
-            products.add(new Product("product5", 55555555, (float) 0.20, 100, 5, 2, new Supplier()));
             products.add(new Product("product6", 66666666, (float) 0.20, 30, 20, 2, new Supplier()));
-            when(productRepository.findAll()).thenReturn(products);
+            products.add(new Product("product3", 33333333, (float) 0.20, 20, 5, 2, new Supplier()));
+            when(lowStockIndex.findLowStock(margin, limit)).thenReturn(products);
+        }
+
+        void givenIndexSkipsProductsOnOrder()
+        {
+            when(lowStockIndex.findLowStock(eq(LowStockIndex.DEFAULT_MARGIN), eq(Integer.MAX_VALUE), any(IntPredicate.class)))
+                    .thenAnswer(invocation -> {
+                        invocation.<IntPredicate>getArgument(2).test(7);
+                        return List.of();
+                    });
         }
 
-        void givenOrderRepositoryReturnsAllOrders()
+        void givenDemandServiceReturnsAverageDailySales()
         {
-            List<Order> orders = new ArrayList<>();
-            orders.add(new Order(1,new Customer(), Date.valueOf("2020-10-19"), null, Set.of(PRODUCT_1), (float)2.0));
-            orders.add(new Order(2,new Customer(), Date.valueOf("2020-10-20"), null, Set.of(PRODUCT_1), (float)2.0));
-            orders.add(new Order(3,new Customer(), Date.valueOf("2020-10-06"), null, Set.of(PRODUCT_1), (float)2.0));
-            orders.add(new Order(4,new Customer(), Date.valueOf("2020-10-02"), null, Set.of(PRODUCT_1), (float)2.0));
-            orders.add(new Order(5,new Customer(), Date.valueOf("2020-10-24"), null, Set.of(PRODUCT_1), (float)2.0));
-            when(orderRepository.findAll()).thenReturn(orders);
+            when(demandService.averageDailySales(1, DemandService.DEFAULT_WINDOW)).thenReturn((float) (5 / 14.0));
         }
 
-        void whenGetProductsIsCalled()
+        void givenDemandServiceReturnsAverageDailySalesFor(List<Integer> ids, int window)
         {
-            getProductsResult = target.getProducts();
+            when(demandService.averageDailySales(ids, window)).thenReturn(Map.of(1, 0.5f, 2, 0f));
+        }
+
+        void whenGetProductsIsCalled(String ifNoneMatch)
+        {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/products");
+            if (ifNoneMatch != null)
+            {
+                request.addHeader("If-None-Match", ifNoneMatch);
+            }
+            getProductsResponse = new MockHttpServletResponse();
+            getProductsResult = target.getProducts(new ServletWebRequest(request, getProductsResponse));
         }
 
         void whenGetProductNamesIsCalled()
@@ -332,6 +462,11 @@ public class ProductControllerTest
             getProductByNameResult = target.getProductByName(PRODUCT_1_NAME);
         }
 
+        void whenSearchProductsIsCalled(int limit)
+        {
+            searchProductsResult = target.searchProducts("prod", limit);
+        }
+
         void whenGetProductBySkuIsCalled()
         {
             getProductBySkuResult = target.getProductBySku(SKU);
@@ -363,9 +498,14 @@ public class ProductControllerTest
             reinstateProductResult = target.reinstateProduct(1);
         }
 
-        void whenGetProductsLowOnStockIsCalled()
+        void whenGetProductsLowOnStockIsCalled(int margin, Integer limit)
         {
-            getProductsLowOnStockResult = target.getProductsLowOnStock();
+            whenGetProductsLowOnStockIsCalled(margin, limit, true);
+        }
+
+        void whenGetProductsLowOnStockIsCalled(int margin, Integer limit, boolean includeOnOrder)
+        {
+            getProductsLowOnStockResult = target.getProductsLowOnStock(margin, limit, includeOnOrder);
         }
 
         void whenUpdateReorderThresholdIsCalled()
@@ -383,6 +523,18 @@ public class ProductControllerTest
             getAverageDailySalesResult = target.getAverageDailySales(1);
         }
 
+        void thenAssertETagSent(String etag)
+        {
+            assertEquals(etag, getProductsResponse.getHeader("ETag"));
+        }
+
+        void thenAssertNotModified()
+        {
+            assertNull(getProductsResult);
+            assertEquals(304, getProductsResponse.getStatus());
+            verifyNoInteractions(productRepository);
+        }
+
         void thenAssertListIsCorrect()
         {
             assertEquals(3, getProductsResult.size());
@@ -399,6 +551,11 @@ public class ProductControllerTest
             assertSame("product3", getProductNamesResult.get(2));
         }
 
+        void thenAssertSuggestionsReturned()
+        {
+            assertEquals(List.of(new ProductSuggestion(1, "product1", SKU)), searchProductsResult);
+        }
+
         void thenAssertReturnedProductIsCorrect(Product product)
         {
             assertEquals(product, new Product("product1", 11111111, (float) 5.00, 10, 5, 2, SUPPLIER_1));
@@ -425,17 +582,27 @@ public class ProductControllerTest
             assertTrue(suspendProductResult.isSuspended());
         }
 
+        void thenAssertCacheInvalidatedFor(Product product)
+        {
+            verify(productCatalogCache).invalidate(product);
+        }
+
         void thenAssertProductIsReinstated()
         {
             assertFalse(reinstateProductResult.isSuspended());
         }
 
+        void thenAssertOnOrderLedgerConsulted()
+        {
+            verify(onOrderLedger).isOnOrder(7);
+        }
+
         void thenAssertAllProductsAreLowOnStock()
         {
             assertEquals(3, getProductsLowOnStockResult.size());
             assertEquals("product1", getProductsLowOnStockResult.get(0).getName());
-            assertEquals("product3", getProductsLowOnStockResult.get(1).getName());
-            assertEquals("product6", getProductsLowOnStockResult.get(2).getName());
+            assertEquals("product6", getProductsLowOnStockResult.get(1).getName());
+            assertEquals("product3", getProductsLowOnStockResult.get(2).getName());
         }
 
         void thenAssertReorderThresholdUpdated()
@@ -448,9 +615,19 @@ public class ProductControllerTest
             assertEquals(200, (int) updateReorderAmountResult.getReorder_quantity());
         }
 
+        void whenGetAverageDailySalesForProductsIsCalled(int window, List<Integer> ids)
+        {
+            getAverageDailySalesForProductsResult = target.getAverageDailySalesForProducts(window, ids);
+        }
+
+        void thenAssertAverageDailySalesForProductsReturned()
+        {
+            assertEquals(Map.of(1, 0.5f, 2, 0f), getAverageDailySalesForProductsResult);
+        }
+
         void thenAssertCorrectValue()
         {
-            assertEquals(0, getAverageDailySalesResult, 0);
+            assertEquals(5 / 14.0, getAverageDailySalesResult, 0.0001);
         }
 
         void finallyReinstateProduct()
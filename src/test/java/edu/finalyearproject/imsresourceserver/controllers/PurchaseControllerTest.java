@@ -6,24 +6,35 @@
  */
 package edu.finalyearproject.imsresourceserver.controllers;
 
+import edu.finalyearproject.imsresourceserver.models.CursorPage;
+import edu.finalyearproject.imsresourceserver.models.PageCursor;
 import edu.finalyearproject.imsresourceserver.models.Product;
 import edu.finalyearproject.imsresourceserver.models.Purchase;
+import edu.finalyearproject.imsresourceserver.models.PurchaseOrderJob;
 import edu.finalyearproject.imsresourceserver.models.Supplier;
 import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
 import edu.finalyearproject.imsresourceserver.repositories.PurchaseRepository;
 import edu.finalyearproject.imsresourceserver.requests.ProductIds;
+import edu.finalyearproject.imsresourceserver.services.OnOrderLedger;
+import edu.finalyearproject.imsresourceserver.services.PurchaseOrderJobService;
+import edu.finalyearproject.imsresourceserver.services.PurchaseOrderService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
 
-import java.sql.Date;
+import java.time.LocalDate;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -37,9 +48,10 @@ public class PurchaseControllerTest
     private static final Product PRODUCT_3 = new Product(3, "product3", 33333333, (float) 5.0, 10, 5, 2, false, SUPPLIER_2);
     private static final Product PRODUCT_4 = new Product(4, "product3", 44444444, (float) 5.0, 10, 5, 2, false, SUPPLIER_3);
     private static final Product PRODUCT_5 = new Product(5, "product3", 55555555, (float) 5.0, 10, 5, 2, false, SUPPLIER_3);
-    private static final Purchase PURCHASE = new Purchase(1, new Supplier(), Date.valueOf("2020-02-03"), null, Set.of(PRODUCT, PRODUCT_2));
+    private static final Purchase PURCHASE = new Purchase(1, new Supplier(), LocalDate.parse("2020-02-03"), null, Set.of(PRODUCT, PRODUCT_2));
     private static final List<Purchase> PURCHASES = getPurchases();
     private static final ProductIds PRODUCT_IDS = getIds();
+    private static final PurchaseOrderJob JOB = new PurchaseOrderJob(1, PurchaseOrderJob.Status.QUEUED, List.of(6, 7, 8), 0, List.of());
 
     @InjectMocks
     private PurchaseController target;
@@ -51,13 +63,19 @@ public class PurchaseControllerTest
     private ProductRepository productRepository;
 
     @Mock
-    private ReportsController reportsController;
+    private PurchaseOrderService purchaseOrderService;
 
-    private List<Purchase> getPurchasesResult;
+    @Mock
+    private PurchaseOrderJobService purchaseOrderJobService;
+
+    @Mock
+    private OnOrderLedger onOrderLedger;
+
+    private CursorPage<Purchase> getPurchasesResult;
     private List<Purchase> getPurchasesForProductResult;
     private Purchase setOrderToDeliveredResult;
     private Purchase reorderPurchaseOrderResult;
-    private Map<Supplier, Set<Product>> createPurchaseOrderResult;
+    private PurchaseOrderJob createPurchaseOrderResult;
 
     private Fixture fixture;
 
@@ -75,6 +93,14 @@ public class PurchaseControllerTest
         fixture.thenAssertPurchasesAreSortedCorrectly();
     }
 
+    @Test
+    public void getPurchases_returnsCursorForNextPage()
+    {
+        fixture.givenPurchaseRepositoryReturnsPurchases();
+        fixture.whenGetPurchasesIsCalledWithPageSize(3);
+        fixture.thenAssertFirstPageHasNextCursor();
+    }
+
     @Test
     public void getPurchasesForProduct_returnsPurchasesCorrectly()
     {
@@ -95,7 +121,7 @@ public class PurchaseControllerTest
     @Test
     public void setOrderToDelivered_setsPurchaseToDelivered()
     {
-        fixture.givenProductRepositoryReturnsProduct();
+        fixture.givenPurchaseIsReceived();
         fixture.whenSetOrderToDeliveredIsCalled();
         fixture.thenAssertPurchaseIsDelivered();
     }
@@ -119,19 +145,21 @@ public class PurchaseControllerTest
     @Test
     public void createPurchaseOrder_multipleSupplierOrders()
     {
-        fixture.givenProductRepositoryReturnsMultipleProductOptionals();
+        fixture.givenProductRepositoryReturnsMultipleProducts();
+        fixture.givenJobIsQueued();
         fixture.whenCreatePurchaseOrderIsCalled();
         fixture.thenAssertProductsBySupplierMapIsCorrect();
+        fixture.thenAssertJobReturned();
     }
 
     private static List<Purchase> getPurchases()
     {
         List<Purchase> purchases = new ArrayList<>();
-        purchases.add(new Purchase(1, new Supplier(), Date.valueOf("2020-02-03"), null, Set.of(PRODUCT)));
-        purchases.add(new Purchase(2, new Supplier(), Date.valueOf("2020-02-16"), null, Set.of(PRODUCT)));
-        purchases.add(new Purchase(3, new Supplier(), Date.valueOf("2020-03-23"), null, Set.of(PRODUCT)));
-        purchases.add(new Purchase(4, new Supplier(), Date.valueOf("2020-03-10"), null, Set.of(PRODUCT)));
-        purchases.add(new Purchase(5, new Supplier(), Date.valueOf("2020-04-01"), null, Set.of(PRODUCT)));
+        purchases.add(new Purchase(1, new Supplier(), LocalDate.parse("2020-02-03"), null, Set.of(PRODUCT)));
+        purchases.add(new Purchase(2, new Supplier(), LocalDate.parse("2020-02-16"), null, Set.of(PRODUCT)));
+        purchases.add(new Purchase(3, new Supplier(), LocalDate.parse("2020-03-23"), null, Set.of(PRODUCT)));
+        purchases.add(new Purchase(4, new Supplier(), LocalDate.parse("2020-03-10"), null, Set.of(PRODUCT)));
+        purchases.add(new Purchase(5, new Supplier(), LocalDate.parse("2020-04-01"), null, Set.of(PRODUCT)));
         return purchases;
     }
 
@@ -151,7 +179,10 @@ public class PurchaseControllerTest
     {
         void givenPurchaseRepositoryReturnsPurchases()
         {
-            when(purchaseRepository.findAll()).thenReturn(PURCHASES);
+            List<Purchase> newest = new ArrayList<>(PURCHASES);
+            newest.sort(Collections.reverseOrder());
+            when(purchaseRepository.findNewest(any(Pageable.class))).thenAnswer(invocation ->
+                    newest.subList(0, Math.min(newest.size(), invocation.<Pageable>getArgument(0).getPageSize())));
         }
 
         void givenProductRepositoryReturnsOptionalWithProduct()
@@ -169,9 +200,10 @@ public class PurchaseControllerTest
             when(productRepository.findById(1)).thenReturn(Optional.empty());
         }
 
-        void givenProductRepositoryReturnsProduct()
+        void givenPurchaseIsReceived()
         {
-            when(purchaseRepository.findByid(1)).thenReturn(PURCHASE);
+            when(purchaseOrderService.receive(1)).thenReturn(
+                    new Purchase(1, new Supplier(), LocalDate.parse("2020-02-03"), LocalDate.now(), Set.of(PRODUCT, PRODUCT_2)));
         }
 
         void givenPurchaseRepositoryReturnsOptionalWithPurchase()
@@ -184,18 +216,25 @@ public class PurchaseControllerTest
             when(purchaseRepository.findById(1)).thenReturn(Optional.empty());
         }
 
-        void givenProductRepositoryReturnsMultipleProductOptionals()
+        void givenProductRepositoryReturnsMultipleProducts()
         {
-            when(productRepository.findById(1)).thenReturn(Optional.of(PRODUCT));
-            when(productRepository.findById(2)).thenReturn(Optional.of(PRODUCT_2));
-            when(productRepository.findById(3)).thenReturn(Optional.of(PRODUCT_3));
-            when(productRepository.findById(4)).thenReturn(Optional.of(PRODUCT_4));
-            when(productRepository.findById(5)).thenReturn(Optional.of(PRODUCT_5));
+            when(productRepository.findAllById(PRODUCT_IDS.getIds()))
+                    .thenReturn(List.of(PRODUCT, PRODUCT_2, PRODUCT_3, PRODUCT_4, PRODUCT_5));
+        }
+
+        void givenJobIsQueued()
+        {
+            when(purchaseOrderJobService.submit(any())).thenReturn(JOB);
         }
 
         void whenGetPurchasesIsCalled()
         {
-            getPurchasesResult = target.getPurchases();
+            getPurchasesResult = target.getPurchases(null, CursorPage.DEFAULT_PAGE_SIZE);
+        }
+
+        void whenGetPurchasesIsCalledWithPageSize(int size)
+        {
+            getPurchasesResult = target.getPurchases(null, size);
         }
 
         void whenGetPurchasesForProductIsCalled()
@@ -219,12 +258,20 @@ public class PurchaseControllerTest
 
         void thenAssertPurchasesAreSortedCorrectly()
         {
-            assertEquals(5, getPurchasesResult.size());
-            assertEquals("01-04-2020", getPurchasesResult.get(0).getPurchase_date());
-            assertEquals("23-03-2020", getPurchasesResult.get(1).getPurchase_date());
-            assertEquals("10-03-2020", getPurchasesResult.get(2).getPurchase_date());
-            assertEquals("16-02-2020", getPurchasesResult.get(3).getPurchase_date());
-            assertEquals("03-02-2020", getPurchasesResult.get(4).getPurchase_date());
+            List<Purchase> items = getPurchasesResult.getItems();
+            assertEquals(5, items.size());
+            assertEquals(LocalDate.parse("2020-04-01"), items.get(0).getPurchase_date());
+            assertEquals(LocalDate.parse("2020-03-23"), items.get(1).getPurchase_date());
+            assertEquals(LocalDate.parse("2020-03-10"), items.get(2).getPurchase_date());
+            assertEquals(LocalDate.parse("2020-02-16"), items.get(3).getPurchase_date());
+            assertEquals(LocalDate.parse("2020-02-03"), items.get(4).getPurchase_date());
+            assertNull(getPurchasesResult.getNextCursor());
+        }
+
+        void thenAssertFirstPageHasNextCursor()
+        {
+            assertEquals(3, getPurchasesResult.getItems().size());
+            assertEquals(new PageCursor(LocalDate.parse("2020-03-10"), 4), PageCursor.decode(getPurchasesResult.getNextCursor()));
         }
 
         void thenAssertPurchasesAreReturned()
@@ -239,12 +286,14 @@ public class PurchaseControllerTest
 
         void thenAssertPurchaseIsDelivered()
         {
-            assertNotEquals("null", setOrderToDeliveredResult.getArrival_date());
+            assertEquals(LocalDate.now(), setOrderToDeliveredResult.getArrival_date());
         }
 
         void thenAssertNewPurchaseOrderIsCorrect()
         {
             assertEquals(2, reorderPurchaseOrderResult.getProducts().size());
+            verify(purchaseRepository).save(reorderPurchaseOrderResult);
+            verify(onOrderLedger).purchased(argThat(ids -> ids.size() == 2 && ids.containsAll(List.of(1, 2))));
         }
 
         void thenAssertEmptyPurchaseOrderReturned()
@@ -254,10 +303,18 @@ public class PurchaseControllerTest
 
         void thenAssertProductsBySupplierMapIsCorrect()
         {
-            assertEquals(3, createPurchaseOrderResult.keySet().size());
-            assertEquals(Set.of(PRODUCT), createPurchaseOrderResult.get(SUPPLIER));
-            assertEquals(Set.of(PRODUCT_2, PRODUCT_3), createPurchaseOrderResult.get(SUPPLIER_2));
-            assertEquals(Set.of(PRODUCT_4, PRODUCT_5), createPurchaseOrderResult.get(SUPPLIER_3));
+            ArgumentCaptor<Map<Supplier, Set<Product>>> captor = ArgumentCaptor.forClass(Map.class);
+            verify(purchaseOrderJobService).submit(captor.capture());
+            Map<Supplier, Set<Product>> productsBySupplier = captor.getValue();
+            assertEquals(3, productsBySupplier.keySet().size());
+            assertEquals(Set.of(PRODUCT), productsBySupplier.get(SUPPLIER));
+            assertEquals(Set.of(PRODUCT_2, PRODUCT_3), productsBySupplier.get(SUPPLIER_2));
+            assertEquals(Set.of(PRODUCT_4, PRODUCT_5), productsBySupplier.get(SUPPLIER_3));
+        }
+
+        void thenAssertJobReturned()
+        {
+            assertEquals(JOB, createPurchaseOrderResult);
         }
     }
 }
@@ -9,21 +9,27 @@ package edu.finalyearproject.imsresourceserver.controllers;
 import edu.finalyearproject.imsresourceserver.models.Product;
 import edu.finalyearproject.imsresourceserver.models.Purchase;
 import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.models.SupplierLeadTime;
 import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
 import edu.finalyearproject.imsresourceserver.repositories.PurchaseRepository;
 import edu.finalyearproject.imsresourceserver.repositories.SupplierRepository;
+import edu.finalyearproject.imsresourceserver.services.LeadTimeStats;
+import edu.finalyearproject.imsresourceserver.services.ProductCatalogCache;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
 
-import java.sql.Date;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.when;
@@ -39,6 +45,12 @@ public class SupplierControllerTest
     @InjectMocks
     private SupplierController target;
 
+    @Mock
+    private ProductCatalogCache productCatalogCache;
+
+    @Mock
+    private LeadTimeStats leadTimeStats;
+
     @Mock
     private SupplierRepository supplierRepository;
 
@@ -74,7 +86,7 @@ public class SupplierControllerTest
     @Test
     public void getAllSupplierNames_returnsAllNames()
     {
-        fixture.givenSupplierRepositoryReturnsSuppliers();
+        fixture.givenSupplierRepositoryReturnsSupplierNames();
         fixture.whenGetAllSupplierNamesIsCalled();
         fixture.thenAssertNamesAreCorrect();
     }
@@ -146,6 +158,14 @@ public class SupplierControllerTest
         fixture.thenAssertEmptyArrayListOfProductsIsReturned();
     }
 
+    @Test
+    public void getSupplierLeadTime_readsObservedLeadTimes()
+    {
+        SupplierLeadTime leadTime = new SupplierLeadTime(1, 12, 4.5f, 4, 9);
+        when(leadTimeStats.getLeadTime(1)).thenReturn(leadTime);
+        assertEquals(leadTime, target.getSupplierLeadTime(1));
+    }
+
     private static List<Supplier> getSuppliers()
     {
         List<Supplier> suppliers = new ArrayList<>();
@@ -160,9 +180,9 @@ public class SupplierControllerTest
     private static List<Purchase> getPurchases()
     {
         List<Purchase> purchases = new ArrayList<>();
-        purchases.add(new Purchase(1, SUPPLIER, Date.valueOf("2020-02-03"), null, Set.of(new Product())));
-        purchases.add(new Purchase(2, SUPPLIER, Date.valueOf("2020-02-04"), null, Set.of(new Product())));
-        purchases.add(new Purchase(3, SUPPLIER, Date.valueOf("2020-02-05"), null, Set.of(new Product())));
+        purchases.add(new Purchase(1, SUPPLIER, LocalDate.parse("2020-02-03"), null, Set.of(new Product())));
+        purchases.add(new Purchase(2, SUPPLIER, LocalDate.parse("2020-02-04"), null, Set.of(new Product())));
+        purchases.add(new Purchase(3, SUPPLIER, LocalDate.parse("2020-02-05"), null, Set.of(new Product())));
         return purchases;
     }
 
@@ -173,6 +193,12 @@ public class SupplierControllerTest
             when(supplierRepository.findAll()).thenReturn(SUPPLIERS);
         }
 
+        void givenSupplierRepositoryReturnsSupplierNames()
+        {
+            when(supplierRepository.findAllNames()).thenReturn(
+                    SUPPLIERS.stream().map(Supplier::getName).collect(Collectors.toList()));
+        }
+
         void givenSupplierRepositoryReturnsOptionalWithSupplier()
         {
             when(supplierRepository.findById(1)).thenReturn(Optional.of(SUPPLIER));
@@ -209,7 +235,7 @@ public class SupplierControllerTest
 
         void whenGetSuppliersIsCalled()
         {
-            getSuppliersResult = target.getSuppliers();
+            getSuppliersResult = target.getSuppliers(new ServletWebRequest(new MockHttpServletRequest()));
         }
 
         void whenGetAllSupplierNamesIsCalled()
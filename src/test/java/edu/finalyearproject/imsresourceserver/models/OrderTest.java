@@ -6,12 +6,14 @@
  */
 package edu.finalyearproject.imsresourceserver.models;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 
-import java.sql.Date;
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
@@ -24,6 +26,8 @@ public class OrderTest
     private String getOrderDateResult;
     private String getArrivalDateResult;
 
+    private Order newOrder;
+
     private Fixture fixture;
 
     @Before
@@ -57,26 +61,51 @@ public class OrderTest
         fixture.thenAssertArrivalDateStringIsCorrect("08-02-2020");
     }
 
+    @Test
+    public void addItem_accumulatesExactTotal()
+    {
+        fixture.givenEmptyOrderIsCreated();
+        fixture.whenItemIsAdded((float) 19.99, 2);
+        fixture.whenItemIsAdded((float) 0.1, 3);
+        fixture.thenAssertTotalCostIs("40.28");
+    }
+
     private class Fixture
     {
+        void givenEmptyOrderIsCreated()
+        {
+            newOrder = new Order();
+        }
+
+        void whenItemIsAdded(float price, int quantity)
+        {
+            newOrder.addItem(new Product(newOrder.getItems().size() + 1, "product", 11111111, price, 10, 5, 2, false,
+                    new Supplier()), quantity);
+        }
+
+        void thenAssertTotalCostIs(String totalCost)
+        {
+            assertEquals(new BigDecimal(totalCost), newOrder.getTotalCost());
+        }
+
         void givenOrderIsCreated()
         {
-            target = new Order(1, new Customer(), Date.valueOf("2020-02-03"), null, Set.of(new Product()), (float) 2.0);
+            target = new Order(1, new Customer(), LocalDate.parse("2020-02-03"), null, Set.of(new OrderItem(new Product(), 1)), new BigDecimal("2.00"));
         }
 
         void givenArrivalDateIsSet()
         {
-            target.setArrival_date(Date.valueOf("2020-02-08"));
+            target.setArrival_date(LocalDate.parse("2020-02-08"));
         }
 
         void whenGetOrderDateIsCalled()
         {
-            getOrderDateResult = target.getOrder_date();
+            getOrderDateResult = serialisedField("order_date");
         }
 
         void whenGetArrivalDateIsCalled()
         {
-            getArrivalDateResult = target.getArrival_date();
+            getArrivalDateResult = serialisedField("arrival_date");
         }
 
         void thenAssertDateStringIsCorrect(String date)
@@ -88,5 +117,11 @@ public class OrderTest
         {
             assertEquals(date, getArrivalDateResult);
         }
+
+        // dates are formatted for display by Jackson, so check the field as the API returns it
+        String serialisedField(String name)
+        {
+            return new ObjectMapper().findAndRegisterModules().valueToTree(target).get(name).asText();
+        }
     }
 }
@@ -6,13 +6,14 @@
  */
 package edu.finalyearproject.imsresourceserver.models;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.junit.MockitoJUnitRunner;
 
-import java.sql.Date;
+import java.time.LocalDate;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
@@ -63,22 +64,22 @@ public class PurchaseTest
     {
         void givenPurchaseIsCreated()
         {
-            target = new Purchase(1, new Supplier(), Date.valueOf("2020-02-03"), null, Set.of(new Product()));
+            target = new Purchase(1, new Supplier(), LocalDate.parse("2020-02-03"), null, Set.of(new Product()));
         }
 
         void givenArrivalDateIsSet()
         {
-            target.setArrival_date(Date.valueOf("2020-02-13"));
+            target.setArrival_date(LocalDate.parse("2020-02-13"));
         }
 
         void whenGetPurchaseDateIsCalled()
         {
-            getPurchaseDateResult = target.getPurchase_date();
+            getPurchaseDateResult = serialisedField("purchase_date");
         }
 
         void whenGetArrivalDateIsCalled()
         {
-            getArrivalDateResult = target.getArrival_date();
+            getArrivalDateResult = serialisedField("arrival_date");
         }
 
         void thenAssertDateStringIsCorrect()
@@ -90,5 +91,11 @@ public class PurchaseTest
         {
             assertEquals(date, getArrivalDateResult);
         }
+
+        // dates are formatted for display by Jackson, so check the field as the API returns it
+        String serialisedField(String name)
+        {
+            return new ObjectMapper().findAndRegisterModules().valueToTree(target).get(name).asText();
+        }
     }
 }
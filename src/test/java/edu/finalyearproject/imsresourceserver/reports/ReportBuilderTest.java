@@ -6,6 +6,7 @@
  */
 package edu.finalyearproject.imsresourceserver.reports;
 
+import edu.finalyearproject.imsresourceserver.config.SpringHtmlConfig;
 import edu.finalyearproject.imsresourceserver.models.*;
 import edu.finalyearproject.imsresourceserver.requests.StockMovement;
 import edu.finalyearproject.imsresourceserver.requests.WasteItem;
@@ -15,18 +16,24 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
-import java.sql.Date;
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ReportBuilderTest
@@ -42,13 +49,18 @@ public class ReportBuilderTest
     private ReportBuilder withOrdersListResult;
     private ReportBuilder withPurchasesListResult;
     private ReportBuilder withProductListResult;
+    private ReportBuilder withOrderItemListResult;
     private ReportBuilder withStockMovementResult;
     private ReportBuilder withWasteItemsResult;
     private ReportBuilder withStringResult;
+    private ReportBuilder otherReport;
+    private List<String> expectedReports;
+    private List<String> parallelReports;
 
     private List<Order> orders = getOrders();
     private List<Purchase> purchases = getPurchases();
     private Set<Product> products = getProducts();
+    private Set<OrderItem> orderItems = getOrderItems();
     private List<StockMovement> stockMovements = getStockMovements();
     private List<WasteItem> wasteItems = getWasteItems();
     private Fixture fixture;
@@ -87,6 +99,13 @@ public class ReportBuilderTest
         fixture.thenAssertProductsAddedToContext();
     }
 
+    @Test
+    public void withOrderItemList_addsListToContextCorrectly()
+    {
+        fixture.whenWithOrderItemListIsCalled();
+        fixture.thenAssertOrderItemsAddedToContext();
+    }
+
     @Test
     public void withStockMovementList_addListToContextCorrectly()
     {
@@ -108,21 +127,44 @@ public class ReportBuilderTest
         fixture.thenAssertStringAddedToContext();
     }
 
+    @Test
+    public void withContext_returnsSeparateBuilderForEachReport()
+    {
+        fixture.whenWithStringIsCalled();
+        fixture.whenAnotherReportIsStarted();
+        fixture.thenAssertReportsDoNotShareContext();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void buildReport_requiresWithContext()
+    {
+        target.buildReport("daily-waste");
+    }
+
+    @Test
+    public void buildReport_parallelReportsOnlyContainTheirOwnData() throws Exception
+    {
+        fixture.givenRealTemplateEngine();
+        fixture.givenReportsBuiltOneAtATime(200);
+        fixture.whenReportsAreBuiltInParallel(200, 8);
+        fixture.thenAssertParallelReportsMatch();
+    }
+
     private List<Order> getOrders()
     {
         List<Order> orders = new ArrayList<>();
-        orders.add(new Order(1, new Customer(), Date.valueOf("2020-02-03"), null, Set.of(new Product()), (float) 2.0));
-        orders.add(new Order(2, new Customer(), Date.valueOf("2020-02-03"), null, Set.of(new Product()), (float) 2.0));
-        orders.add(new Order(3, new Customer(), Date.valueOf("2020-02-03"), null, Set.of(new Product()), (float) 2.0));
+        orders.add(new Order(1, new Customer(), LocalDate.parse("2020-02-03"), null, Set.of(new OrderItem(new Product(), 1)), new BigDecimal("2.00")));
+        orders.add(new Order(2, new Customer(), LocalDate.parse("2020-02-03"), null, Set.of(new OrderItem(new Product(), 1)), new BigDecimal("2.00")));
+        orders.add(new Order(3, new Customer(), LocalDate.parse("2020-02-03"), null, Set.of(new OrderItem(new Product(), 1)), new BigDecimal("2.00")));
         return orders;
     }
 
     private List<Purchase> getPurchases()
     {
         List<Purchase> purchases = new ArrayList<>();
-        purchases.add(new Purchase(new Supplier(), Date.valueOf("2020-02-03"), Set.of(new Product())));
-        purchases.add(new Purchase(new Supplier(), Date.valueOf("2020-02-03"), Set.of(new Product())));
-        purchases.add(new Purchase(new Supplier(), Date.valueOf("2020-02-03"), Set.of(new Product())));
+        purchases.add(new Purchase(new Supplier(), LocalDate.parse("2020-02-03"), Set.of(new Product())));
+        purchases.add(new Purchase(new Supplier(), LocalDate.parse("2020-02-03"), Set.of(new Product())));
+        purchases.add(new Purchase(new Supplier(), LocalDate.parse("2020-02-03"), Set.of(new Product())));
         return purchases;
     }
 
@@ -135,12 +177,21 @@ public class ReportBuilderTest
         return products;
     }
 
+    private Set<OrderItem> getOrderItems()
+    {
+        Set<OrderItem> orderItems = new HashSet<>();
+        orderItems.add(new OrderItem(new Product(1, "product1", 11111111, (float) 0.5, 10, 5, 100, false, new Supplier()), 1));
+        orderItems.add(new OrderItem(new Product(2, "product2", 22222222, (float) 0.5, 10, 5, 100, false, new Supplier()), 2));
+        orderItems.add(new OrderItem(new Product(3, "product3", 33333333, (float) 0.5, 10, 5, 100, false, new Supplier()), 3));
+        return orderItems;
+    }
+
     private List<StockMovement> getStockMovements()
     {
         List<StockMovement> stockMovements = new ArrayList<>();
-        stockMovements.add(new StockMovement(1, false, Date.valueOf("2020-02-03"), "John Doe", new Product(), 1));
-        stockMovements.add(new StockMovement(2, false, Date.valueOf("2020-02-03"), "John Doe", new Product(), 1));
-        stockMovements.add(new StockMovement(3, false, Date.valueOf("2020-02-03"), "John Doe", new Product(), 1));
+        stockMovements.add(new StockMovement(1, false, LocalDate.parse("2020-02-03"), "John Doe", new Product(), 1));
+        stockMovements.add(new StockMovement(2, false, LocalDate.parse("2020-02-03"), "John Doe", new Product(), 1));
+        stockMovements.add(new StockMovement(3, false, LocalDate.parse("2020-02-03"), "John Doe", new Product(), 1));
         return stockMovements;
     }
 
@@ -155,6 +206,74 @@ public class ReportBuilderTest
 
     private class Fixture
     {
+        void givenRealTemplateEngine()
+        {
+            SpringHtmlConfig config = new SpringHtmlConfig();
+            ReflectionTestUtils.setField(config, "templateCache", true);
+            target.setTemplateEngine(config.htmlTemplateEngine());
+        }
+
+        void givenReportsBuiltOneAtATime(int count)
+        {
+            expectedReports = new ArrayList<>();
+            for (int i = 0; i < count; i++)
+            {
+                expectedReports.add(buildReport(i));
+            }
+        }
+
+        void whenReportsAreBuiltInParallel(int count, int threads) throws Exception
+        {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            try
+            {
+                List<Future<String>> futures = new ArrayList<>();
+                for (int i = 0; i < count; i++)
+                {
+                    int report = i;
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        return buildReport(report);
+                    }));
+                }
+                start.countDown();
+
+                parallelReports = new ArrayList<>();
+                for (Future<String> future : futures)
+                {
+                    parallelReports.add(future.get());
+                }
+            } finally
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        // alternates supplier invoices and waste reports, each carrying values unique to its index
+        String buildReport(int i)
+        {
+            if (i % 2 == 0)
+            {
+                Product product = new Product(i, "product-" + i, i, (float) 0.5, 10, 5, 100, false, new Supplier());
+                return target.withContext()
+                        .withProductList("products", Set.of(product))
+                        .withString("id", String.valueOf(i))
+                        .withString("supplier", "supplier-" + i)
+                        .withString("purchase_date", "date-" + i)
+                        .withString("status", "PENDING")
+                        .buildReport("supplier-invoice");
+            }
+            return target.withContext()
+                    .withString("todaysDate", "date-" + i)
+                    .withWasteItemList("records", List.of(new WasteItem(i, "reason-" + i, i, "waste-" + i)))
+                    .buildReport("daily-waste");
+        }
+
+        void whenAnotherReportIsStarted()
+        {
+            otherReport = target.withContext().withString("theString", "Another String");
+        }
 
         void whenWithContextIsCalled()
         {
@@ -176,6 +295,11 @@ public class ReportBuilderTest
             withProductListResult = target.withContext().withProductList("products", products);
         }
 
+        void whenWithOrderItemListIsCalled()
+        {
+            withOrderItemListResult = target.withContext().withOrderItemList("items", orderItems);
+        }
+
         void whenWithStockMovementListIsCalled()
         {
             withStockMovementResult = target.withContext().withStockMovementList("stockMovements", stockMovements);
@@ -210,6 +334,11 @@ public class ReportBuilderTest
             assertTrue(products.equals(withProductListResult.getContext().getVariable("products")));
         }
 
+        void thenAssertOrderItemsAddedToContext()
+        {
+            assertTrue(orderItems.equals(withOrderItemListResult.getContext().getVariable("items")));
+        }
+
         void thenAssertStockMovementsAddedToContext()
         {
             assertTrue(stockMovements.equals(withStockMovementResult.getContext().getVariable("stockMovements")));
@@ -224,5 +353,24 @@ public class ReportBuilderTest
         {
             assertTrue(THE_STRING.equals(withStringResult.getContext().getVariable("theString")));
         }
+
+        void thenAssertReportsDoNotShareContext()
+        {
+            assertNotSame(withStringResult, otherReport);
+            assertNotSame(target, otherReport);
+            assertNull(target.getContext());
+            assertEquals(THE_STRING, withStringResult.getContext().getVariable("theString"));
+            assertEquals("Another String", otherReport.getContext().getVariable("theString"));
+        }
+
+        void thenAssertParallelReportsMatch()
+        {
+            for (int i = 0; i < expectedReports.size(); i++)
+            {
+                String marker = i % 2 == 0 ? ">supplier-" + i + "<" : ">waste-" + i + "<";
+                assertTrue(expectedReports.get(i).contains(marker));
+                assertEquals(expectedReports.get(i), parallelReports.get(i));
+            }
+        }
     }
 }
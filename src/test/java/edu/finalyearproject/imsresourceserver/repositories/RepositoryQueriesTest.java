@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.repositories;
+
+import edu.finalyearproject.imsresourceserver.models.Product;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles every JPQL @Query against the entity mappings with Hibernate's PostgreSQL dialect, so a misspelt field or
+ * a constructor projection that doesn't match its model fails here rather than at start-up. No database is needed, as
+ * Hibernate only translates the queries; native queries and what they return against real data are not checked. Also
+ * checks the mapping settings the stock updates rely on.
+ */
+public class RepositoryQueriesTest
+{
+    private static final List<Class<?>> REPOSITORIES = List.of(AddressRepository.class, CustomerRepository.class,
+            OrderItemRepository.class, OrderRepository.class, ProductForecastRepository.class,
+            ProductRepository.class, PurchaseRepository.class, SupplierRepository.class);
+
+    private static LocalContainerEntityManagerFactoryBean factoryBean;
+
+    @BeforeClass
+    public static void buildEntityManagerFactory()
+    {
+        factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setPackagesToScan("edu.finalyearproject.imsresourceserver.models");
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factoryBean.setJpaPropertyMap(Map.of(
+                "hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect",
+                "hibernate.temp.use_jdbc_metadata_defaults", "false",
+                "hibernate.hbm2ddl.auto", "none"));
+        factoryBean.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void closeEntityManagerFactory()
+    {
+        factoryBean.destroy();
+    }
+
+    @Test
+    public void everyJpqlQueryCompiles()
+    {
+        EntityManagerFactory entityManagerFactory = factoryBean.getObject();
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        List<String> failures = new ArrayList<>();
+        int compiled = 0;
+        try
+        {
+            for (Class<?> repository : REPOSITORIES)
+            {
+                for (Method method : repository.getDeclaredMethods())
+                {
+                    Query query = method.getAnnotation(Query.class);
+                    if (query == null || query.nativeQuery())
+                    {
+                        continue;
+                    }
+                    try
+                    {
+                        entityManager.createQuery(query.value());
+                        compiled++;
+                    } catch (RuntimeException e)
+                    {
+                        failures.add(repository.getSimpleName() + "." + method.getName() + ": " + e.getMessage());
+                    }
+                }
+            }
+        } finally
+        {
+            entityManager.close();
+        }
+
+        assertEquals(List.of(), failures);
+        assertTrue(compiled > 0);
+    }
+
+    @Test
+    public void productUpdatesWriteOnlyChangedColumns()
+    {
+        SessionFactoryImplementor sessionFactory = factoryBean.getObject().unwrap(SessionFactoryImplementor.class);
+        EntityPersister persister = sessionFactory.getMetamodel().entityPersister(Product.class);
+        assertTrue(persister.getEntityMetamodel().isDynamicUpdate());
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.DemandCounterStats;
+import edu.finalyearproject.imsresourceserver.models.ProductDailySales;
+import edu.finalyearproject.imsresourceserver.repositories.OrderItemRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DemandCountersTest
+{
+    private static final int DAYS = 7;
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @InjectMocks
+    private DemandCounters target;
+
+    @Mock
+    private OrderItemRepository orderItemRepository;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+        ReflectionTestUtils.setField(target, "days", DAYS);
+    }
+
+    @Test
+    public void unitsSold_sumsDaysLoadedFromDatabase()
+    {
+        fixture.givenDatabaseHasSales(
+                new ProductDailySales(1, TODAY, 3L),
+                new ProductDailySales(1, TODAY.minusDays(2), 4L),
+                new ProductDailySales(2, TODAY.minusDays(1), 9L));
+        fixture.thenAssertUnitsSold(1, 6, 7);
+        fixture.thenAssertUnitsSold(1, 1, 3);
+        fixture.thenAssertUnitsSold(2, 6, 9);
+        fixture.thenAssertUnitsSold(3, 6, 0);
+    }
+
+    @Test
+    public void record_addsToTodaysBucket()
+    {
+        fixture.givenDatabaseHasSales(new ProductDailySales(1, TODAY, 3L));
+        fixture.whenRebuilt();
+        fixture.whenRecorded(Map.of(1, 2, 4, 5), TODAY);
+        fixture.thenAssertUnitsSold(1, 0, 5);
+        fixture.thenAssertUnitsSold(4, 0, 5);
+    }
+
+    @Test
+    public void record_newDayClearsBucketsThatFellOutOfTheRing()
+    {
+        fixture.givenDatabaseHasSales(new ProductDailySales(1, TODAY.minusDays(DAYS), 100L));
+        fixture.whenRebuilt();
+        fixture.whenRecorded(Map.of(1, 1), TODAY.minusDays(DAYS - 1));
+        fixture.whenRecorded(Map.of(1, 2), TODAY);
+        fixture.thenAssertUnitsSold(1, DAYS - 1, 3);
+    }
+
+    @Test
+    public void record_ignoredUntilBuilt()
+    {
+        fixture.whenRecorded(Map.of(1, 2), TODAY);
+        fixture.givenDatabaseHasSales(new ProductDailySales(1, TODAY, 2L));
+        fixture.thenAssertUnitsSold(1, 0, 2);
+    }
+
+    @Test
+    public void record_orderCommittingWhileCountersLoadIsCountedOnce() throws InterruptedException
+    {
+        fixture.givenDatabaseHasSales(new ProductDailySales(1, TODAY, 3L));
+        List<TransactionSynchronization> order = fixture.givenOrderRecordedInTransaction(Map.of(1, 3));
+        order.forEach(sync -> sync.beforeCommit(false));
+
+        Thread firstRead = new Thread(() -> target.unitsSold(1, TODAY, TODAY));
+        firstRead.start();
+        order.forEach(TransactionSynchronization::afterCommit);
+        order.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        firstRead.join(TimeUnit.SECONDS.toMillis(5));
+
+        fixture.thenAssertUnitsSold(1, 0, 3);
+    }
+
+    @Test
+    public void covers_onlyWindowsThatFitInTheRing()
+    {
+        assertTrue(target.covers(DAYS - 1));
+        assertFalse(target.covers(DAYS));
+    }
+
+    @Test
+    public void getStats_estimatesMemoryForCountedProducts()
+    {
+        fixture.givenDatabaseHasSales(new ProductDailySales(1, TODAY, 1L), new ProductDailySales(2, TODAY, 1L));
+        fixture.whenRebuilt();
+        assertEquals(new DemandCounterStats(2, DAYS, DemandCounters.estimateBytes(2, DAYS)), target.getStats());
+        assertEquals(20_400_000L, DemandCounters.estimateBytes(100_000, 32));
+    }
+
+    private class Fixture
+    {
+        void givenDatabaseHasSales(ProductDailySales... sales)
+        {
+            when(orderItemRepository.sumQuantitySoldByProductAndDay(TODAY.minusDays(DAYS - 1), TODAY))
+                    .thenReturn(List.of(sales));
+        }
+
+        // records inside a transaction, returning its synchronizations to drive by hand
+        List<TransactionSynchronization> givenOrderRecordedInTransaction(Map<Integer, Integer> quantities)
+        {
+            TransactionSynchronizationManager.initSynchronization();
+            try
+            {
+                target.record(quantities, TODAY);
+                return TransactionSynchronizationManager.getSynchronizations();
+            } finally
+            {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        }
+
+        void whenRebuilt()
+        {
+            target.rebuild();
+        }
+
+        void whenRecorded(Map<Integer, Integer> quantities, LocalDate date)
+        {
+            target.record(quantities, date);
+        }
+
+        void thenAssertUnitsSold(int productId, int window, long expected)
+        {
+            assertEquals(expected, target.unitsSold(productId, TODAY.minusDays(window), TODAY));
+        }
+    }
+}
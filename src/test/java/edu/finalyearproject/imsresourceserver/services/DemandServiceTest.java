@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.ProductSales;
+import edu.finalyearproject.imsresourceserver.repositories.OrderItemRepository;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DemandServiceTest
+{
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @InjectMocks
+    private DemandService target;
+
+    @Mock
+    private OrderItemRepository orderItemRepository;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private DemandCounters demandCounters;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+    }
+
+    @Test
+    public void averageDailySales_dividesUnitsSoldInWindowByWindow()
+    {
+        fixture.givenProductSold(1, 5L, 14);
+        fixture.thenAssertSingleProductAdu(1, 14, (float) (5 / 14.0));
+    }
+
+    @Test
+    public void averageDailySales_readsCountersWhenWindowIsHeldInMemory()
+    {
+        fixture.givenCountersHoldProductSales(1, 5L, 14);
+        fixture.thenAssertSingleProductAdu(1, 14, (float) (5 / 14.0));
+        fixture.thenAssertDatabaseNotQueried();
+    }
+
+    @Test
+    public void averageDailySales_allProductsIncludesThoseWithoutSales()
+    {
+        fixture.givenProductsExist(1, 2, 3);
+        fixture.givenAllProductsSold(List.of(new ProductSales(1, 5L), new ProductSales(3, 9L)), 14);
+        fixture.thenAssertBatchAdu(List.of(), 14, Map.of(1, (float) (5 / 14.0), 2, 0f, 3, (float) (9 / 14.0)));
+    }
+
+    @Test
+    public void averageDailySales_batchMatchesSingleProductFigures()
+    {
+        fixture.givenProductSold(1, 5L, 30);
+        fixture.givenProductSold(2, 7L, 30);
+        fixture.givenRequestedProductsSold(Set.of(1, 2), List.of(new ProductSales(1, 5L), new ProductSales(2, 7L)), 30);
+        fixture.thenAssertBatchAdu(List.of(1, 2), 30, Map.of(
+                1, target.averageDailySales(1, 30),
+                2, target.averageDailySales(2, 30)));
+    }
+
+    @Test(expected = ResponseStatusException.class)
+    public void averageDailySales_rejectsWindowOutOfRange()
+    {
+        target.averageDailySales(List.of(), 0);
+    }
+
+    private class Fixture
+    {
+        void givenProductsExist(Integer... ids)
+        {
+            when(productRepository.findAllIds()).thenReturn(List.of(ids));
+        }
+
+        void givenProductSold(int id, long units, int window)
+        {
+            when(orderItemRepository.sumQuantitySold(id, TODAY.minusDays(window), TODAY)).thenReturn(units);
+        }
+
+        void givenCountersHoldProductSales(int id, long units, int window)
+        {
+            when(demandCounters.covers(window)).thenReturn(true);
+            when(demandCounters.unitsSold(id, TODAY.minusDays(window), TODAY)).thenReturn(units);
+        }
+
+        void givenAllProductsSold(List<ProductSales> sales, int window)
+        {
+            when(orderItemRepository.sumQuantitySoldByProduct(TODAY.minusDays(window), TODAY)).thenReturn(sales);
+        }
+
+        void givenRequestedProductsSold(Set<Integer> ids, List<ProductSales> sales, int window)
+        {
+            when(orderItemRepository.sumQuantitySoldByProductIn(ids, TODAY.minusDays(window), TODAY)).thenReturn(sales);
+        }
+
+        void thenAssertSingleProductAdu(int id, int window, float expected)
+        {
+            assertEquals(expected, target.averageDailySales(id, window), 0f);
+        }
+
+        void thenAssertDatabaseNotQueried()
+        {
+            verifyNoInteractions(orderItemRepository);
+        }
+
+        void thenAssertBatchAdu(List<Integer> ids, int window, Map<Integer, Float> expected)
+        {
+            assertEquals(expected, target.averageDailySales(ids, window));
+        }
+    }
+}
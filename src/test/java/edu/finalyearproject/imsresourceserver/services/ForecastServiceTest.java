@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.ForecastRunResult;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ForecastServiceTest
+{
+    private static final int HISTORY_DAYS = 28;
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @InjectMocks
+    private ForecastService target;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private ForecastRunResult runResult;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+        ReflectionTestUtils.setField(target, "historyDays", HISTORY_DAYS);
+        ReflectionTestUtils.setField(target, "chunkSize", 2);
+        ReflectionTestUtils.setField(target, "parallelism", 2);
+    }
+
+    @Test
+    public void forecastNextWeek_noSalesForecastsZero()
+    {
+        assertEquals(0f, ForecastService.forecastNextWeek(null), 0f);
+        assertEquals(0f, ForecastService.forecastNextWeek(new int[HISTORY_DAYS]), 0f);
+    }
+
+    @Test
+    public void forecastNextWeek_steadySalesForecastsSameRate()
+    {
+        assertEquals(21f, ForecastService.forecastNextWeek(fixture.repeat(3, 56)), 0.01f);
+    }
+
+    @Test
+    public void forecastNextWeek_followsWeeklySeasonality()
+    {
+        // five days of 10 then two of 0, so any week totals 50 whatever day it starts on
+        int[] weekly = new int[56];
+        for (int day = 0; day < weekly.length; day++)
+        {
+            weekly[day] = day % 7 < 5 ? 10 : 0;
+        }
+        assertEquals(50f, ForecastService.forecastNextWeek(weekly), 0.5f);
+    }
+
+    @Test
+    public void forecastNextWeek_shortHistoryUsesMeanFromFirstSale()
+    {
+        int[] sales = new int[HISTORY_DAYS];
+        sales[HISTORY_DAYS - 2] = 2;
+        sales[HISTORY_DAYS - 1] = 4;
+        assertEquals(21f, ForecastService.forecastNextWeek(sales), 0.001f);
+    }
+
+    @Test
+    public void forecastNextWeek_neverNegative()
+    {
+        int[] falling = new int[HISTORY_DAYS];
+        for (int day = 0; day < 14; day++)
+        {
+            falling[day] = 40 - day * 3;
+        }
+        assertTrue(ForecastService.forecastNextWeek(falling) >= 0);
+    }
+
+    @Test
+    public void run_forecastsEveryProductInChunksAndPublishes() throws SQLException
+    {
+        fixture.givenProductsExist(1, 2, 3);
+        fixture.givenDailySalesOfProductOne(3);
+        fixture.whenRunIsCalled();
+        fixture.thenAssertRunResult(3);
+        fixture.thenAssertPublished(new int[]{1, 2, 3}, new float[]{21f, 0f, 0f});
+    }
+
+    private class Fixture
+    {
+        int[] repeat(int value, int days)
+        {
+            int[] sales = new int[days];
+            Arrays.fill(sales, value);
+            return sales;
+        }
+
+        void givenProductsExist(Integer... ids)
+        {
+            when(productRepository.findAllIds()).thenReturn(List.of(ids));
+        }
+
+        void givenDailySalesOfProductOne(int unitsPerDay) throws SQLException
+        {
+            ResultSet resultSet = mock(ResultSet.class);
+            doAnswer(invocation -> {
+                RowCallbackHandler handler = invocation.getArgument(1);
+                if ((int) invocation.getArgument(2) > 1)
+                {
+                    return null;
+                }
+                for (LocalDate day = TODAY.minusDays(HISTORY_DAYS); day.isBefore(TODAY); day = day.plusDays(1))
+                {
+                    when(resultSet.getInt(1)).thenReturn(1);
+                    when(resultSet.getObject(2, LocalDate.class)).thenReturn(day);
+                    when(resultSet.getInt(3)).thenReturn(unitsPerDay);
+                    handler.processRow(resultSet);
+                }
+                return null;
+            }).when(jdbcTemplate).query(startsWith("SELECT i.product_id, o.order_date"), any(RowCallbackHandler.class),
+                    any(), any(), eq(TODAY.minusDays(HISTORY_DAYS)), eq(TODAY.minusDays(1)));
+        }
+
+        void whenRunIsCalled()
+        {
+            runResult = target.run();
+        }
+
+        void thenAssertRunResult(int products)
+        {
+            assertEquals(products, runResult.getProducts());
+            assertEquals(TODAY, runResult.getGeneratedOn());
+        }
+
+        void thenAssertPublished(int[] productIds, float[] weeklyDemand) throws SQLException
+        {
+            ArgumentCaptor<BatchPreparedStatementSetter> setters = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+            verify(jdbcTemplate, times(2)).batchUpdate(startsWith("INSERT INTO product_forecasts"), setters.capture());
+
+            int row = 0;
+            for (BatchPreparedStatementSetter setter : setters.getAllValues())
+            {
+                for (int i = 0; i < setter.getBatchSize(); i++, row++)
+                {
+                    PreparedStatement ps = mock(PreparedStatement.class);
+                    setter.setValues(ps, i);
+                    verify(ps).setInt(1, productIds[row]);
+                    verify(ps).setObject(2, TODAY);
+                    float expected = weeklyDemand[row];
+                    verify(ps).setFloat(eq(3), floatThat(daily -> Math.abs(daily - expected / 7) < 0.01f));
+                    verify(ps).setFloat(eq(4), floatThat(weekly -> Math.abs(weekly - expected) < 0.01f));
+                }
+            }
+            assertEquals(productIds.length, row);
+        }
+    }
+}
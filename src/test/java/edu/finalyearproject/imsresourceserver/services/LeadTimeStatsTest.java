@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.models.SupplierDeliveries;
+import edu.finalyearproject.imsresourceserver.models.SupplierLeadTime;
+import edu.finalyearproject.imsresourceserver.repositories.PurchaseRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LeadTimeStatsTest
+{
+    private static final LocalDate ORDERED = LocalDate.parse("2021-01-04");
+    private static final Supplier SUPPLIER = new Supplier(1, "supplier1", 3f);
+
+    @InjectMocks
+    private LeadTimeStats target;
+
+    @Mock
+    private PurchaseRepository purchaseRepository;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+        ReflectionTestUtils.setField(target, "minDeliveries", 5);
+    }
+
+    @Test
+    public void getLeadTime_summarisesDeliveryHistory()
+    {
+        // eighteen deliveries in 2 days, one in 4 and one in 30
+        fixture.givenDeliveryHistory(
+                new SupplierDeliveries(1, ORDERED, ORDERED.plusDays(2), 18L),
+                new SupplierDeliveries(1, ORDERED, ORDERED.plusDays(4), 1L),
+                new SupplierDeliveries(1, ORDERED.plusDays(1), ORDERED.plusDays(31), 1L));
+        fixture.thenAssertLeadTime(1, new SupplierLeadTime(1, 20, 3.5f, 2, 4));
+    }
+
+    @Test
+    public void getLeadTime_supplierWithoutDeliveriesHasNoFigures()
+    {
+        fixture.givenDeliveryHistory();
+        fixture.thenAssertLeadTime(2, new SupplierLeadTime(2, 0, null, null, null));
+    }
+
+    @Test
+    public void recordDelivery_updatesSketchWithoutReloading()
+    {
+        fixture.givenDeliveryHistory(new SupplierDeliveries(1, ORDERED, ORDERED.plusDays(2), 1L));
+        target.rebuild();
+        target.recordDelivery(1, ORDERED, ORDERED.plusDays(6));
+        fixture.thenAssertLeadTime(1, new SupplierLeadTime(1, 2, 4f, 2, 6));
+        verify(purchaseRepository, times(1)).countDeliveriesBySupplierAndDates();
+    }
+
+    @Test
+    public void getLeadTime_longLeadTimesCountInLastBucket()
+    {
+        fixture.givenDeliveryHistory(new SupplierDeliveries(1, ORDERED, ORDERED.plusDays(500), 1L));
+        assertEquals(Integer.valueOf(LeadTimeStats.MAX_DAYS), target.getLeadTime(1).getP95Days());
+    }
+
+    @Test
+    public void planningLeadTime_usesObservedP95OnceThereAreEnoughDeliveries()
+    {
+        fixture.givenDeliveryHistory(new SupplierDeliveries(1, ORDERED, ORDERED.plusDays(7), 4L));
+        assertEquals(3f, target.planningLeadTime(SUPPLIER), 0f);
+        target.recordDelivery(1, ORDERED, ORDERED.plusDays(7));
+        assertEquals(7f, target.planningLeadTime(SUPPLIER), 0f);
+    }
+
+    @Test
+    public void recordDelivery_committingWhileSketchesLoadIsCountedOnce() throws InterruptedException
+    {
+        fixture.givenDeliveryHistory(new SupplierDeliveries(1, ORDERED, ORDERED.plusDays(2), 1L));
+        List<TransactionSynchronization> delivery = fixture.givenDeliveryRecordedInTransaction(1, ORDERED.plusDays(2));
+        delivery.forEach(sync -> sync.beforeCommit(false));
+
+        Thread firstRead = new Thread(() -> target.getLeadTime(1));
+        firstRead.start();
+        delivery.forEach(TransactionSynchronization::afterCommit);
+        delivery.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        firstRead.join(TimeUnit.SECONDS.toMillis(5));
+
+        fixture.thenAssertLeadTime(1, new SupplierLeadTime(1, 1, 2f, 2, 2));
+    }
+
+    private class Fixture
+    {
+        // records inside a transaction, returning its synchronizations to drive by hand
+        List<TransactionSynchronization> givenDeliveryRecordedInTransaction(int supplierId, LocalDate arrivalDate)
+        {
+            TransactionSynchronizationManager.initSynchronization();
+            try
+            {
+                target.recordDelivery(supplierId, ORDERED, arrivalDate);
+                return TransactionSynchronizationManager.getSynchronizations();
+            } finally
+            {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        }
+
+        void givenDeliveryHistory(SupplierDeliveries... deliveries)
+        {
+            when(purchaseRepository.countDeliveriesBySupplierAndDates()).thenReturn(List.of(deliveries));
+        }
+
+        void thenAssertLeadTime(int supplierId, SupplierLeadTime expected)
+        {
+            assertEquals(expected, target.getLeadTime(supplierId));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LowStockIndexTest
+{
+    @InjectMocks
+    private LowStockIndex target;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    private List<Product> findLowStockResult;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+    }
+
+    @Test
+    public void findLowStock_returnsProductsWithinMarginLowestFirst()
+    {
+        fixture.givenRepositoryContainsProducts();
+        fixture.whenFindLowStockIsCalled(LowStockIndex.DEFAULT_MARGIN, Integer.MAX_VALUE);
+        fixture.thenAssertProductNames("product1", "product6", "product3");
+    }
+
+    @Test
+    public void findLowStock_appliesMarginAndLimit()
+    {
+        fixture.givenRepositoryContainsProducts();
+        fixture.whenFindLowStockIsCalled(100, 2);
+        fixture.thenAssertProductNames("product1", "product6");
+    }
+
+    @Test
+    public void findLowStock_skippedProductsDontCountTowardsLimit()
+    {
+        fixture.givenRepositoryContainsProducts();
+        findLowStockResult = target.findLowStock(LowStockIndex.DEFAULT_MARGIN, 2, productId -> productId == 1);
+        fixture.thenAssertProductNames("product6", "product3");
+    }
+
+    @Test
+    public void findLowStock_buildsOnceAndServesFromMemory()
+    {
+        fixture.givenRepositoryContainsProducts();
+        fixture.whenFindLowStockIsCalled(LowStockIndex.DEFAULT_MARGIN, Integer.MAX_VALUE);
+        fixture.whenFindLowStockIsCalled(LowStockIndex.DEFAULT_MARGIN, Integer.MAX_VALUE);
+        fixture.thenAssertProductsLoadedOnce();
+    }
+
+    @Test
+    public void productsChanged_movesChangedProductAndDropsDeletedOne()
+    {
+        fixture.givenRepositoryContainsProducts();
+        fixture.whenFindLowStockIsCalled(LowStockIndex.DEFAULT_MARGIN, Integer.MAX_VALUE);
+        fixture.givenProductTwoDropsToItsThresholdAndProductOneIsDeleted();
+        fixture.whenProductsChanged(Set.of(1, 2));
+        fixture.whenFindLowStockIsCalled(LowStockIndex.DEFAULT_MARGIN, Integer.MAX_VALUE);
+        fixture.thenAssertProductNames("product2", "product6", "product3");
+    }
+
+    @Test
+    public void productsChanged_afterIngestReadsStockFromRowsNotLoadedEntities()
+    {
+        fixture.givenRepositoryContainsProducts();
+        fixture.whenFindLowStockIsCalled(LowStockIndex.DEFAULT_MARGIN, Integer.MAX_VALUE);
+        fixture.givenIngestLowersProductThreeToItsThreshold();
+        fixture.whenProductsChanged(Set.of(3));
+        fixture.whenFindLowStockIsCalled(LowStockIndex.DEFAULT_MARGIN, Integer.MAX_VALUE);
+        fixture.thenAssertProductNames("product3", "product1", "product6");
+        fixture.thenAssertLoadedEntitiesNotReused();
+    }
+
+    @Test
+    public void productsChanged_ignoredBeforeIndexIsBuilt()
+    {
+        fixture.whenProductsChanged(Set.of(1));
+        fixture.thenAssertNothingLoaded();
+    }
+
+    private class Fixture
+    {
+        void givenRepositoryContainsProducts()
+        {
+            List<Product> products = new ArrayList<>();
+            products.add(new Product(1, "product1", 11111111, (float) 0.20, 10, 5, 2, false, new Supplier()));
+            products.add(new Product(2, "product2", 22222222, (float) 0.20, 100, 5, 2, false, new Supplier()));
+            products.add(new Product(3, "product3", 33333333, (float) 0.20, 20, 5, 2, false, new Supplier()));
+            products.add(new Product(4, "product4", 44444444, (float) 0.20, 100, 5, 2, false, new Supplier()));
+            products.add(new Product(5, "product5", 55555555, (float) 0.20, 100, 5, 2, false, new Supplier()));
+            products.add(new Product(6, "product6", 66666666, (float) 0.20, 30, 20, 2, false, new Supplier()));
+            when(productRepository.findAll()).thenReturn(products);
+        }
+
+        void givenProductTwoDropsToItsThresholdAndProductOneIsDeleted()
+        {
+            when(productRepository.findCopiesByIdIn(Set.of(1, 2)))
+                    .thenReturn(List.of(new Product(2, "product2", 22222222, (float) 0.20, 5, 5, 2, false, new Supplier())));
+        }
+
+        // the ingest read product 3 as an entity, then took its stock with a JDBC update the entity doesn't see
+        void givenIngestLowersProductThreeToItsThreshold()
+        {
+            when(productRepository.findCopiesByIdIn(Set.of(3)))
+                    .thenReturn(List.of(new Product(3, "product3", 33333333, (float) 0.20, 5, 5, 2, false, new Supplier())));
+        }
+
+        void whenFindLowStockIsCalled(int margin, int limit)
+        {
+            findLowStockResult = target.findLowStock(margin, limit);
+        }
+
+        void whenProductsChanged(Set<Integer> ids)
+        {
+            target.productsChanged(ids);
+        }
+
+        void thenAssertProductNames(String... names)
+        {
+            assertEquals(List.of(names), findLowStockResult.stream().map(Product::getName).collect(Collectors.toList()));
+        }
+
+        void thenAssertProductsLoadedOnce()
+        {
+            verify(productRepository, times(1)).findAll();
+        }
+
+        void thenAssertLoadedEntitiesNotReused()
+        {
+            verify(productRepository, never()).findAllById(any());
+        }
+
+        void thenAssertNothingLoaded()
+        {
+            verifyNoInteractions(productRepository);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.ProductOnOrder;
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.repositories.PurchaseRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OnOrderLedgerTest
+{
+    private static final Supplier SUPPLIER = new Supplier(1, "supplier1", 2f);
+    private static final Product PRODUCT = new Product(1, "product1", 11111111, 5f, 10, 5, 20, false, SUPPLIER);
+    private static final Product PRODUCT_2 = new Product(2, "product2", 22222222, 5f, 10, 5, 15, false, SUPPLIER);
+
+    @InjectMocks
+    private OnOrderLedger target;
+
+    @Mock
+    private PurchaseRepository purchaseRepository;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+    }
+
+    @Test
+    public void unitsOnOrder_isOpenPurchasesTimesReorderQuantity()
+    {
+        fixture.givenDatabaseHasOpenPurchases(new ProductOnOrder(1, 2L));
+        assertEquals(40, target.unitsOnOrder(PRODUCT));
+        assertEquals(0, target.unitsOnOrder(PRODUCT_2));
+        assertTrue(target.isOnOrder(1));
+        assertFalse(target.isOnOrder(2));
+    }
+
+    @Test
+    public void purchasedAndReceived_keepCountsCurrent()
+    {
+        fixture.givenDatabaseHasOpenPurchases(new ProductOnOrder(1, 1L));
+        target.rebuild();
+        target.purchased(List.of(1, 2));
+        assertEquals(40, target.unitsOnOrder(PRODUCT));
+        assertEquals(15, target.unitsOnOrder(PRODUCT_2));
+        target.received(List.of(1, 2));
+        target.received(List.of(2));
+        assertEquals(20, target.unitsOnOrder(PRODUCT));
+        assertFalse(target.isOnOrder(2));
+        fixture.thenAssertLoadedOnce();
+    }
+
+    @Test
+    public void purchased_ignoredUntilBuilt()
+    {
+        target.purchased(List.of(1));
+        fixture.givenDatabaseHasOpenPurchases(new ProductOnOrder(1, 1L));
+        assertEquals(20, target.unitsOnOrder(PRODUCT));
+    }
+
+    @Test
+    public void purchased_committingWhileLedgerLoadsIsCountedOnceAndClearedOnDelivery() throws InterruptedException
+    {
+        fixture.givenDatabaseHasOpenPurchases(new ProductOnOrder(1, 1L));
+        List<TransactionSynchronization> purchase = fixture.givenPurchasedInTransaction(List.of(1));
+        purchase.forEach(sync -> sync.beforeCommit(false));
+
+        Thread firstRead = new Thread(() -> target.isOnOrder(1));
+        firstRead.start();
+        purchase.forEach(TransactionSynchronization::afterCommit);
+        purchase.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        firstRead.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertEquals(20, target.unitsOnOrder(PRODUCT));
+        target.received(List.of(1));
+        assertFalse(target.isOnOrder(1));
+    }
+
+    private class Fixture
+    {
+        // records inside a transaction, returning its synchronizations to drive by hand
+        List<TransactionSynchronization> givenPurchasedInTransaction(List<Integer> productIds)
+        {
+            TransactionSynchronizationManager.initSynchronization();
+            try
+            {
+                target.purchased(productIds);
+                return TransactionSynchronizationManager.getSynchronizations();
+            } finally
+            {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        }
+
+        void givenDatabaseHasOpenPurchases(ProductOnOrder... onOrder)
+        {
+            when(purchaseRepository.countOpenPurchasesByProduct()).thenReturn(List.of(onOrder));
+        }
+
+        void thenAssertLoadedOnce()
+        {
+            verify(purchaseRepository, times(1)).countOpenPurchasesByProduct();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.OrderIngestResult;
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.repositories.CustomerRepository;
+import edu.finalyearproject.imsresourceserver.requests.OrderRequest;
+import edu.finalyearproject.imsresourceserver.requests.ProductRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OrderIngestServiceTest
+{
+    private static final Product PRODUCT = new Product(1, "product1", 11111111, (float) 5.0, 10, 5, 2, false, new Supplier());
+    private static final Product PRODUCT_2 = new Product(2, "product2", 22222222, (float) 5.0, 10, 5, 2, false, new Supplier());
+
+    @InjectMocks
+    private OrderIngestService target;
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @Mock
+    private ProductLookupService productLookupService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private ProductCatalogCache productCatalogCache;
+
+    @Mock
+    private DemandCounters demandCounters;
+
+    private List<OrderIngestResult> ingestResult;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+    }
+
+    @Test
+    public void ingest_rejectsInvalidOrdersAndWritesValidOnes()
+    {
+        fixture.givenCustomersAndProductsExist();
+        fixture.givenTransactionTemplateRunsCallback();
+        fixture.givenAllStockIsAvailable();
+        fixture.givenOrderIdBlockIsAllocated(149);
+        fixture.whenIngestIsCalled(List.of(
+                order(1, new ProductRequest("11111111", 2), new ProductRequest("22222222", 1)),
+                order(9, new ProductRequest("11111111", 1)),
+                order(1, new ProductRequest("99999999", 1), new ProductRequest("abc", 1))));
+        fixture.thenAssertResult(0, 100, null);
+        fixture.thenAssertResult(1, null, "Unknown customer: 9");
+        fixture.thenAssertResult(2, null, "Unknown product SKUs: [99999999, abc]");
+        fixture.thenAssertOrderItemsInserted(2);
+        fixture.thenAssertSalesRecorded(Map.of(1, 2, 2, 1));
+    }
+
+    @Test
+    public void ingest_rejectsOrderWithShortStockAndRestoresItsOtherLines()
+    {
+        fixture.givenCustomersAndProductsExist();
+        fixture.givenTransactionTemplateRunsCallback();
+        fixture.givenSecondProductIsShort();
+        fixture.givenOrderIdBlockIsAllocated(150);
+        fixture.whenIngestIsCalled(List.of(
+                order(1, new ProductRequest("11111111", 2), new ProductRequest("22222222", 20)),
+                order(1, new ProductRequest("11111111", 1))));
+        fixture.thenAssertResult(0, null, "Insufficient stock for product SKUs: [22222222]");
+        fixture.thenAssertResult(1, 101, null);
+        fixture.thenAssertOrdersInserted(1);
+        fixture.thenAssertStockRestored(1);
+        fixture.thenAssertOrderItemsInserted(1);
+    }
+
+    @Test
+    public void ingest_retriesOrderShortOfStockPutBackByRejectedOrderInSameChunk()
+    {
+        fixture.givenCustomersAndProductsExist();
+        fixture.givenTransactionTemplateRunsCallback();
+        // order 0 takes product 1 then is short of product 2, leaving order 1 short of product 1 until it's put back
+        fixture.givenStockDecrements(new int[]{1, 0, 0}, new int[]{1});
+        fixture.givenOrderIdBlockIsAllocated(150);
+        fixture.whenIngestIsCalled(List.of(
+                order(1, new ProductRequest("11111111", 5), new ProductRequest("22222222", 20)),
+                order(1, new ProductRequest("11111111", 6))));
+        fixture.thenAssertResult(0, null, "Insufficient stock for product SKUs: [22222222]");
+        fixture.thenAssertResult(1, 101, null);
+        fixture.thenAssertOrdersInserted(1);
+        fixture.thenAssertStockRestored(1);
+    }
+
+    @Test
+    public void ingest_doesNotRetryOrderShortOfStockTakenByAcceptedOrder()
+    {
+        fixture.givenCustomersAndProductsExist();
+        fixture.givenTransactionTemplateRunsCallback();
+        fixture.givenStockDecrements(new int[]{1, 0});
+        fixture.givenOrderIdBlockIsAllocated(150);
+        fixture.whenIngestIsCalled(List.of(
+                order(1, new ProductRequest("11111111", 5)),
+                order(1, new ProductRequest("11111111", 6))));
+        fixture.thenAssertResult(0, 101, null);
+        fixture.thenAssertResult(1, null, "Insufficient stock for product SKUs: [11111111]");
+        fixture.thenAssertStockRestored();
+    }
+
+    private static OrderRequest order(int customerId, ProductRequest... products)
+    {
+        OrderRequest orderRequest = new OrderRequest();
+        orderRequest.setCustomer_id(customerId);
+        orderRequest.setProducts(products);
+        return orderRequest;
+    }
+
+    private class Fixture
+    {
+        void givenCustomersAndProductsExist()
+        {
+            when(customerRepository.findExistingIds(anyCollection())).thenReturn(List.of(1));
+            when(productLookupService.findExistingBySkus(anyCollection()))
+                    .thenReturn(Map.of(11111111, PRODUCT, 22222222, PRODUCT_2));
+        }
+
+        @SuppressWarnings("unchecked")
+        void givenTransactionTemplateRunsCallback()
+        {
+            when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                    invocation.<TransactionCallback<Object>>getArgument(0).doInTransaction(null));
+        }
+
+        void givenAllStockIsAvailable()
+        {
+            when(jdbcTemplate.batchUpdate(startsWith("UPDATE products SET inventory_on_hand = inventory_on_hand -"),
+                    any(BatchPreparedStatementSetter.class))).thenReturn(new int[]{1, 1});
+        }
+
+        void givenSecondProductIsShort()
+        {
+            // lines are sorted by product id: order 0 product 1, order 1 product 1, order 0 product 2
+            givenStockDecrements(new int[]{1, 1, 0});
+        }
+
+        // rows updated by each successive stock decrement batch
+        void givenStockDecrements(int[] first, int[]... retries)
+        {
+            when(jdbcTemplate.batchUpdate(startsWith("UPDATE products SET inventory_on_hand = inventory_on_hand -"),
+                    any(BatchPreparedStatementSetter.class))).thenReturn(first, retries);
+        }
+
+        void givenOrderIdBlockIsAllocated(long highValue)
+        {
+            when(jdbcTemplate.queryForList(startsWith("SELECT nextval('orders_id_seq')"), eq(Long.class), eq(1)))
+                    .thenReturn(List.of(highValue));
+        }
+
+        void whenIngestIsCalled(List<OrderRequest> orderRequests)
+        {
+            ingestResult = target.ingest(orderRequests);
+        }
+
+        void thenAssertResult(int index, Integer orderId, String error)
+        {
+            assertEquals(new OrderIngestResult(index, orderId, error), ingestResult.get(index));
+        }
+
+        void thenAssertSalesRecorded(Map<Integer, Integer> unitsSold)
+        {
+            verify(demandCounters).record(eq(unitsSold), any(LocalDate.class));
+        }
+
+        // lines put back by each restore batch, in order
+        void thenAssertStockRestored(int... batchSizes)
+        {
+            ArgumentCaptor<BatchPreparedStatementSetter> setter = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+            verify(jdbcTemplate, times(batchSizes.length)).batchUpdate(
+                    startsWith("UPDATE products SET inventory_on_hand = inventory_on_hand +"), setter.capture());
+            for (int i = 0; i < batchSizes.length; i++)
+            {
+                assertEquals(batchSizes[i], setter.getAllValues().get(i).getBatchSize());
+            }
+        }
+
+        void thenAssertOrdersInserted(int orders)
+        {
+            ArgumentCaptor<BatchPreparedStatementSetter> setter = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+            verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO orders"), setter.capture());
+            assertEquals(orders, setter.getValue().getBatchSize());
+        }
+
+        void thenAssertOrderItemsInserted(int lines)
+        {
+            ArgumentCaptor<BatchPreparedStatementSetter> setter = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+            verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO order_items"), setter.capture());
+            assertEquals(lines, setter.getValue().getBatchSize());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.CatalogCacheStats;
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import edu.finalyearproject.imsresourceserver.repositories.SupplierRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProductCatalogCacheTest
+{
+    private static final Supplier SUPPLIER = new Supplier(1, "supplier1", (float) 2.0);
+    private static final Product PRODUCT = new Product(1, "product1", 11111111, (float) 5.0, 10, 5, 2, false, SUPPLIER);
+    private static final Product PRODUCT_2 = new Product(2, "product2", 22222222, (float) 5.0, 10, 5, 2, false, SUPPLIER);
+    private static final Product PRODUCT_3 = new Product(3, "product3", 33333333, (float) 5.0, 10, 5, 2, false, SUPPLIER);
+
+    @InjectMocks
+    private ProductCatalogCache target;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private SupplierRepository supplierRepository;
+
+    @Mock
+    private ProductChangeListener listener;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+    }
+
+    @Test
+    public void findById_loadsOnceThenServesFromCache()
+    {
+        fixture.givenRepositoryReturnsProducts();
+        fixture.whenProductIsLookedUpById(1);
+        fixture.whenProductIsLookedUpById(1);
+        fixture.thenAssertProductLoadedTimes(1, 1);
+        fixture.thenAssertStats(1, 1, 0, 0, 1);
+    }
+
+    @Test
+    public void findByName_missingProductIsNotCached()
+    {
+        fixture.whenProductIsLookedUpByName("missing");
+        fixture.whenProductIsLookedUpByName("missing");
+        fixture.thenAssertNameLoadedTimes("missing", 2);
+        fixture.thenAssertStats(0, 2, 0, 0, 0);
+    }
+
+    @Test
+    public void invalidate_dropsProductFromEveryLookup()
+    {
+        fixture.givenRepositoryReturnsProducts();
+        fixture.givenRepositoryReturnsProductsForSupplier();
+        fixture.whenProductIsLookedUpById(1);
+        fixture.whenProductIsLookedUpByName("product1");
+        fixture.whenSupplierProductsAreLookedUp();
+        fixture.whenProductsAreInvalidated(List.of(1));
+        fixture.thenAssertStats(0, 3, 0, 1, 0);
+    }
+
+    @Test
+    public void invalidate_newProductDropsItsSupplierList()
+    {
+        fixture.givenRepositoryReturnsProductsForSupplier();
+        fixture.whenSupplierProductsAreLookedUp();
+        fixture.whenNewProductIsInvalidated(new Product(4, "product4", 44444444, (float) 5.0, 10, 5, 2, false, SUPPLIER));
+        fixture.whenSupplierProductsAreLookedUp();
+        fixture.thenAssertSupplierProductsLoadedTimes(2);
+    }
+
+    @Test
+    public void findById_evictsLeastRecentlyUsedBeyondBound()
+    {
+        fixture.givenMaxEntries(2);
+        fixture.givenRepositoryReturnsProducts();
+        fixture.whenProductIsLookedUpById(1);
+        fixture.whenProductIsLookedUpById(2);
+        fixture.whenProductIsLookedUpById(1);
+        fixture.whenProductIsLookedUpById(3);
+        fixture.whenProductIsLookedUpById(2);
+        fixture.thenAssertProductLoadedTimes(2, 2);
+        fixture.thenAssertStats(1, 4, 2, 0, 2);
+    }
+
+    @Test
+    public void invalidate_notifiesListenersWhenNoTransactionIsActive()
+    {
+        fixture.givenListenerIsRegistered();
+        fixture.whenProductsAreInvalidated(List.of(1, 2));
+        fixture.thenAssertListenerToldAbout(Set.of(1, 2));
+    }
+
+    @Test
+    public void getCatalogETag_changesOnEveryInvalidation()
+    {
+        String before = target.getCatalogETag();
+        fixture.whenProductsAreInvalidated(List.of(1));
+        String after = target.getCatalogETag();
+        assertNotEquals(before, after);
+        assertEquals(after, target.getCatalogETag());
+        assertTrue(after.startsWith("\"") && after.endsWith("\""));
+    }
+
+    private class Fixture
+    {
+        void givenListenerIsRegistered()
+        {
+            ReflectionTestUtils.setField(target, "listeners", List.of(listener));
+        }
+
+        void givenMaxEntries(int maxEntries)
+        {
+            ReflectionTestUtils.setField(target, "maxEntries", maxEntries);
+        }
+
+        void givenRepositoryReturnsProducts()
+        {
+            lenient().when(productRepository.findById(1)).thenReturn(Optional.of(PRODUCT));
+            lenient().when(productRepository.findById(2)).thenReturn(Optional.of(PRODUCT_2));
+            lenient().when(productRepository.findById(3)).thenReturn(Optional.of(PRODUCT_3));
+            lenient().when(productRepository.findByname("product1")).thenReturn(PRODUCT);
+        }
+
+        void givenRepositoryReturnsProductsForSupplier()
+        {
+            when(supplierRepository.findByname("supplier1")).thenReturn(SUPPLIER);
+            when(productRepository.findBysupplier(SUPPLIER)).thenReturn(List.of(PRODUCT, PRODUCT_2, PRODUCT_3));
+        }
+
+        void whenProductIsLookedUpById(int id)
+        {
+            target.findById(id);
+        }
+
+        void whenProductIsLookedUpByName(String name)
+        {
+            target.findByName(name);
+        }
+
+        void whenSupplierProductsAreLookedUp()
+        {
+            target.findBySupplierName("supplier1");
+        }
+
+        void whenProductsAreInvalidated(List<Integer> ids)
+        {
+            target.invalidate(ids);
+        }
+
+        void whenNewProductIsInvalidated(Product product)
+        {
+            target.invalidate(product);
+        }
+
+        void thenAssertProductLoadedTimes(int id, int times)
+        {
+            verify(productRepository, times(times)).findById(id);
+        }
+
+        void thenAssertNameLoadedTimes(String name, int times)
+        {
+            verify(productRepository, times(times)).findByname(name);
+        }
+
+        void thenAssertSupplierProductsLoadedTimes(int times)
+        {
+            verify(productRepository, times(times)).findBysupplier(SUPPLIER);
+        }
+
+        void thenAssertListenerToldAbout(Set<Integer> ids)
+        {
+            verify(listener).productsChanged(ids);
+        }
+
+        void thenAssertStats(long hits, long misses, long evictions, long invalidations, int size)
+        {
+            assertEquals(new CatalogCacheStats(hits, misses, evictions, invalidations, size), target.getStats());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.exceptions.UnknownSkuException;
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProductLookupServiceTest
+{
+    private static final Product PRODUCT = new Product(1, "product1", 11111111, (float) 5.0, 10, 5, 2, false, new Supplier());
+    private static final Product PRODUCT_2 = new Product(2, "product2", 22222222, (float) 5.0, 10, 5, 2, false, new Supplier());
+
+    @InjectMocks
+    private ProductLookupService target;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    private Map<Integer, Product> findBySkusResult;
+    private UnknownSkuException findBySkusException;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+    }
+
+    @Test
+    public void findBySkus_returnsProductsKeyedBySku()
+    {
+        fixture.givenProductRepositoryReturnsProducts();
+        fixture.whenFindBySkusIsCalled(List.of(11111111, 22222222, 11111111));
+        fixture.thenAssertProductsAreKeyedBySku();
+        fixture.thenAssertDistinctSkusQueriedOnce();
+    }
+
+    @Test
+    public void findBySkus_reportsAllUnknownSkus()
+    {
+        fixture.givenProductRepositoryReturnsProducts();
+        fixture.whenFindBySkusIsCalled(List.of(11111111, 33333333, 22222222, 44444444));
+        fixture.thenAssertUnknownSkusAreReported();
+    }
+
+    @Test
+    public void findBySkus_noSkus_doesNotQuery()
+    {
+        fixture.whenFindBySkusIsCalled(List.of());
+        fixture.thenAssertRepositoryIsNotQueried();
+    }
+
+    private class Fixture
+    {
+        void givenProductRepositoryReturnsProducts()
+        {
+            when(productRepository.findByskuIn(anyCollection())).thenReturn(List.of(PRODUCT, PRODUCT_2));
+        }
+
+        void whenFindBySkusIsCalled(List<Integer> skus)
+        {
+            try
+            {
+                findBySkusResult = target.findBySkus(skus);
+            } catch (UnknownSkuException e)
+            {
+                findBySkusException = e;
+            }
+        }
+
+        void thenAssertProductsAreKeyedBySku()
+        {
+            assertEquals(2, findBySkusResult.size());
+            assertSame(PRODUCT, findBySkusResult.get(11111111));
+            assertSame(PRODUCT_2, findBySkusResult.get(22222222));
+        }
+
+        void thenAssertDistinctSkusQueriedOnce()
+        {
+            verify(productRepository).findByskuIn(Set.of(11111111, 22222222));
+        }
+
+        void thenAssertUnknownSkusAreReported()
+        {
+            assertNull(findBySkusResult);
+            assertEquals(Set.of(33333333, 44444444), findBySkusException.getUnknownSkus());
+        }
+
+        void thenAssertRepositoryIsNotQueried()
+        {
+            assertTrue(findBySkusResult.isEmpty());
+            verifyNoInteractions(productRepository);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.ProductSuggestion;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProductSearchIndexTest
+{
+    @InjectMocks
+    private ProductSearchIndex target;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    private List<ProductSuggestion> searchResult;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+    }
+
+    @Test
+    public void search_returnsNamePrefixMatchesInNameOrderIgnoringCase()
+    {
+        fixture.givenRepositoryContainsProducts();
+        fixture.whenSearchIsCalled("  CHOC", 10);
+        fixture.thenAssertNames("Chocolate Bar", "Chocolate Milk");
+    }
+
+    @Test
+    public void search_matchesSkuPrefix()
+    {
+        fixture.givenRepositoryContainsProducts();
+        fixture.whenSearchIsCalled("2222", 10);
+        fixture.thenAssertNames("Orange Juice");
+    }
+
+    @Test
+    public void search_fillsRemainingSlotsWithFuzzyMatches()
+    {
+        fixture.givenRepositoryContainsProducts();
+        fixture.whenSearchIsCalled("choclate", 10);
+        fixture.thenAssertNames("Chocolate Bar", "Chocolate Milk");
+    }
+
+    @Test
+    public void search_findsWordInsideName()
+    {
+        fixture.givenRepositoryContainsProducts();
+        fixture.whenSearchIsCalled("juice", 10);
+        fixture.thenAssertNames("Apple Juice", "Orange Juice");
+    }
+
+    @Test
+    public void search_stopsAtLimit()
+    {
+        fixture.givenRepositoryContainsProducts();
+        fixture.whenSearchIsCalled("choc", 1);
+        fixture.thenAssertNames("Chocolate Bar");
+    }
+
+    @Test
+    public void search_blankQueryReturnsNothingWithoutLoading()
+    {
+        fixture.whenSearchIsCalled(" ", 10);
+        fixture.thenAssertNames();
+        fixture.thenAssertNothingLoaded();
+    }
+
+    @Test
+    public void productsChanged_reindexesRenamedProductAndDropsDeletedOne()
+    {
+        fixture.givenRepositoryContainsProducts();
+        fixture.whenSearchIsCalled("choc", 10);
+        fixture.givenMilkIsRenamedAndBarIsDeleted();
+        fixture.whenProductsChanged(Set.of(1, 2));
+        fixture.whenSearchIsCalled("choc", 10);
+        fixture.thenAssertNames();
+        fixture.whenSearchIsCalled("oat", 10);
+        fixture.thenAssertNames("Oat Milk");
+    }
+
+    @Test
+    public void search_concurrentFirstSearchesBuildOnce() throws Exception
+    {
+        fixture.givenRepositoryContainsProducts();
+        fixture.whenSearchedConcurrently("choc", 8);
+        fixture.thenAssertNames("Chocolate Bar", "Chocolate Milk");
+        verify(productRepository, times(1)).findAllSuggestions();
+    }
+
+    private class Fixture
+    {
+        void givenRepositoryContainsProducts()
+        {
+            when(productRepository.findAllSuggestions()).thenReturn(List.of(
+                    product(1, "Chocolate Milk", 11111111),
+                    product(2, "Chocolate Bar", 11112222),
+                    product(3, "Orange Juice", 22222222),
+                    product(4, "Apple Juice", 33333333)));
+        }
+
+        void givenMilkIsRenamedAndBarIsDeleted()
+        {
+            when(productRepository.findSuggestionsByIdIn(Set.of(1, 2))).thenReturn(List.of(product(1, "Oat Milk", 11111111)));
+        }
+
+        void whenSearchIsCalled(String query, int limit)
+        {
+            searchResult = target.search(query, limit);
+        }
+
+        // runs the same search on several threads at once, each must see the fully built index
+        void whenSearchedConcurrently(String query, int threads) throws Exception
+        {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try
+            {
+                List<Callable<List<ProductSuggestion>>> searches = new ArrayList<>();
+                for (int i = 0; i < threads; i++)
+                {
+                    searches.add(() -> target.search(query, 10));
+                }
+                for (Future<List<ProductSuggestion>> search : executor.invokeAll(searches))
+                {
+                    searchResult = search.get();
+                    assertEquals(2, searchResult.size());
+                }
+            } finally
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        void whenProductsChanged(Set<Integer> ids)
+        {
+            target.productsChanged(ids);
+        }
+
+        void thenAssertNames(String... names)
+        {
+            assertEquals(List.of(names), searchResult.stream().map(ProductSuggestion::getName).collect(Collectors.toList()));
+        }
+
+        void thenAssertNothingLoaded()
+        {
+            verifyNoInteractions(productRepository);
+        }
+
+        private ProductSuggestion product(int id, String name, int sku)
+        {
+            return new ProductSuggestion(id, name, sku);
+        }
+    }
+}
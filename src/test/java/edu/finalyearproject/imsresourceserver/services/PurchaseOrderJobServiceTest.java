@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.controllers.ReportsController;
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.Purchase;
+import edu.finalyearproject.imsresourceserver.models.PurchaseOrderJob;
+import edu.finalyearproject.imsresourceserver.models.PurchaseOrderJob.Status;
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PurchaseOrderJobServiceTest
+{
+    private static final Supplier SUPPLIER = new Supplier(1, "supplier1", 2f);
+    private static final Supplier SUPPLIER_2 = new Supplier(2, "supplier2", 2f);
+    private static final Product PRODUCT = new Product(1, "product1", 11111111, 5f, 10, 5, 2, false, SUPPLIER);
+    private static final Product PRODUCT_2 = new Product(2, "product2", 22222222, 5f, 10, 5, 2, false, SUPPLIER_2);
+    private static final Map<Supplier, Set<Product>> PRODUCTS_BY_SUPPLIER = Map.of(SUPPLIER, Set.of(PRODUCT),
+            SUPPLIER_2, Set.of(PRODUCT_2));
+    private static final Purchase PURCHASE = new Purchase(10, SUPPLIER, LocalDate.now(), null, Set.of(PRODUCT));
+    private static final Purchase PURCHASE_2 = new Purchase(11, SUPPLIER_2, LocalDate.now(), null, Set.of(PRODUCT_2));
+
+    @InjectMocks
+    private PurchaseOrderJobService target;
+
+    @Mock
+    private PurchaseOrderService purchaseOrderService;
+
+    @Mock
+    private ReportsController reportsController;
+
+    private PurchaseOrderJob submitResult;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+        ReflectionTestUtils.setField(target, "threads", 1);
+        ReflectionTestUtils.setField(target, "queueCapacity", 0);
+        ReflectionTestUtils.setField(target, "retainedJobs", 10);
+        target.start();
+    }
+
+    @After
+    public void after() throws InterruptedException
+    {
+        target.stop();
+    }
+
+    @Test
+    public void submit_savesPurchasesThenSendsInvoicesInBackground() throws InterruptedException
+    {
+        fixture.givenPurchasesAreSaved();
+        fixture.whenSubmitIsCalled();
+        fixture.thenAssertQueuedWithPurchaseIds();
+        fixture.whenWorkersFinish();
+        fixture.thenAssertJob(Status.COMPLETED, 2, List.of());
+        verify(reportsController).generatePurchaseInvoice(PURCHASE);
+        verify(reportsController).generatePurchaseInvoice(PURCHASE_2);
+    }
+
+    @Test
+    public void submit_failedInvoiceFailsJobButOthersAreSent() throws InterruptedException
+    {
+        fixture.givenPurchasesAreSaved();
+        fixture.givenInvoiceFails(PURCHASE);
+        fixture.whenSubmitIsCalled();
+        fixture.whenWorkersFinish();
+        fixture.thenAssertJob(Status.FAILED, 1, List.of(10));
+    }
+
+    @Test
+    public void submit_fullQueueIsRefusedWithoutSaving() throws InterruptedException
+    {
+        fixture.givenPurchasesAreSaved();
+        CountDownLatch release = fixture.givenInvoicesBlockUntilReleased();
+        fixture.whenSubmitIsCalled();
+        try
+        {
+            target.submit(PRODUCTS_BY_SUPPLIER);
+            fail("Expected the second job to be refused");
+        } catch (ResponseStatusException e)
+        {
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        } finally
+        {
+            release.countDown();
+        }
+        verify(purchaseOrderService, times(1)).savePurchaseOrders(any());
+    }
+
+    @Test
+    public void submit_afterWorkersShutDownFailsJobAndFreesItsSlot() throws InterruptedException
+    {
+        fixture.givenPurchasesAreSaved();
+        fixture.givenWorkersAreShutDown();
+        fixture.whenSubmitIsCalled();
+        fixture.thenAssertJob(Status.FAILED, 0, List.of(10, 11));
+        fixture.whenSubmitIsCalled();
+        fixture.thenAssertJob(Status.FAILED, 0, List.of(10, 11));
+        verifyNoInteractions(reportsController);
+    }
+
+    @Test(expected = ResponseStatusException.class)
+    public void getJob_unknownIdIsNotFound()
+    {
+        target.getJob(42);
+    }
+
+    private class Fixture
+    {
+        void givenPurchasesAreSaved()
+        {
+            when(purchaseOrderService.savePurchaseOrders(PRODUCTS_BY_SUPPLIER)).thenReturn(List.of(PURCHASE, PURCHASE_2));
+        }
+
+        void givenInvoiceFails(Purchase purchase)
+        {
+            when(reportsController.generatePurchaseInvoice(purchase)).thenThrow(new IllegalStateException("SMTP down"));
+        }
+
+        CountDownLatch givenInvoicesBlockUntilReleased()
+        {
+            CountDownLatch release = new CountDownLatch(1);
+            when(reportsController.generatePurchaseInvoice(any())).thenAnswer(invocation -> {
+                release.await(5, TimeUnit.SECONDS);
+                return "";
+            });
+            return release;
+        }
+
+        void givenWorkersAreShutDown() throws InterruptedException
+        {
+            target.stop();
+        }
+
+        void whenSubmitIsCalled()
+        {
+            submitResult = target.submit(PRODUCTS_BY_SUPPLIER);
+        }
+
+        void whenWorkersFinish() throws InterruptedException
+        {
+            target.stop();
+        }
+
+        void thenAssertQueuedWithPurchaseIds()
+        {
+            assertEquals(Status.QUEUED, submitResult.getStatus());
+            assertEquals(List.of(10, 11), submitResult.getPurchaseIds());
+        }
+
+        void thenAssertJob(Status status, int invoicesSent, List<Integer> failedPurchaseIds)
+        {
+            PurchaseOrderJob job = target.getJob(submitResult.getId());
+            assertEquals(status, job.getStatus());
+            assertEquals(invoicesSent, job.getInvoicesSent());
+            assertEquals(failedPurchaseIds, job.getFailedPurchaseIds());
+            assertEquals(submitResult.getPurchaseIds(), job.getPurchaseIds());
+        }
+    }
+}
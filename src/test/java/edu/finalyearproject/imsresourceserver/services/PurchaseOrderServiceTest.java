@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.controllers.ReportsController;
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.Purchase;
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import edu.finalyearproject.imsresourceserver.repositories.PurchaseRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PurchaseOrderServiceTest
+{
+    private static final Supplier SUPPLIER = new Supplier(1, "supplier1", 2f);
+    private static final Supplier SUPPLIER_2 = new Supplier(2, "supplier2", 2f);
+    private static final Product PRODUCT = new Product(1, "product1", 11111111, 5f, 10, 5, 2, false, SUPPLIER);
+    private static final Product PRODUCT_2 = new Product(2, "product2", 22222222, 5f, 10, 5, 2, false, SUPPLIER_2);
+    private static final Product PRODUCT_3 = new Product(3, "product3", 33333333, 5f, 10, 5, 2, false, SUPPLIER_2);
+    private static final Purchase PURCHASE = new Purchase(1, SUPPLIER_2, LocalDate.parse("2021-03-01"), LocalDate.now(),
+            Set.of(PRODUCT_2, PRODUCT_3));
+
+    @InjectMocks
+    private PurchaseOrderService target;
+
+    @Mock
+    private PurchaseRepository purchaseRepository;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ReportsController reportsController;
+
+    @Mock
+    private ProductCatalogCache productCatalogCache;
+
+    @Mock
+    private OnOrderLedger onOrderLedger;
+
+    @Mock
+    private LeadTimeStats leadTimeStats;
+
+    private List<Purchase> createPurchaseOrdersResult;
+    private Purchase receiveResult;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+    }
+
+    @Test
+    public void createPurchaseOrders_savesOnePurchasePerSupplierTogether()
+    {
+        fixture.whenCreatePurchaseOrdersIsCalled(Map.of(SUPPLIER, Set.of(PRODUCT), SUPPLIER_2, Set.of(PRODUCT_2, PRODUCT_3)));
+        fixture.thenAssertPurchasesSavedTogether(2);
+        fixture.thenAssertPurchasesAreDatedTodayForEachSupplier();
+        fixture.thenAssertProductsOnOrder(1, 2, 3);
+    }
+
+    @Test
+    public void createPurchaseOrders_generatesAnInvoicePerPurchase()
+    {
+        fixture.whenCreatePurchaseOrdersIsCalled(Map.of(SUPPLIER, Set.of(PRODUCT), SUPPLIER_2, Set.of(PRODUCT_2, PRODUCT_3)));
+        fixture.thenAssertInvoicesGenerated();
+    }
+
+    @Test
+    public void savePurchaseOrders_savesWithoutSendingInvoices()
+    {
+        target.savePurchaseOrders(Map.of(SUPPLIER, Set.of(PRODUCT), SUPPLIER_2, Set.of(PRODUCT_2, PRODUCT_3)));
+        fixture.thenAssertPurchasesSavedTogether(2);
+        verifyNoInteractions(reportsController);
+    }
+
+    @Test
+    public void receive_marksDeliveredAndAddsStockInOneStatement()
+    {
+        fixture.givenPurchaseIsOpen(true);
+        fixture.givenPurchaseHasProducts();
+        fixture.givenPurchaseExists();
+        fixture.whenReceiveIsCalled();
+        fixture.thenAssertStockReceived();
+        assertEquals(PURCHASE, receiveResult);
+    }
+
+    @Test
+    public void receive_secondReceiptLeavesStockUnchanged()
+    {
+        fixture.givenPurchaseIsOpen(false);
+        fixture.givenPurchaseExists();
+        fixture.whenReceiveIsCalled();
+        fixture.thenAssertStockNotReceived();
+        assertEquals(PURCHASE, receiveResult);
+    }
+
+    @Test(expected = ResponseStatusException.class)
+    public void receive_missingPurchaseIsNotFound()
+    {
+        fixture.givenPurchaseIsOpen(false);
+        fixture.whenReceiveIsCalled();
+    }
+
+    private class Fixture
+    {
+        void givenPurchaseIsOpen(boolean open)
+        {
+            when(purchaseRepository.markDeliveredIfOpen(1, LocalDate.now())).thenReturn(open ? 1 : 0);
+        }
+
+        void givenPurchaseHasProducts()
+        {
+            when(purchaseRepository.findProductIds(1)).thenReturn(List.of(2, 3));
+        }
+
+        void givenPurchaseExists()
+        {
+            when(purchaseRepository.findById(1)).thenReturn(Optional.of(PURCHASE));
+        }
+
+        void whenReceiveIsCalled()
+        {
+            receiveResult = target.receive(1);
+        }
+
+        void thenAssertStockReceived()
+        {
+            verify(productRepository).receivePurchasedStock(1);
+            verify(productRepository, never()).save(any());
+            verify(productCatalogCache).invalidate(List.of(2, 3));
+            verify(onOrderLedger).received(List.of(2, 3));
+            verify(leadTimeStats).recordDelivery(2, PURCHASE.getPurchase_date(), PURCHASE.getArrival_date());
+        }
+
+        void thenAssertStockNotReceived()
+        {
+            verifyNoInteractions(productRepository, productCatalogCache, onOrderLedger, leadTimeStats);
+        }
+
+        void whenCreatePurchaseOrdersIsCalled(Map<Supplier, Set<Product>> productsBySupplier)
+        {
+            createPurchaseOrdersResult = target.createPurchaseOrders(productsBySupplier);
+        }
+
+        void thenAssertPurchasesSavedTogether(int count)
+        {
+            verify(purchaseRepository).saveAll(argThat((List<Purchase> purchases) -> purchases.size() == count));
+            verify(purchaseRepository, never()).save(any());
+        }
+
+        void thenAssertPurchasesAreDatedTodayForEachSupplier()
+        {
+            for (Purchase purchase : createPurchaseOrdersResult)
+            {
+                assertEquals(LocalDate.now(), purchase.getPurchase_date());
+                Set<Product> expected = purchase.getSupplier().equals(SUPPLIER) ? Set.of(PRODUCT) : Set.of(PRODUCT_2, PRODUCT_3);
+                assertEquals(expected, purchase.getProducts());
+            }
+        }
+
+        void thenAssertProductsOnOrder(Integer... productIds)
+        {
+            verify(onOrderLedger).purchased(argThat(ids -> ids.size() == productIds.length
+                    && ids.containsAll(List.of(productIds))));
+        }
+
+        void thenAssertInvoicesGenerated()
+        {
+            for (Purchase purchase : createPurchaseOrdersResult)
+            {
+                verify(reportsController).generatePurchaseInvoice(purchase);
+            }
+        }
+    }
+}
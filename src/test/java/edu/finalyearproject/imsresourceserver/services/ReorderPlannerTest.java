@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.*;
+import edu.finalyearproject.imsresourceserver.repositories.ProductForecastRepository;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReorderPlannerTest
+{
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final Supplier SUPPLIER = new Supplier(1, "supplier1", 3f);
+    private static final Supplier SUPPLIER_2 = new Supplier(2, "supplier2", 10f);
+    // 10 on hand less 2 a day over 3 days leaves 4, under the threshold of 5
+    private static final Product RUNS_LOW = new Product(1, "product1", 11111111, 5f, 10, 5, 20, false, SUPPLIER);
+    // 50 on hand less 6 leaves 44
+    private static final Product WELL_STOCKED = new Product(2, "product2", 22222222, 5f, 50, 5, 20, false, SUPPLIER);
+    // 30 on hand less 1 a day over 10 days leaves 20, under the threshold of 25
+    private static final Product LONG_LEAD_TIME = new Product(3, "product3", 33333333, 5f, 30, 25, 40, false, SUPPLIER_2);
+    // already under threshold but on an undelivered purchase
+    private static final Product ON_ORDER = new Product(4, "product4", 44444444, 5f, 1, 5, 20, false, SUPPLIER_2);
+    // no forecast and no sales, but already under threshold
+    private static final Product NO_DEMAND = new Product(5, "product5", 55555555, 5f, 3, 5, 10, false, SUPPLIER_2);
+
+    @InjectMocks
+    private ReorderPlanner target;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ProductForecastRepository productForecastRepository;
+
+    @Mock
+    private OnOrderLedger onOrderLedger;
+
+    @Mock
+    private LeadTimeStats leadTimeStats;
+
+    @Mock
+    private DemandService demandService;
+
+    @Mock
+    private PurchaseOrderService purchaseOrderService;
+
+    private ReorderPlan planResult;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+    }
+
+    @Test
+    public void plan_dryRunReportsProductsThatRunLowWithinLeadTime()
+    {
+        fixture.givenCatalog();
+        fixture.whenPlanIsCalled(true);
+        fixture.thenAssertPlannedProducts(1, 1);
+        fixture.thenAssertPlannedProducts(2, 3, 5);
+        fixture.thenAssertNoPurchasesCreated();
+    }
+
+    @Test
+    public void plan_projectsStockOutDateFromDailyDemand()
+    {
+        fixture.givenCatalog();
+        fixture.whenPlanIsCalled(true);
+        PlannedReorder runsLow = planResult.getPurchases().get(0).getProducts().get(0);
+        assertEquals(TODAY.plusDays(5), runsLow.getStockOutDate());
+        assertEquals(20, runsLow.getReorderQuantity());
+        assertNull(planResult.getPurchases().get(1).getProducts().get(1).getStockOutDate());
+    }
+
+    @Test
+    public void plan_usesObservedLeadTimes()
+    {
+        fixture.givenCatalog();
+        // 50 on hand less 2 a day over 25 days leaves 0
+        fixture.givenLeadTimes(25f, 10f);
+        fixture.whenPlanIsCalled(true);
+        fixture.thenAssertPlannedProducts(1, 1, 2);
+    }
+
+    @Test
+    public void plan_createsOnePurchasePerSupplier()
+    {
+        fixture.givenCatalog();
+        fixture.givenPurchasesAreCreated();
+        fixture.whenPlanIsCalled(false);
+        fixture.thenAssertPurchasesCreated(Map.of(SUPPLIER, Set.of(RUNS_LOW), SUPPLIER_2, Set.of(LONG_LEAD_TIME, NO_DEMAND)));
+        assertEquals(Integer.valueOf(101), planResult.getPurchases().get(0).getPurchaseId());
+        assertEquals(Integer.valueOf(102), planResult.getPurchases().get(1).getPurchaseId());
+    }
+
+    private class Fixture
+    {
+        void givenCatalog()
+        {
+            when(productRepository.findAllActiveWithSupplier())
+                    .thenReturn(List.of(RUNS_LOW, WELL_STOCKED, LONG_LEAD_TIME, ON_ORDER, NO_DEMAND));
+            when(productForecastRepository.findAll()).thenReturn(List.of(
+                    new ProductForecast(1, TODAY, 2f, 14f),
+                    new ProductForecast(2, TODAY, 2f, 14f),
+                    new ProductForecast(4, TODAY, 1f, 7f)));
+            when(demandService.averageDailySales(List.of(), DemandService.DEFAULT_WINDOW))
+                    .thenReturn(Map.of(1, 0f, 2, 0f, 3, 1f, 4, 0f, 5, 0f));
+            givenLeadTimes(SUPPLIER.getLead_time(), SUPPLIER_2.getLead_time());
+            when(onOrderLedger.isOnOrder(anyInt())).thenAnswer(invocation -> invocation.<Integer>getArgument(0) == 4);
+        }
+
+        void givenLeadTimes(float supplierLeadTime, float supplier2LeadTime)
+        {
+            when(leadTimeStats.planningLeadTime(SUPPLIER)).thenReturn(supplierLeadTime);
+            when(leadTimeStats.planningLeadTime(SUPPLIER_2)).thenReturn(supplier2LeadTime);
+        }
+
+        void givenPurchasesAreCreated()
+        {
+            when(purchaseOrderService.createPurchaseOrders(anyMap())).thenAnswer(invocation -> {
+                List<Purchase> purchases = new ArrayList<>();
+                invocation.<Map<Supplier, Set<Product>>>getArgument(0).forEach((supplier, products) -> purchases.add(
+                        new Purchase(100 + supplier.getId(), supplier, TODAY, null, products)));
+                return purchases;
+            });
+        }
+
+        void whenPlanIsCalled(boolean dryRun)
+        {
+            planResult = target.plan(dryRun);
+        }
+
+        void thenAssertPlannedProducts(int supplierId, Integer... productIds)
+        {
+            assertEquals(5, planResult.getProductsChecked());
+            PlannedPurchase purchase = planResult.getPurchases().stream()
+                    .filter(planned -> planned.getSupplierId() == supplierId).findFirst().orElseThrow();
+            List<Integer> planned = new ArrayList<>();
+            purchase.getProducts().forEach(product -> planned.add(product.getProductId()));
+            assertEquals(List.of(productIds), planned);
+        }
+
+        void thenAssertNoPurchasesCreated()
+        {
+            verifyNoInteractions(purchaseOrderService);
+        }
+
+        void thenAssertPurchasesCreated(Map<Supplier, Set<Product>> expected)
+        {
+            verify(purchaseOrderService).createPurchaseOrders(expected);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SnapshotRebuilderTest
+{
+    private SnapshotRebuilder<List<Integer>> target;
+
+    // rows in the fake database, and the in-memory view built from them
+    private final List<Integer> database = new CopyOnWriteArrayList<>();
+    private volatile List<Integer> view = new ArrayList<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private volatile CountDownLatch loadGate;
+    private volatile boolean failNextLoad;
+
+    private List<TransactionSynchronization> transaction;
+    private final List<Throwable> threadErrors = new CopyOnWriteArrayList<>();
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+        target = new SnapshotRebuilder<>(SnapshotRebuilderTest.class, "test view", fixture::load,
+                snapshot -> view = new ArrayList<>(snapshot));
+    }
+
+    @Test
+    public void ensureBuilt_concurrentCallersShareOneRebuild() throws InterruptedException
+    {
+        fixture.givenDatabaseRows(1, 2);
+        fixture.givenLoadsBlock();
+        List<Thread> threads = fixture.whenCalledOnThreads(8, target::ensureBuilt);
+        loadGate.countDown();
+        fixture.thenAllFinish(threads);
+        assertEquals(1, loads.get());
+        assertEquals(List.of(1, 2), view);
+    }
+
+    @Test
+    public void ensureBuilt_retriesAfterFailedStartupBuild()
+    {
+        fixture.givenDatabaseRows(1);
+        failNextLoad = true;
+        target.buildOnStartup();
+        assertFalse(target.isBuilt());
+
+        target.ensureBuilt();
+        assertTrue(target.isBuilt());
+        assertEquals(List.of(1), view);
+    }
+
+    @Test
+    public void afterCommit_changeCommittingDuringRebuildIsCountedOnce() throws InterruptedException
+    {
+        fixture.givenDatabaseRows(1);
+        target.rebuild();
+
+        fixture.givenTransactionAdding(2);
+        fixture.whenTransactionStartsCommitting();
+        database.add(2);
+        List<Thread> rebuild = fixture.whenCalledOnThreads(1, target::rebuild);
+        fixture.thenAssertRebuildWaits();
+        fixture.whenTransactionFinishesCommitting();
+        fixture.thenAllFinish(rebuild);
+
+        assertEquals(List.of(1, 2), view);
+    }
+
+    @Test
+    public void afterCommit_changeCommittedAfterRebuildIsApplied()
+    {
+        fixture.givenDatabaseRows(1);
+        target.rebuild();
+        fixture.givenTransactionAdding(2);
+        fixture.whenTransactionStartsCommitting();
+        fixture.whenTransactionFinishesCommitting();
+        assertEquals(List.of(1, 2), view);
+    }
+
+    @Test
+    public void afterCommit_rolledBackChangeIsNotApplied()
+    {
+        fixture.givenDatabaseRows(1);
+        target.rebuild();
+        fixture.givenTransactionAdding(2);
+        transaction.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        target.rebuild();
+        assertEquals(List.of(1), view);
+    }
+
+    @Test
+    public void afterCommit_droppedUntilBuilt()
+    {
+        fixture.givenDatabaseRows(1);
+        target.afterCommit(() -> view.add(2));
+        assertEquals(List.of(), view);
+        target.ensureBuilt();
+        assertEquals(List.of(1), view);
+    }
+
+    @Test
+    public void serially_droppedUntilBuilt()
+    {
+        target.serially(() -> view.add(2));
+        assertEquals(List.of(), view);
+        assertEquals(0, loads.get());
+    }
+
+    private class Fixture
+    {
+        List<Integer> load()
+        {
+            loads.incrementAndGet();
+            if (loadGate != null)
+            {
+                try
+                {
+                    loadGate.await();
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failNextLoad)
+            {
+                failNextLoad = false;
+                throw new IllegalStateException("database unavailable");
+            }
+            return new ArrayList<>(database);
+        }
+
+        void givenDatabaseRows(Integer... rows)
+        {
+            database.addAll(List.of(rows));
+        }
+
+        void givenLoadsBlock()
+        {
+            loadGate = new CountDownLatch(1);
+        }
+
+        // registers the change as a transaction would, keeping its synchronizations to drive by hand
+        void givenTransactionAdding(int row)
+        {
+            TransactionSynchronizationManager.initSynchronization();
+            try
+            {
+                target.afterCommit(() -> view.add(row));
+                transaction = TransactionSynchronizationManager.getSynchronizations();
+            } finally
+            {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        }
+
+        void whenTransactionStartsCommitting()
+        {
+            transaction.forEach(sync -> sync.beforeCommit(false));
+        }
+
+        void whenTransactionFinishesCommitting()
+        {
+            transaction.forEach(TransactionSynchronization::afterCommit);
+            transaction.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        }
+
+        List<Thread> whenCalledOnThreads(int count, Runnable call)
+        {
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < count; i++)
+            {
+                Thread thread = new Thread(() -> {
+                    try
+                    {
+                        call.run();
+                    } catch (Throwable e)
+                    {
+                        threadErrors.add(e);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            return threads;
+        }
+
+        void thenAssertRebuildWaits() throws InterruptedException
+        {
+            int before = loads.get();
+            TimeUnit.MILLISECONDS.sleep(200);
+            assertEquals(before, loads.get());
+        }
+
+        void thenAllFinish(List<Thread> threads) throws InterruptedException
+        {
+            for (Thread thread : threads)
+            {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+                assertFalse(thread.isAlive());
+            }
+            assertEquals(List.of(), threadErrors);
+        }
+    }
+}
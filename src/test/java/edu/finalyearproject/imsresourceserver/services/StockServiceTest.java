@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.exceptions.InsufficientStockException;
+import edu.finalyearproject.imsresourceserver.models.Product;
+import edu.finalyearproject.imsresourceserver.models.Supplier;
+import edu.finalyearproject.imsresourceserver.repositories.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StockServiceTest
+{
+    private static final Product PRODUCT = new Product(1, "product1", 11111111, (float) 5.0, 10, 5, 2, false, new Supplier());
+    private static final Product PRODUCT_2 = new Product(2, "product2", 22222222, (float) 5.0, 1, 5, 2, false, new Supplier());
+    private static final Product PRODUCT_3 = new Product(3, "product3", 33333333, (float) 5.0, 10, 5, 2, false, new Supplier());
+
+    @InjectMocks
+    private StockService target;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ProductCatalogCache productCatalogCache;
+
+    private InsufficientStockException reserveException;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+    }
+
+    @Test
+    public void reserve_decrementsEachProductInIdOrder()
+    {
+        fixture.givenAllProductsHaveStock();
+        fixture.whenReserveIsCalled();
+        fixture.thenAssertProductsDecrementedInIdOrder();
+    }
+
+    @Test
+    public void reserve_reportsAllShortProducts()
+    {
+        fixture.givenSomeProductsAreShort();
+        fixture.whenReserveIsCalled();
+        fixture.thenAssertShortSkusAreReported();
+    }
+
+    @Test
+    public void remove_adjustsStockDown()
+    {
+        fixture.whenRemoveIsCalled();
+        fixture.thenAssertStockAdjustedDown();
+    }
+
+    private class Fixture
+    {
+        void givenAllProductsHaveStock()
+        {
+            when(productRepository.decrementStockIfAvailable(anyInt(), anyInt())).thenReturn(1);
+        }
+
+        void givenSomeProductsAreShort()
+        {
+            when(productRepository.decrementStockIfAvailable(1, 2)).thenReturn(1);
+            when(productRepository.decrementStockIfAvailable(2, 3)).thenReturn(0);
+            when(productRepository.decrementStockIfAvailable(3, 4)).thenReturn(0);
+        }
+
+        void whenReserveIsCalled()
+        {
+            Map<Product, Integer> quantities = new LinkedHashMap<>();
+            quantities.put(PRODUCT_3, 4);
+            quantities.put(PRODUCT, 2);
+            quantities.put(PRODUCT_2, 3);
+            try
+            {
+                target.reserve(quantities);
+            } catch (InsufficientStockException e)
+            {
+                reserveException = e;
+            }
+        }
+
+        void whenRemoveIsCalled()
+        {
+            target.remove(PRODUCT, 3);
+        }
+
+        void thenAssertProductsDecrementedInIdOrder()
+        {
+            assertNull(reserveException);
+            InOrder inOrder = inOrder(productRepository);
+            inOrder.verify(productRepository).decrementStockIfAvailable(1, 2);
+            inOrder.verify(productRepository).decrementStockIfAvailable(2, 3);
+            inOrder.verify(productRepository).decrementStockIfAvailable(3, 4);
+            verify(productCatalogCache).invalidate(argThat((List<Integer> ids) -> Set.copyOf(ids).equals(Set.of(1, 2, 3))));
+        }
+
+        void thenAssertShortSkusAreReported()
+        {
+            assertEquals(Set.of(22222222, 33333333), reserveException.getSkus());
+        }
+
+        void thenAssertStockAdjustedDown()
+        {
+            verify(productRepository).adjustStock(1, -3);
+            verify(productCatalogCache).invalidate(PRODUCT);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) Alec R. C. Smith - All Rights Reserved
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ * Written by Alec Smith <alec.smith@uea.ac.uk>, 2020-2021
+ */
+package edu.finalyearproject.imsresourceserver.services;
+
+import edu.finalyearproject.imsresourceserver.models.SupplierOverview;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SupplierOverviewServiceTest
+{
+    private static final LocalDate DELIVERED = LocalDate.parse("2021-03-04");
+
+    @InjectMocks
+    private SupplierOverviewService target;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private List<SupplierOverview> getOverviewsResult;
+
+    private Fixture fixture;
+
+    @Before
+    public void before()
+    {
+        fixture = new Fixture();
+    }
+
+    @Test
+    public void getOverviews_mapsEachSupplierRow() throws SQLException
+    {
+        fixture.givenQueryReturnsRow(1, "supplier1", 2.5f, 4, 1, 2, 120.5, DELIVERED);
+        fixture.whenGetOverviewsIsCalled();
+        fixture.thenAssertOverview(new SupplierOverview(1, "supplier1", 2.5f, 4, 1, 2, 120.5, DELIVERED));
+        fixture.thenAssertOneQueryIssued();
+    }
+
+    @Test
+    public void getOverviews_keepsMissingLeadTimeAndDeliveryAsNull() throws SQLException
+    {
+        fixture.givenQueryReturnsRow(2, "supplier2", null, 0, 0, 0, 0, null);
+        fixture.whenGetOverviewsIsCalled();
+        fixture.thenAssertOverview(new SupplierOverview(2, "supplier2", null, 0, 0, 0, 0, null));
+    }
+
+    @Test
+    public void getOverviews_zeroLeadTimeIsNotNull() throws SQLException
+    {
+        fixture.givenQueryReturnsRow(3, null, 0f, 0, 0, 0, 0, null);
+        fixture.whenGetOverviewsIsCalled();
+        fixture.thenAssertOverview(new SupplierOverview(3, null, 0f, 0, 0, 0, 0, null));
+    }
+
+    private class Fixture
+    {
+        void givenQueryReturnsRow(int id, String name, Float leadTime, long products, long suspended, long open,
+                                  double stockValue, LocalDate lastDelivery) throws SQLException
+        {
+            // like a real driver, wasNull answers for whichever column was read last
+            boolean[] lastReadWasNull = new boolean[1];
+            ResultSet resultSet = mock(ResultSet.class);
+            when(resultSet.getInt(1)).thenAnswer(read(lastReadWasNull, id, id));
+            when(resultSet.getString(2)).thenAnswer(read(lastReadWasNull, name, name));
+            when(resultSet.getFloat(3)).thenAnswer(read(lastReadWasNull, leadTime, leadTime == null ? 0f : leadTime));
+            when(resultSet.wasNull()).thenAnswer(invocation -> lastReadWasNull[0]);
+            when(resultSet.getLong(4)).thenAnswer(read(lastReadWasNull, products, products));
+            when(resultSet.getLong(5)).thenAnswer(read(lastReadWasNull, suspended, suspended));
+            when(resultSet.getLong(6)).thenAnswer(read(lastReadWasNull, open, open));
+            when(resultSet.getDouble(7)).thenAnswer(read(lastReadWasNull, stockValue, stockValue));
+            when(resultSet.getObject(8, LocalDate.class)).thenAnswer(read(lastReadWasNull, lastDelivery, lastDelivery));
+            when(jdbcTemplate.query(startsWith("SELECT s.id"), any(RowMapper.class))).thenAnswer(invocation ->
+                    List.of(invocation.<RowMapper<SupplierOverview>>getArgument(1).mapRow(resultSet, 0)));
+        }
+
+        Answer<Object> read(boolean[] lastReadWasNull, Object columnValue, Object returned)
+        {
+            return invocation -> {
+                lastReadWasNull[0] = columnValue == null;
+                return returned;
+            };
+        }
+
+        void whenGetOverviewsIsCalled()
+        {
+            getOverviewsResult = target.getOverviews();
+        }
+
+        void thenAssertOverview(SupplierOverview expected)
+        {
+            assertEquals(List.of(expected), getOverviewsResult);
+        }
+
+        void thenAssertOneQueryIssued()
+        {
+            verify(jdbcTemplate).query(any(String.class), any(RowMapper.class));
+            verifyNoMoreInteractions(jdbcTemplate);
+        }
+    }
+}